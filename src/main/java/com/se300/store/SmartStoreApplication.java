@@ -1,11 +1,26 @@
 package com.se300.store;
 
+import com.se300.store.controller.DeviceController;
+import com.se300.store.controller.MetricsController;
+import com.se300.store.controller.ProductController;
+import com.se300.store.controller.RecordingController;
 import com.se300.store.controller.StoreController;
 import com.se300.store.controller.UserController;
 import com.se300.store.data.DataManager;
+import com.se300.store.metrics.MetricsRegistry;
+import com.se300.store.model.EvictionPolicy;
+import com.se300.store.model.StoreLimits;
 import com.se300.store.repository.StoreRepository;
 import com.se300.store.repository.UserRepository;
 import com.se300.store.service.AuthenticationService;
+import com.se300.store.service.BasketReaper;
+import com.se300.store.service.CustomerReaper;
+import com.se300.store.service.DeviceEventArchive;
+import com.se300.store.service.DeviceEventFeed;
+import com.se300.store.service.DeviceEventServer;
+import com.se300.store.service.InstrumentedStoreService;
+import com.se300.store.service.OccupancyHeatmap;
+import com.se300.store.service.RecordingService;
 import com.se300.store.service.StoreService;
 import org.apache.catalina.Context;
 import org.apache.catalina.LifecycleException;
@@ -14,6 +29,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SmartStoreApplication - Main application class.
@@ -27,6 +47,12 @@ public class SmartStoreApplication {
     private static final int PORT = 8080;
 
     private Tomcat tomcat;
+    private BasketReaper basketReaper;
+    private OccupancyHeatmap occupancyHeatmap;
+    private CustomerReaper customerReaper;
+    private DeviceEventArchive deviceEventArchive;
+    private DeviceEventServer deviceEventServer;
+    private DeviceEventFeed deviceEventFeed;
 
     /**
      * Main method - application entry point.
@@ -77,13 +103,92 @@ public class SmartStoreApplication {
 
         // Step 3: Create services (Business Logic Layer)
         logger.info("Creating services...");
-        StoreService storeService = new StoreService(storeRepository);
+        // Service timing is on unless started with -Dsmartstore.serviceMetrics=false
+        StoreService storeService = Boolean.parseBoolean(System.getProperty("smartstore.serviceMetrics", "true"))
+                ? new InstrumentedStoreService(storeRepository)
+                : new StoreService(storeRepository);
         AuthenticationService userService = new AuthenticationService(userRepository);
+        // Stores hold any number of customers and baskets unless started with
+        // -Dsmartstore.maxCustomersPerStore, -Dsmartstore.maxBasketsPerStore and -Dsmartstore.evictionPolicy
+        StoreService.setDefaultStoreLimits(new StoreLimits(
+                Integer.getInteger("smartstore.maxCustomersPerStore", 0),
+                Integer.getInteger("smartstore.maxBasketsPerStore", 0),
+                EvictionPolicy.valueOf(System.getProperty("smartstore.evictionPolicy", EvictionPolicy.oldest.name()))));
+        // Baskets idle for 30 minutes are expired unless started with -Dsmartstore.basketIdleMinutes=0
+        long basketIdleMinutes = Long.getLong("smartstore.basketIdleMinutes", 30);
+        if (basketIdleMinutes > 0) {
+            basketReaper = storeService.startBasketReaper(TimeUnit.MINUTES.toMillis(basketIdleMinutes),
+                    TimeUnit.SECONDS.toMillis(1));
+        }
+        // Each device keeps its last 1024 events on the heap unless started with
+        // -Dsmartstore.telemetryEvents and -Dsmartstore.telemetryOffHeap=true
+        StoreService.configureDeviceTelemetry(Integer.getInteger("smartstore.telemetryEvents", 1024),
+                Boolean.getBoolean("smartstore.telemetryOffHeap"));
+        // Appliance commands are processed by one thread per processor with up to 64 pending per
+        // appliance unless started with -Dsmartstore.commandThreads and -Dsmartstore.commandQueueCapacity
+        StoreService.configureCommandDispatcher(
+                Integer.getInteger("smartstore.commandThreads", Math.max(2, Runtime.getRuntime().availableProcessors())),
+                Integer.getInteger("smartstore.commandQueueCapacity", 64));
+        // Device events are archived only when started with -Dsmartstore.archiveDir, in one hour
+        // segments of at most 64 MB kept for -Dsmartstore.archiveRetentionDays (default 30)
+        String archiveDir = System.getProperty("smartstore.archiveDir");
+        if (archiveDir != null) {
+            try {
+                deviceEventArchive = storeService.startDeviceEventArchive(Path.of(archiveDir), 64L * 1024 * 1024,
+                        TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(Long.getLong("smartstore.archiveRetentionDays", 30)));
+            } catch (IOException e) {
+                logger.error("Device events will not be archived, {} cannot be used", archiveDir, e);
+            }
+        }
+        // Sensor gateways can stream device events only when started with -Dsmartstore.ingestPort,
+        // a TCP port on the loopback interface, or -Dsmartstore.ingestSocket, a Unix-domain socket path
+        Integer ingestPort = Integer.getInteger("smartstore.ingestPort");
+        String ingestSocket = System.getProperty("smartstore.ingestSocket");
+        if (ingestPort != null || ingestSocket != null) {
+            try {
+                deviceEventServer = storeService.startDeviceEventServer(
+                        ingestPort == null ? null : new InetSocketAddress(InetAddress.getLoopbackAddress(), ingestPort),
+                        ingestSocket == null ? null : Path.of(ingestSocket));
+            } catch (IOException e) {
+                logger.error("Device events will not be streamed, port {} or socket {} cannot be used",
+                        ingestPort, ingestSocket, e);
+            }
+        }
+        // A co-located process can hand over device events only when started with -Dsmartstore.feedFile,
+        // a ring file of -Dsmartstore.feedBytes (default 16 MB) created when missing
+        String feedFile = System.getProperty("smartstore.feedFile");
+        if (feedFile != null) {
+            try {
+                deviceEventFeed = storeService.startDeviceEventFeed(Path.of(feedFile),
+                        Integer.getInteger("smartstore.feedBytes", 16 * 1024 * 1024));
+            } catch (IOException | IllegalArgumentException e) {
+                logger.error("Device events will not be fed, {} cannot be used", feedFile, e);
+            }
+        }
+        // Customers not seen for 30 minutes are counted out of the occupancy unless started with
+        // -Dsmartstore.customerIdleMinutes=0
+        long customerIdleMinutes = Long.getLong("smartstore.customerIdleMinutes", 30);
+        if (customerIdleMinutes > 0) {
+            customerReaper = storeService.startCustomerReaper(TimeUnit.MINUTES.toMillis(customerIdleMinutes),
+                    TimeUnit.SECONDS.toMillis(1));
+        }
+        // Occupancy heatmaps are taken every 5 seconds and kept for an hour unless started with
+        // -Dsmartstore.heatmapSeconds=0
+        long heatmapSeconds = Long.getLong("smartstore.heatmapSeconds", 5);
+        if (heatmapSeconds > 0) {
+            occupancyHeatmap = storeService.startOccupancyHeatmap(TimeUnit.SECONDS.toMillis(heatmapSeconds),
+                    (int) (TimeUnit.HOURS.toSeconds(1) / heatmapSeconds));
+        }
 
         // Step 4: Create controllers (Presentation Layer)
         logger.info("Creating controllers...");
         StoreController storeController = new StoreController(storeService);
+        ProductController productController = new ProductController(storeService);
+        DeviceController deviceController = new DeviceController(storeService);
         UserController userController = new UserController(userService);
+        MetricsController metricsController = new MetricsController(MetricsRegistry.getInstance());
+        RecordingController recordingController = new RecordingController(
+                new RecordingService(Path.of(System.getProperty("smartstore.recordings", "recordings"))));
 
         // Step 5: Configure and start Tomcat
         logger.info("Configuring Tomcat server...");
@@ -100,10 +205,26 @@ public class SmartStoreApplication {
         Tomcat.addServlet(context, "storeController", storeController);
         context.addServletMappingDecoded("/api/v1/stores/*", "storeController");
 
+        // Register Product Controller servlet
+        Tomcat.addServlet(context, "productController", productController);
+        context.addServletMappingDecoded("/api/v1/products/*", "productController");
+
+        // Register Device Controller servlet
+        Tomcat.addServlet(context, "deviceController", deviceController);
+        context.addServletMappingDecoded("/api/v1/devices/*", "deviceController");
+
         // Register User Controller servlet
         Tomcat.addServlet(context, "userController", userController);
         context.addServletMappingDecoded("/api/v1/users/*", "userController");
 
+        // Register Metrics Controller servlet
+        Tomcat.addServlet(context, "metricsController", metricsController);
+        context.addServletMappingDecoded("/api/v1/metrics", "metricsController");
+
+        // Register Recording Controller servlet
+        Tomcat.addServlet(context, "recordingController", recordingController);
+        context.addServletMappingDecoded("/api/v1/recordings/*", "recordingController");
+
         // Step 6: Start Tomcat
         tomcat.start();
 
@@ -114,7 +235,11 @@ public class SmartStoreApplication {
         logger.info("");
         logger.info("Available endpoints:");
         logger.info("  - API:            http://localhost:{}/api/v1/stores", PORT);
+        logger.info("  - API:            http://localhost:{}/api/v1/products", PORT);
+        logger.info("  - API:            http://localhost:{}/api/v1/devices", PORT);
         logger.info("  - API:            http://localhost:{}/api/v1/users", PORT);
+        logger.info("  - Metrics:        http://localhost:{}/api/v1/metrics", PORT);
+        logger.info("  - Recordings:     http://localhost:{}/api/v1/recordings", PORT);
         logger.info("=".repeat(80));
 
         // Add shutdown hook
@@ -131,9 +256,29 @@ public class SmartStoreApplication {
      * Useful for testing scenarios where you need to explicitly stop the server.
      */
     public void stop() throws LifecycleException {
+        if (basketReaper != null) {
+            basketReaper.close();
+        }
+        if (occupancyHeatmap != null) {
+            occupancyHeatmap.close();
+        }
+        if (customerReaper != null) {
+            customerReaper.close();
+        }
+        if (deviceEventServer != null) {
+            deviceEventServer.close();
+        }
+        if (deviceEventFeed != null) {
+            deviceEventFeed.close();
+        }
+        if (deviceEventArchive != null) {
+            deviceEventArchive.close();
+        }
         if (tomcat != null) {
             tomcat.stop();
         }
+        // After the server, so that no request starts the threads again
+        StoreService.closeCommandDispatcher();
     }
 
 
@@ -149,10 +294,29 @@ public class SmartStoreApplication {
         logger.info("Shutting down Commission Calculator Integration Application...");
 
         try {
+            if (basketReaper != null) {
+                basketReaper.close();
+            }
+            if (occupancyHeatmap != null) {
+                occupancyHeatmap.close();
+            }
+            if (customerReaper != null) {
+                customerReaper.close();
+            }
+            if (deviceEventServer != null) {
+                deviceEventServer.close();
+            }
+            if (deviceEventFeed != null) {
+                deviceEventFeed.close();
+            }
+            if (deviceEventArchive != null) {
+                deviceEventArchive.close();
+            }
             if (tomcat != null) {
                 tomcat.stop();
                 tomcat.destroy();
             }
+            StoreService.closeCommandDispatcher();
 
             logger.info("Application shut down successfully");
         } catch (Exception e) {
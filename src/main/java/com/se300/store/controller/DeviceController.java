@@ -0,0 +1,204 @@
+package com.se300.store.controller;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.se300.store.model.Device;
+import com.se300.store.model.EventParser;
+import com.se300.store.model.StoreException;
+import com.se300.store.model.StructuredEvent;
+import com.se300.store.service.CommandOutcome;
+import com.se300.store.service.DeviceTelemetry;
+import com.se300.store.service.StoreService;
+import com.se300.store.servlet.BaseServlet;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * REST API controller for Device lookups, events and telemetry
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class DeviceController extends BaseServlet {
+
+    private static final int DEFAULT_ARCHIVE_LIMIT = 1_000;
+    private static final int MAX_ARCHIVE_LIMIT = 10_000;
+    private static final long COMMAND_WAIT_SECONDS = 5;
+
+    private final StoreService storeService;
+
+    public DeviceController(StoreService storeService) {
+        this.storeService = storeService;
+    }
+
+    /**
+     * Handle GET requests
+     * - GET /api/v1/devices/{deviceId} - Get device by ID
+     * - GET /api/v1/devices/{deviceId}/events?from=t&to=t - Get the recent events of the device
+     * - GET /api/v1/devices/{deviceId}/rollups?resolution=minute&from=t&to=t - Get event counts and
+     *   value statistics per second, minute or hour
+     * - GET /api/v1/devices/{deviceId}/archive?from=t&to=t&limit=n - Get archived events and commands,
+     *   including those of deleted devices
+     * Times are milliseconds since the epoch; from is inclusive, to exclusive, and both are optional
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String deviceId = extractResourceId(request);
+        String token    = request.getParameter("token");
+        Set<String> fields = getListParameter(request, "fields");
+
+        if (token == null || token.isBlank()) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "No token");
+            return;
+        }
+
+        if (deviceId == null) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "deviceId path parameter required");
+            return;
+        }
+
+        String subResource = extractSubResource(request);
+        long from;
+        long to;
+        try {
+            from = getTimeParameter(request, "from", 0);
+            to = getTimeParameter(request, "to", Long.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "from and to must be milliseconds since the epoch");
+            return;
+        }
+
+        try {
+            if ("events".equals(subResource)) {
+                sendProjectedResponse(response, storeService.getDeviceEvents(deviceId, from, to, token), fields);
+
+            } else if ("archive".equals(subResource)) {
+                int limit;
+                try {
+                    String limitParameter = request.getParameter("limit");
+                    limit = limitParameter == null
+                            ? DEFAULT_ARCHIVE_LIMIT
+                            : Math.min(Integer.parseInt(limitParameter), MAX_ARCHIVE_LIMIT);
+                } catch (NumberFormatException e) {
+                    sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "limit must be a number");
+                    return;
+                }
+                sendProjectedResponse(response, storeService.getArchivedDeviceEvents(deviceId, from, to, limit, token), fields);
+
+            } else if ("rollups".equals(subResource)) {
+                DeviceTelemetry.Resolution resolution;
+                try {
+                    String resolutionParameter = request.getParameter("resolution");
+                    resolution = resolutionParameter == null
+                            ? DeviceTelemetry.Resolution.minute
+                            : DeviceTelemetry.Resolution.valueOf(resolutionParameter);
+                } catch (IllegalArgumentException e) {
+                    sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "resolution must be second, minute or hour");
+                    return;
+                }
+                sendProjectedResponse(response, storeService.getDeviceRollup(deviceId, resolution, from, to, token), fields);
+
+            } else if (subResource != null) {
+                sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Resource Does Not Exist");
+
+            } else {
+                // GET SINGLE DEVICE
+                Optional<Device> device = storeService.findDevice(deviceId);
+                if (device.isEmpty()) {
+                    sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Device Does Not Exist");
+                } else {
+                    sendProjectedResponse(response, device.get(), fields);
+                }
+            }
+        } catch (StoreException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, e.getReason());
+        }
+    }
+
+    /**
+     * Handle POST requests
+     * - POST /api/v1/devices/{deviceId}/event?event=xxx - Raise a device event. The event is parsed
+     *   into its type and arguments, and rejected when the device does not raise that type or the
+     *   arguments do not fit it
+     * - POST /api/v1/devices/{deviceId}/command?command=xxx - Issue an appliance command and wait a
+     *   few seconds for it to be processed; 202 when it is still pending by then
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String deviceId = extractResourceId(request);
+        String token    = request.getParameter("token");
+        String subResource = extractSubResource(request);
+
+        if (token == null || token.isBlank()) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "No token");
+            return;
+        }
+
+        if (deviceId == null || !("event".equals(subResource) || "command".equals(subResource))) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Resource Does Not Exist");
+            return;
+        }
+
+        String text = request.getParameter(subResource);
+        if (text == null || text.isBlank()) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, subResource + " required");
+            return;
+        }
+
+        try {
+            if ("event".equals(subResource)) {
+                StructuredEvent structured = EventParser.parse(text);
+                storeService.raiseEvent(deviceId, structured, token);
+                Map<String, Object> raised = new LinkedHashMap<>();
+                raised.put("deviceId", deviceId);
+                raised.put("event", text);
+                raised.put("type", structured.getType());
+                raised.put("arguments", structured.getArguments());
+                sendJsonResponse(response, raised);
+            } else {
+                issueCommand(response, deviceId, text, token);
+            }
+        } catch (StoreException e) {
+            int status = switch (e.getReason()) {
+                case "Device Does Not Exist" -> HttpServletResponse.SC_NOT_FOUND;
+                case "Command Queue Is Full", "Command Queue Is Closed" -> HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+                default -> HttpServletResponse.SC_BAD_REQUEST;
+            };
+            sendErrorResponse(response, status, e.getReason());
+        }
+    }
+
+    private void issueCommand(HttpServletResponse response, String deviceId, String command, String token)
+            throws StoreException, IOException {
+        CompletableFuture<CommandOutcome> processed = storeService.issueCommand(deviceId, command, token);
+        Map<String, Object> issued = new LinkedHashMap<>();
+        issued.put("deviceId", deviceId);
+        issued.put("command", command);
+        try {
+            issued.put("outcome", processed.get(COMMAND_WAIT_SECONDS, TimeUnit.SECONDS));
+            sendJsonResponse(response, issued);
+        } catch (TimeoutException e) {
+            issued.put("pending", storeService.getPendingCommandCount(deviceId));
+            sendJsonResponse(response, issued, HttpServletResponse.SC_ACCEPTED);
+        } catch (ExecutionException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Command Failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Interrupted");
+        }
+    }
+
+    private static long getTimeParameter(HttpServletRequest request, String name, long defaultValue) {
+        String value = request.getParameter(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+}
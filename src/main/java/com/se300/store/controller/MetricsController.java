@@ -0,0 +1,38 @@
+package com.se300.store.controller;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import com.se300.store.metrics.MetricsRegistry;
+import com.se300.store.servlet.BaseServlet;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Read-only controller exposing application metrics in the Prometheus text format
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class MetricsController extends BaseServlet {
+
+    private final MetricsRegistry metricsRegistry;
+
+    public MetricsController(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * Handle GET requests
+     * - GET /api/v1/metrics - Scrape all metrics
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MetricsRegistry.CONTENT_TYPE);
+        PrintWriter out = response.getWriter();
+        metricsRegistry.writePrometheus(out);
+        out.flush();
+    }
+}
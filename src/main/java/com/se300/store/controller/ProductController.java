@@ -0,0 +1,94 @@
+package com.se300.store.controller;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+
+import com.se300.store.model.Product;
+import com.se300.store.service.StoreService;
+import com.se300.store.servlet.BaseServlet;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * REST API controller for Product lookups
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class ProductController extends BaseServlet {
+
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 100;
+
+    private final StoreService storeService;
+
+    public ProductController(StoreService storeService) {
+        this.storeService = storeService;
+    }
+
+    /**
+     * Handle GET requests
+     * - GET /api/v1/products?q=xxx - Search products by name, description and category
+     *   (category=xxx filters, limit=n caps the hits, prefix=false disables search-as-you-type)
+     * - GET /api/v1/products/{productId} - Get product by ID
+     * - GET /api/v1/products/{productId}/locations - Get the store, aisle and shelf of every slot holding it
+     * - GET /api/v1/products/{productId}/locations?inStock=true - Only slots with units on them
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String productId = extractResourceId(request);
+        String token     = request.getParameter("token");
+        Set<String> fields = getListParameter(request, "fields");
+
+        if (token == null || token.isBlank()) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "No token");
+            return;
+        }
+
+        // SEARCH PRODUCTS
+        if (productId == null) {
+            String query = request.getParameter("q");
+            if (query == null || query.isBlank()) {
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "productId path parameter or q required");
+                return;
+            }
+            int limit;
+            try {
+                String limitParameter = request.getParameter("limit");
+                limit = limitParameter == null ? DEFAULT_LIMIT : Math.min(Integer.parseInt(limitParameter), MAX_LIMIT);
+            } catch (NumberFormatException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "limit must be a number");
+                return;
+            }
+            boolean prefix = !"false".equalsIgnoreCase(request.getParameter("prefix"));
+            sendJsonResponse(response, storeService.searchProducts(query, request.getParameter("category"),
+                    prefix, limit, token));
+            return;
+        }
+
+        String subResource = extractSubResource(request);
+
+        // PRODUCT LOCATIONS, slots may reference products that were never provisioned
+        if ("locations".equals(subResource)) {
+            boolean inStockOnly = Boolean.parseBoolean(request.getParameter("inStock"));
+            sendProjectedResponse(response, storeService.getProductLocations(productId, inStockOnly, token), fields);
+            return;
+        }
+
+        if (subResource != null) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Resource Does Not Exist");
+            return;
+        }
+
+        // GET SINGLE PRODUCT
+        Optional<Product> product = storeService.findProduct(productId);
+
+        if (product.isEmpty()) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Product Does Not Exist");
+        } else {
+            sendProjectedResponse(response, product.get(), fields);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.se300.store.controller;
+
+import java.io.IOException;
+
+import com.se300.store.model.StoreException;
+import com.se300.store.service.RecordingService;
+import com.se300.store.servlet.BaseServlet;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * REST API controller for starting and stopping Java Flight Recorder recordings
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class RecordingController extends BaseServlet {
+
+    private final RecordingService recordingService;
+
+    public RecordingController(RecordingService recordingService) {
+        this.recordingService = recordingService;
+    }
+
+    /**
+     * Handle GET requests
+     * - GET /api/v1/recordings - List running recordings
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!isAdmin(request, response)) {
+            return;
+        }
+        sendJsonResponse(response, recordingService.getRecordings());
+    }
+
+    /**
+     * Handle POST requests - Start a recording
+     * POST /api/v1/recordings?name=xxx&settings=default|profile
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String name     = request.getParameter("name");
+        String settings = request.getParameter("settings");
+
+        if (!isAdmin(request, response)) {
+            return;
+        }
+
+        try {
+            sendJsonResponse(response, recordingService.startRecording(name, settings), HttpServletResponse.SC_CREATED);
+        } catch (StoreException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, e.getReason());
+        }
+    }
+
+    /**
+     * Handle DELETE requests - Stop a recording and write it to disk
+     * DELETE /api/v1/recordings/{name}
+     */
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String name = extractResourceId(request);
+
+        if (!isAdmin(request, response)) {
+            return;
+        }
+
+        if (name == null) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "name path parameter required");
+            return;
+        }
+
+        try {
+            sendJsonResponse(response, recordingService.stopRecording(name));
+        } catch (StoreException e) {
+            int status = "Recording Does Not Exist".equals(e.getReason())
+                    ? HttpServletResponse.SC_NOT_FOUND
+                    : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            sendErrorResponse(response, status, e.getReason());
+        }
+    }
+
+    /**
+     * Only the admin may control recordings
+     */
+    private boolean isAdmin(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String token = request.getParameter("token");
+        if (token == null || token.isBlank()) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "Missing token");
+            return false;
+        }
+        if (!"admin".equals(token)) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "Only admin can manage recordings");
+            return false;
+        }
+        return true;
+    }
+}
@@ -2,9 +2,19 @@ package com.se300.store.controller;
 
 import java.io.IOException;
 import java.util.Collection;
-
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.se300.store.model.ApplianceType;
 import com.se300.store.model.Store;
 import com.se300.store.model.StoreException;
+import com.se300.store.service.BroadcastResult;
 import com.se300.store.service.StoreService;
 import com.se300.store.servlet.BaseServlet;
 
@@ -24,6 +34,8 @@ public class StoreController extends BaseServlet {
 
     // private static final String TOKEN = "admin";
 
+    private static final long COMMAND_WAIT_SECONDS = 5;
+
     private final StoreService storeService;
 
     public StoreController(StoreService storeService) {
@@ -33,45 +45,113 @@ public class StoreController extends BaseServlet {
     /**
      * Handle GET requests
      * - GET /api/v1/stores (no parameters) - Get all stores
+     * - GET /api/v1/stores?ids=S1,S2,S3 - Get several stores in one array (unknown ids are skipped)
      * - GET /api/v1/stores/{storeId} - Get store by ID
+     * - GET /api/v1/stores/{storeId}/low-stock - Get inventory at or below its low watermark
+     * - GET /api/v1/stores/{storeId}/stock - Get units on the shelves by product id
+     * - GET /api/v1/stores/{storeId}/stock?productId=xxx - Get units of one product in the store and chain
+     * - GET /api/v1/stores/{storeId}/occupancy - Get customers in the store and each aisle right now
+     * - GET /api/v1/stores/{storeId}/occupancy?aisle=xxx - Get customers in one aisle
+     * - GET /api/v1/stores/{storeId}/heatmap - Get the periodic occupancy snapshots of the store
+     * Any of these accept fields=id,address to return only the listed properties
      */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
         String storeId = extractResourceId(request);
         String token   = request.getParameter("token");
+        Set<String> fields = getListParameter(request, "fields");
 
         if (token == null || token.isBlank()) {
             sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "No token");
             return;
         }
 
-        // GET ALL STORES
+        // GET ALL STORES, OR SEVERAL BY ID
         if (storeId == null) {
-            Collection<Store> stores = storeService.getAllStores();
-                sendJsonResponse(response, stores);
+            Set<String> storeIds = getListParameter(request, "ids");
+            Collection<Store> stores = storeIds == null
+                    ? storeService.getAllStores()
+                    : storeService.getStores(storeIds);
+            sendProjectedResponse(response, stores, fields);
             return;
         }
 
         // GET SINGLE STORE
-        Store store = null;
-        try {
-            store = storeService.showStore(storeId, token);
-        } catch (StoreException ignored) {}  // Not hit by coverage, errors are thrown on model level
+        Optional<Store> store = storeService.findStore(storeId);
+        String subResource = extractSubResource(request);
 
-        if (store == null) {
+        if (store.isEmpty()) {
             sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Store Does Not Exist");
 
+        } else if ("low-stock".equals(subResource)) {
+            try {
+                sendProjectedResponse(response, storeService.getLowStockInventory(storeId, token), fields);
+            } catch (StoreException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, e.getReason());
+            }
+
+        } else if ("stock".equals(subResource)) {
+            String productId = request.getParameter("productId");
+            try {
+                if (productId == null) {
+                    sendJsonResponse(response, storeService.getStoreStock(storeId, token));
+                } else {
+                    Map<String, Object> stock = new LinkedHashMap<>();
+                    stock.put("storeId", storeId);
+                    stock.put("productId", productId);
+                    stock.put("count", storeService.getStoreProductCount(storeId, productId, token));
+                    stock.put("chainCount", storeService.getChainProductCount(productId, token));
+                    sendJsonResponse(response, stock);
+                }
+            } catch (StoreException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, e.getReason());
+            }
+
+        } else if ("occupancy".equals(subResource)) {
+            String aisleNumber = request.getParameter("aisle");
+            try {
+                if (aisleNumber == null) {
+                    sendJsonResponse(response, storeService.getOccupancySnapshot(storeId, token));
+                } else {
+                    Map<String, Object> occupancy = new LinkedHashMap<>();
+                    occupancy.put("storeId", storeId);
+                    occupancy.put("aisleNumber", aisleNumber);
+                    occupancy.put("count", storeService.getAisleOccupancy(storeId, aisleNumber, token));
+                    sendJsonResponse(response, occupancy);
+                }
+            } catch (StoreException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, e.getReason());
+            }
+
+        } else if ("heatmap".equals(subResource)) {
+            try {
+                sendJsonResponse(response, storeService.getOccupancyHeatmap(storeId, token));
+            } catch (StoreException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, e.getReason());
+            }
+
+        } else if (subResource != null) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Resource Does Not Exist");
+
         } else {
-            sendJsonResponse(response, store);
+            sendProjectedResponse(response, store.get(), fields);
         }
     }
 
     /**
-     * Handle POST requests - Create new store
-     * POST /api/v1/stores?storeId=xxx&name=xxx&address=xxx
+     * Handle POST requests
+     * - POST /api/v1/stores?storeId=xxx&name=xxx&address=xxx - Create new store
+     * - POST /api/v1/stores/{storeId}/command?command=xxx - Issue a command to every appliance of the
+     *   store, or only those in an aisle with aisle=xxx or of a type with type=speaker, and wait a
+     *   few seconds for their acknowledgements; 202 when some are still pending by then
      */
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (extractResourceId(request) != null) {
+            broadcastCommand(request, response);
+            return;
+        }
+
         String token    = request.getParameter("token");
         String storeId  = request.getParameter("storeId");
         String name     = request.getParameter("name");
@@ -92,12 +172,7 @@ public class StoreController extends BaseServlet {
             return;
         }
 
-        Store existing = null;
-        try {
-            existing = storeService.showStore(storeId, token);
-        } catch (StoreException ignored) {}  // Not hit by coverage, errors are thrown on model level
-
-        if (existing != null) {
+        if (storeService.findStore(storeId).isPresent()) {
             sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Store Already Exists");
             return;
         }
@@ -110,6 +185,62 @@ public class StoreController extends BaseServlet {
         sendJsonResponse(response, created, HttpServletResponse.SC_CREATED);
     }
 
+    private void broadcastCommand(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String storeId     = extractResourceId(request);
+        String token       = request.getParameter("token");
+        String command     = request.getParameter("command");
+        String aisleNumber = request.getParameter("aisle");
+        String type        = request.getParameter("type");
+
+        if (token == null || token.isBlank()) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "No token");
+            return;
+        }
+
+        if (!"command".equals(extractSubResource(request))) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Resource Does Not Exist");
+            return;
+        }
+
+        if (command == null || command.isBlank()) {
+            sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "command required");
+            return;
+        }
+
+        ApplianceType applianceType = null;
+        if (type != null) {
+            try {
+                applianceType = ApplianceType.valueOf(type);
+            } catch (IllegalArgumentException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Unknown Appliance Type");
+                return;
+            }
+        }
+
+        CompletableFuture<BroadcastResult> acknowledged;
+        try {
+            acknowledged = storeService.broadcastCommand(storeId, aisleNumber, applianceType, command, token);
+        } catch (StoreException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, e.getReason());
+            return;
+        }
+
+        try {
+            sendJsonResponse(response, acknowledged.get(COMMAND_WAIT_SECONDS, TimeUnit.SECONDS));
+        } catch (TimeoutException e) {
+            Map<String, Object> broadcast = new LinkedHashMap<>();
+            broadcast.put("storeId", storeId);
+            broadcast.put("command", command);
+            broadcast.put("pending", true);
+            sendJsonResponse(response, broadcast, HttpServletResponse.SC_ACCEPTED);
+        } catch (ExecutionException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Command Failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Interrupted");
+        }
+    }
+
     /**
      * Handle PUT requests - Update existing store
      * PUT /api/v1/stores/{storeId}?description=xxx&address=xxx
@@ -142,12 +273,7 @@ public class StoreController extends BaseServlet {
         }
 
 
-        Store store = null;
-        try {
-            store = storeService.showStore(storeId, token);
-        } catch (StoreException ignored) {}  // Not hit by coverage, errors are thrown on model level
-
-        if (store == null) {
+        if (storeService.findStore(storeId).isEmpty()) {
             sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Store Does Not Exist");
             return;
         }
@@ -185,12 +311,7 @@ public class StoreController extends BaseServlet {
         }
 
         // Check existence
-        Store store = null;
-        try {
-            store = storeService.showStore(storeId, token);
-        } catch (StoreException ignored) {}  // Not hit by coverage, errors are thrown on model level
-
-        if (store == null) {
+        if (storeService.findStore(storeId).isEmpty()) {
             sendErrorResponse(response, HttpServletResponse.SC_NOT_FOUND, "Store Does Not Exist");
             return;
         }
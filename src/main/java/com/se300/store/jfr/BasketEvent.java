@@ -0,0 +1,61 @@
+package com.se300.store.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a basket add, remove or clear, committed whether it succeeds or not
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+@Name("com.se300.store.Basket")
+@Label("Basket Operation")
+@Category({"Smart Store", "Basket"})
+@Description("Product added to, removed from or cleared out of a customer basket")
+@StackTrace(false)
+public class BasketEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Basket Id")
+    public String basketId;
+
+    @Label("Product Id")
+    public String productId;
+
+    @Label("Count")
+    public int count;
+
+    @Label("Aisle Scan Size")
+    @Description("Inventory slots in the aisle searched for the product")
+    public int aisleScanSize;
+
+    @Label("Failure")
+    public String failure;
+
+    /**
+     * Create and begin a basket event
+     * @param operation add, remove or clear
+     * @param basketId
+     * @param productId
+     * @param count
+     * @return
+     */
+    public static BasketEvent begin(String operation, String basketId, String productId, int count) {
+        BasketEvent event = new BasketEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.basketId = basketId;
+            event.productId = productId;
+            event.count = count;
+            event.begin();
+        }
+        return event;
+    }
+}
@@ -0,0 +1,36 @@
+package com.se300.store.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one DSL command run by the CommandProcessor
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+@Name("com.se300.store.Command")
+@Label("DSL Command")
+@Category({"Smart Store", "DSL"})
+@Description("Command processed from a store script")
+@StackTrace(false)
+public class CommandEvent extends Event {
+
+    @Label("Command Type")
+    @Description("Verb and noun of the command, for example define store")
+    public String commandType;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Line Number")
+    @Description("Line in the script, 0 when the command was not read from a file")
+    public int lineNumber;
+
+    @Label("Failure")
+    public String failure;
+}
@@ -0,0 +1,35 @@
+package com.se300.store.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a sensor or appliance event, or a command issued to an appliance
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+@Name("com.se300.store.Device")
+@Label("Device Activity")
+@Category({"Smart Store", "Device"})
+@Description("Event raised by or command issued to a store device")
+@StackTrace(false)
+public class DeviceEvent extends Event {
+
+    @Label("Kind")
+    @Description("event or command")
+    public String kind;
+
+    @Label("Device Id")
+    public String deviceId;
+
+    @Label("Device Type")
+    public String deviceType;
+
+    @Label("Payload")
+    public String payload;
+}
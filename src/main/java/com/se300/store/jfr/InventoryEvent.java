@@ -0,0 +1,41 @@
+package com.se300.store.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a change to the count of an inventory slot
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+@Name("com.se300.store.Inventory")
+@Label("Inventory Update")
+@Category({"Smart Store", "Inventory"})
+@Description("Product count of an inventory slot changed")
+@StackTrace(false)
+public class InventoryEvent extends Event {
+
+    @Label("Inventory Id")
+    public String inventoryId;
+
+    @Label("Product Id")
+    public String productId;
+
+    @Label("Delta")
+    public int delta;
+
+    @Label("Count")
+    @Description("Count after the update")
+    public int count;
+
+    @Label("Capacity")
+    public int capacity;
+
+    @Label("Failure")
+    public String failure;
+}
@@ -0,0 +1,40 @@
+package com.se300.store.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for an inventory slot crossing its low or high watermark
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+@Name("com.se300.store.StockLevel")
+@Label("Stock Level Change")
+@Category({"Smart Store", "Inventory"})
+@Description("Inventory count crossed a low or high watermark")
+@StackTrace(false)
+public class StockLevelEvent extends Event {
+
+    @Label("Inventory Id")
+    public String inventoryId;
+
+    @Label("Store Id")
+    public String storeId;
+
+    @Label("Product Id")
+    public String productId;
+
+    @Label("Previous Level")
+    public String previous;
+
+    @Label("Level")
+    public String level;
+
+    @Label("Count")
+    public int count;
+}
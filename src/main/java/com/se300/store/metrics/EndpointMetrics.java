@@ -0,0 +1,80 @@
+package com.se300.store.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements for one HTTP endpoint and method: a latency histogram, request counts by
+ * status code, and request and response body bytes.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class EndpointMetrics {
+
+    private final String endpoint;
+    private final String method;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    /**
+     * Constructor for EndpointMetrics
+     * @param endpoint The servlet path, for example /api/v1/stores
+     * @param method The HTTP method
+     */
+    public EndpointMetrics(String endpoint, String method) {
+        this.endpoint = endpoint;
+        this.method = method;
+    }
+
+    /**
+     * Record one completed request
+     * @param status The response status code
+     * @param nanos Time spent in the servlet
+     * @param requestBytes Request body size
+     * @param responseBytes Response body size
+     */
+    public void record(int status, long nanos, long requestBytes, long responseBytes) {
+        latency.record(nanos);
+        statusCounts.computeIfAbsent(status, s -> new LongAdder()).increment();
+        bytesIn.add(requestBytes);
+        bytesOut.add(responseBytes);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Number of requests answered with the given status code
+     * @param status
+     * @return
+     */
+    public long getStatusCount(int status) {
+        LongAdder counter = statusCounts.get(status);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    Map<Integer, LongAdder> getStatusCounts() {
+        return statusCounts;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+}
@@ -0,0 +1,170 @@
+package com.se300.store.metrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of application metrics, rendered in the Prometheus text exposition
+ * format (version 0.0.4) so that any scraper can read it without extra services.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    /** Content type of the text exposition format */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Methods counted under their own name, the client may send any other
+    private static final Set<String> HTTP_METHODS =
+            Set.of("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE", "PATCH");
+    private static final String OTHER_METHOD = "other";
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Get the singleton instance
+     * @return
+     */
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get or create the metrics of an HTTP endpoint
+     * @param endpoint The servlet path
+     * @param method The HTTP method; methods other than the standard ones are counted together as "other"
+     * @return
+     */
+    public EndpointMetrics endpoint(String endpoint, String method) {
+        String counted = HTTP_METHODS.contains(method) ? method : OTHER_METHOD;
+        return endpoints.computeIfAbsent(counted + ' ' + endpoint, key -> new EndpointMetrics(endpoint, counted));
+    }
+
+    /**
+     * Get or create the metrics of a service operation
+     * @param operation The service method name
+     * @return
+     */
+    public OperationMetrics operation(String operation) {
+        return operations.computeIfAbsent(operation, OperationMetrics::new);
+    }
+
+    /**
+     * Get or create a plain counter
+     * @param name The metric name, for example "smartstore_unshelved_units_total"
+     * @param help What the counter counts; only the first registration sets it
+     * @return
+     */
+    public LongAdder counter(String name, String help) {
+        return counters.computeIfAbsent(name, key -> new Counter(help, new LongAdder())).value();
+    }
+
+    /**
+     * Write every metric in the Prometheus text format
+     * @param out
+     * @throws IOException
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        List<EndpointMetrics> http = List.copyOf(new TreeMap<>(endpoints).values());
+
+        header(out, "smartstore_http_request_duration_seconds", "summary", "Time spent handling HTTP requests");
+        for (EndpointMetrics metrics : http) {
+            writeSummary(out, "smartstore_http_request_duration_seconds", labels(metrics), metrics.getLatency());
+        }
+
+        header(out, "smartstore_http_requests_total", "counter", "HTTP requests by status code");
+        for (EndpointMetrics metrics : http) {
+            String labels = labels(metrics);
+            for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(metrics.getStatusCounts()).entrySet()) {
+                sample(out, "smartstore_http_requests_total", labels + ",status=\"" + status.getKey() + "\"",
+                        status.getValue().sum());
+            }
+        }
+
+        header(out, "smartstore_http_request_bytes_total", "counter", "HTTP request body bytes received");
+        for (EndpointMetrics metrics : http) {
+            sample(out, "smartstore_http_request_bytes_total", labels(metrics), metrics.getBytesIn());
+        }
+
+        header(out, "smartstore_http_response_bytes_total", "counter", "HTTP response body bytes sent");
+        for (EndpointMetrics metrics : http) {
+            sample(out, "smartstore_http_response_bytes_total", labels(metrics), metrics.getBytesOut());
+        }
+
+        List<OperationMetrics> service = List.copyOf(new TreeMap<>(operations).values());
+
+        header(out, "smartstore_service_operation_duration_seconds", "summary", "Time spent in StoreService operations");
+        for (OperationMetrics metrics : service) {
+            writeSummary(out, "smartstore_service_operation_duration_seconds",
+                    "operation=\"" + escape(metrics.getOperation()) + "\"", metrics.getLatency());
+        }
+
+        header(out, "smartstore_service_operation_errors_total", "counter", "Failed StoreService operations by action and reason");
+        for (OperationMetrics metrics : service) {
+            for (Map.Entry<OperationMetrics.ErrorKey, LongAdder> error : new TreeMap<>(metrics.getErrors()).entrySet()) {
+                sample(out, "smartstore_service_operation_errors_total",
+                        "operation=\"" + escape(metrics.getOperation()) + "\",action=\"" + escape(error.getKey().action())
+                                + "\",reason=\"" + escape(error.getKey().reason()) + "\"",
+                        error.getValue().sum());
+            }
+        }
+
+        for (Map.Entry<String, Counter> counter : new TreeMap<>(counters).entrySet()) {
+            header(out, counter.getKey(), "counter", counter.getValue().help());
+            out.append(counter.getKey()).append(' ').append(Long.toString(counter.getValue().value().sum())).append('\n');
+        }
+    }
+
+    private static String labels(EndpointMetrics metrics) {
+        return "endpoint=\"" + escape(metrics.getEndpoint()) + "\",method=\"" + escape(metrics.getMethod()) + "\"";
+    }
+
+    private static void header(Appendable out, String name, String type, String help) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeSummary(Appendable out, String name, String labels, LatencyHistogram histogram)
+            throws IOException {
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(labels).append(",quantile=\"").append(Double.toString(quantile))
+                    .append("\"} ").append(Double.toString(histogram.getValueAtQuantile(quantile) / 1e9)).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ")
+                .append(Double.toString(histogram.getSum() / 1e9)).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ")
+                .append(Long.toString(histogram.getCount())).append('\n');
+    }
+
+    private static void sample(Appendable out, String name, String labels, long value) throws IOException {
+        out.append(name).append('{').append(labels).append("} ").append(Long.toString(value)).append('\n');
+    }
+
+    /**
+     * A counter without labels and its help text
+     */
+    private record Counter(String help, LongAdder value) {
+    }
+
+    /**
+     * Escape a label value as required by the text format
+     */
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,79 @@
+package com.se300.store.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements for one service operation: a latency histogram of every invocation, and failure
+ * counts keyed by the action and reason of the exception that ended it.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class OperationMetrics {
+
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<ErrorKey, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for OperationMetrics
+     * @param operation The service method name
+     */
+    public OperationMetrics(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Record one invocation
+     * @param nanos Time spent in the operation
+     */
+    public void record(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Record a failed invocation
+     * @param action The failing action, for example "Show Store"
+     * @param reason The failure reason, for example "Store Does Not Exist"
+     */
+    public void failed(String action, String reason) {
+        errors.computeIfAbsent(new ErrorKey(action, reason), key -> new LongAdder()).increment();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Number of failures with the given action and reason
+     * @param action
+     * @param reason
+     * @return
+     */
+    public long getErrorCount(String action, String reason) {
+        LongAdder counter = errors.get(new ErrorKey(action, reason));
+        return counter == null ? 0 : counter.sum();
+    }
+
+    Map<ErrorKey, LongAdder> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Label pair identifying a kind of failure
+     */
+    record ErrorKey(String action, String reason) implements Comparable<ErrorKey> {
+
+        @Override
+        public int compareTo(ErrorKey other) {
+            int byAction = String.valueOf(action).compareTo(String.valueOf(other.action));
+            return byAction != 0 ? byAction : String.valueOf(reason).compareTo(String.valueOf(other.reason));
+        }
+    }
+}
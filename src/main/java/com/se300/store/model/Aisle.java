@@ -3,6 +3,7 @@ package com.se300.store.model;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -140,6 +141,15 @@ public class Aisle {
         return this.shelfMap.get(shelfId);
     }
 
+    /**
+     * Find Shelf in the Aisle, empty if the Shelf does not exist
+     * @param shelfId
+     * @return
+     */
+    public Optional<Shelf> findShelf(String shelfId) {
+        return Optional.ofNullable(this.shelfMap.get(shelfId));
+    }
+
     /**
      * Method for returning a map of all the Shelves in the Aisle
      * @return
@@ -1,4 +1,8 @@
 package com.se300.store.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Appliance class implementation representing Appliance Device in the Store
  *
@@ -8,6 +12,8 @@ package com.se300.store.model;
  */
 public class Appliance extends Device{
 
+    private static final Logger logger = LoggerFactory.getLogger(Appliance.class);
+
     /**
      * Constructor for Appliance class
      * @param id
@@ -25,7 +31,19 @@ public class Appliance extends Device{
      */
     @Override
     public void processEvent(String event) {
-        System.out.println("Processing Event : " + event);
+        logger.debug("Processing Event : {} on Appliance {}", event, getId());
+    }
+
+    /**
+     * Appliance specific processing of a parsed event, by its type and arguments. The arguments are
+     * only copied out of the event when they are logged
+     * @param event
+     */
+    @Override
+    public void processEvent(StructuredEvent event) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Processing {} Event : {} on Appliance {}", event.getType(), event.getArguments(), getId());
+        }
     }
 
     /**
@@ -34,6 +52,6 @@ public class Appliance extends Device{
      * @param command
      */
     public void processCommand(String command){
-        System.out.println("<<< " + "Processing Command : " + command);
+        logger.debug("<<< Processing Command : {} on Appliance {}", command, getId());
     }
 }
@@ -5,9 +5,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.se300.store.jfr.BasketEvent;
+
 /**
  * Basket class implementation representing Customer basket
  *
@@ -17,8 +22,18 @@ import java.util.stream.Collectors;
  */
 public class Basket {
 
+    private static final Logger logger = LoggerFactory.getLogger(Basket.class);
+    // Shared by all baskets so that a burst of failing requests cannot flood the log
+    private static final LogRateLimiter errorLogLimiter = new LogRateLimiter(10, 1, TimeUnit.SECONDS);
+
     private String id;
     private final Map<String, Integer> productMap;
+    // Running total of the products in the basket in cents, kept exact by avoiding floating point
+    private long subtotalCents;
+    // Unit price in cents of each product, fixed when the product is first put in the basket
+    private final transient Map<String, Long> unitPriceMap;
+    // Last time the basket was assigned or its products changed, for expiring idle baskets
+    private transient volatile long lastActivity;
     // Mark customer and store as transient to avoid circular references
     // (Basket ↔ Customer, Basket ↔ Store)
     private transient Customer customer;
@@ -31,6 +46,8 @@ public class Basket {
     public Basket(String id) {
         this.id = id;
         this.productMap = new HashMap<>();
+        this.unitPriceMap = new HashMap<>();
+        this.lastActivity = System.currentTimeMillis();
     }
 
     /**
@@ -55,60 +72,75 @@ public class Basket {
      * Method is synchronized to guarantee critical section
      * @param productId
      * @param count
+     * @param unitPriceCents Price of one unit in cents, units already in the basket keep their price
      * @throws StoreException
      */
-    synchronized public void addProduct(String productId, int count) throws StoreException {
-
-        //Make sure that the customer is registered
-        if(customer.getType() == CustomerType.guest){
-            throw new StoreException("Add Product", "Guests Are Not Allowed to Shop");
-        }
-
-        //Get location of the customer associated with this basket
-        StoreLocation location = this.customer.getStoreLocation();
-        //Get the aisle where the customer was last seen
-        Aisle aisle = store.getAisle(location.getAisleId());
-
-        //Check to see if exists 
-        /**
-         * UNNECESSARY - store.getAisle already checks for null, this is dead code
-         */
-        // if(aisle == null){
-        //     throw new StoreException("Add Product", "Aisle Does Not Exist");
-        // }
-
-
-        //Get all inventory items from the shelves in the aisle where customer was last seen
-        List<Inventory> inventoryList = aisle.getShelfMap().values()
-                .stream()
-                .flatMap(shelf -> shelf.getInventoryMap().values().
-                        stream())
-                .filter(inventory -> productId.equals(inventory.getProductId()))
-                        .collect(Collectors.toList());
-
-        //If inventory list is empty that means product is not available to be put in the basket
-        if(inventoryList.isEmpty()){
-            System.out.println("\u001B[31m" + "Error : " + customer + "\u001B[0m");
-            throw new StoreException("Add Product", "Customer Is Not Near Product");
+    synchronized public void addProduct(String productId, int count, long unitPriceCents) throws StoreException {
+
+        BasketEvent event = BasketEvent.begin("add", id, productId, count);
+        try {
+            //Make sure that the customer is registered
+            if(customer.getType() == CustomerType.guest){
+                throw new StoreException("Add Product", "Guests Are Not Allowed to Shop");
+            }
+
+            //Get location of the customer associated with this basket
+            StoreLocation location = this.customer.getStoreLocation();
+            //Get the aisle where the customer was last seen
+            Aisle aisle = store.getAisle(location.getAisleId());
+
+            //Check to see if exists 
+            /**
+             * UNNECESSARY - store.getAisle already checks for null, this is dead code
+             */
+            // if(aisle == null){
+            //     throw new StoreException("Add Product", "Aisle Does Not Exist");
+            // }
+
+
+            //Get all inventory items from the shelves in the aisle where customer was last seen
+            List<Inventory> inventoryList = aisle.getShelfMap().values()
+                    .stream()
+                    .flatMap(shelf -> shelf.getInventoryMap().values().
+                            stream())
+                    .filter(inventory -> productId.equals(inventory.getProductId()))
+                            .collect(Collectors.toList());
+            if (event.isEnabled()) {
+                event.aisleScanSize = scanSize(aisle);
+            }
+
+            //If inventory list is empty that means product is not available to be put in the basket
+            if(inventoryList.isEmpty()){
+                logFailure("Add Product", "Customer Is Not Near Product", productId);
+                throw new StoreException("Add Product", "Customer Is Not Near Product");
+            }
+
+            //If inventory list is larger than one that means that there are multiple product are available
+            //where customer was last seen
+            if(inventoryList.size() > 1){
+                logFailure("Add Product", "There Are Several Products In the Aisle", productId);
+                throw new StoreException("Add Product", "There Are Several Products In the Aisle");
+            }
+
+            //If the count of the product on the shelf is smaller than the customer is trying to buy throw and exception
+            Inventory inventory = inventoryList.get(0);
+            if((inventory.getCount() - count) < 0){
+                logFailure("Add Product", "There Is Not Enough Inventory on the Shelf", productId);
+                throw new StoreException("Add Product", "There Is Not Enough Inventory on the Shelf");
+            }
+
+            //Put the product in the basket and decrement product on the shelf
+            this.productMap.merge(productId, count, Integer::sum);
+            long unitPrice = this.unitPriceMap.computeIfAbsent(productId, id -> unitPriceCents);
+            this.subtotalCents += unitPrice * count;
+            inventory.setCount(inventory.getCount() - count);
+            this.lastActivity = System.currentTimeMillis();
+        } catch (StoreException e) {
+            event.failure = e.getReason();
+            throw e;
+        } finally {
+            event.commit();
         }
-
-        //If inventory list is larger than one that means that there are multiple product are available
-        //where customer was last seen
-        if(inventoryList.size() > 1){
-            System.out.println("\u001B[31m" + "Error : " + inventoryList + "\u001B[0m");
-            throw new StoreException("Add Product", "There Are Several Products In the Aisle");
-        }
-
-        //If the count of the product on the shelf is smaller than the customer is trying to buy throw and exception
-        Inventory inventory = inventoryList.get(0);
-        if((inventory.getCount() - count) < 0){
-            System.out.println("\u001B[31m" + "Error : " + inventory + "\u001B[0m");
-            throw new StoreException("Add Product", "There Is Not Enough Inventory on the Shelf");
-        }
-
-        //Put the product in the basket and decrement product on the shelf
-        this.productMap.merge(productId, count, Integer::sum);
-        inventory.setCount(inventory.getCount() - count);
     }
 
     /**
@@ -121,64 +153,78 @@ public class Basket {
      */
     synchronized public void removeProduct(String productId, int count) throws StoreException {
 
-        //If Customer is trying to remove more units of the products from the basket than he/she has put in
-        //throw an exception
-        Integer tempCount = this.productMap.get(productId);
-        if(tempCount == null){
-            throw new StoreException("Remove Product", "Product Does Not Exist");
-        } else if (count > tempCount){
-            throw new StoreException("Remove Product", "Trying To Remove More Quantity Than Exists");
-        }
-
-        //Get location of the customer associated with this basket
-        StoreLocation location = this.customer.getStoreLocation();
-        //Get the aisle where the customer was last seen
-        Aisle aisle = store.getAisle(location.getAisleId());
-
-        //Check to see if exists
-         /**
-         * UNNECESSARY - store.getAisle already checks for null, this is dead code
-         */
-        // if(aisle == null){
-        //     throw new StoreException("Remove Product", "Aisle Does Not Exist");
-        // }
-
-        //Get all inventory items from the shelves in the aisle where customer was last seen
-        List<Inventory> inventoryList = aisle.getShelfMap().values()
-                .stream()
-                .flatMap(shelf -> shelf.getInventoryMap().values().
-                        stream())
-                .filter(inventory -> productId.equals(inventory.getProductId()))
-                .collect(Collectors.toList());
-
-        //If inventory list is empty that means product is not available to be put on the shelf
-        if(inventoryList.isEmpty()){
-            System.out.println("\u001B[31m" + "Error: " + customer + "\u001B[0m");
-            throw new StoreException("Remove Product", "Customer Is Not Near Product");
-        }
-
-        //If inventory list is larger than one that means that there are multiple product slots are available
-        //on the shelves where customer was last seen
-        if(inventoryList.size() > 1){
-            System.out.println("\u001B[31m" + "Error : " + inventoryList + "\u001B[0m");
-            throw new StoreException("Remove Product", "There Are Several Products In the Aisle");
-        }
-
-        //If product capacity on the shelf is smaller than what the customer is trying to put back throw and exception
-        Inventory inventory = inventoryList.get(0);
-        if((inventory.getCount() + count) > inventory.getCapacity()){
-            System.out.println("\u001B[31m" + "Error : " + inventory + "\u001B[0m");
-            throw new StoreException("Remove Product", "There Is Not Enough Capacity on the Shelf");
-        }
-
-        //Remove the product in the basket and increment product on the shelf
-        this.productMap.merge(productId, count, (a, b) -> a - b);
-        inventory.setCount(inventory.getCount() + count);
-
-        //if product count in the basket is 0 remove it from the basket completely
-        tempCount = this.productMap.get(productId);
-        if(tempCount == 0){
-            productMap.remove(productId);
+        BasketEvent event = BasketEvent.begin("remove", id, productId, count);
+        try {
+            //If Customer is trying to remove more units of the products from the basket than he/she has put in
+            //throw an exception
+            Integer tempCount = this.productMap.get(productId);
+            if(tempCount == null){
+                throw new StoreException("Remove Product", "Product Does Not Exist");
+            } else if (count > tempCount){
+                throw new StoreException("Remove Product", "Trying To Remove More Quantity Than Exists");
+            }
+
+            //Get location of the customer associated with this basket
+            StoreLocation location = this.customer.getStoreLocation();
+            //Get the aisle where the customer was last seen
+            Aisle aisle = store.getAisle(location.getAisleId());
+
+            //Check to see if exists
+             /**
+             * UNNECESSARY - store.getAisle already checks for null, this is dead code
+             */
+            // if(aisle == null){
+            //     throw new StoreException("Remove Product", "Aisle Does Not Exist");
+            // }
+
+            //Get all inventory items from the shelves in the aisle where customer was last seen
+            List<Inventory> inventoryList = aisle.getShelfMap().values()
+                    .stream()
+                    .flatMap(shelf -> shelf.getInventoryMap().values().
+                            stream())
+                    .filter(inventory -> productId.equals(inventory.getProductId()))
+                    .collect(Collectors.toList());
+            if (event.isEnabled()) {
+                event.aisleScanSize = scanSize(aisle);
+            }
+
+            //If inventory list is empty that means product is not available to be put on the shelf
+            if(inventoryList.isEmpty()){
+                logFailure("Remove Product", "Customer Is Not Near Product", productId);
+                throw new StoreException("Remove Product", "Customer Is Not Near Product");
+            }
+
+            //If inventory list is larger than one that means that there are multiple product slots are available
+            //on the shelves where customer was last seen
+            if(inventoryList.size() > 1){
+                logFailure("Remove Product", "There Are Several Products In the Aisle", productId);
+                throw new StoreException("Remove Product", "There Are Several Products In the Aisle");
+            }
+
+            //If product capacity on the shelf is smaller than what the customer is trying to put back throw and exception
+            Inventory inventory = inventoryList.get(0);
+            if((inventory.getCount() + count) > inventory.getCapacity()){
+                logFailure("Remove Product", "There Is Not Enough Capacity on the Shelf", productId);
+                throw new StoreException("Remove Product", "There Is Not Enough Capacity on the Shelf");
+            }
+
+            //Remove the product in the basket and increment product on the shelf
+            this.productMap.merge(productId, count, (a, b) -> a - b);
+            this.subtotalCents -= this.unitPriceMap.getOrDefault(productId, 0L) * count;
+            inventory.setCount(inventory.getCount() + count);
+            this.lastActivity = System.currentTimeMillis();
+
+            //if product count in the basket is 0 remove it from the basket completely
+            tempCount = this.productMap.get(productId);
+            if(tempCount == 0){
+                productMap.remove(productId);
+                unitPriceMap.remove(productId);
+            }
+        } catch (StoreException e) {
+            event.failure = e.getReason();
+            throw e;
+        } finally {
+            event.commit();
         }
     }
 
@@ -188,23 +234,48 @@ public class Basket {
      */
     synchronized public void clearBasket() throws StoreException {
 
-        //Removal of the products can't occur in the lambda function since we would get a
-        //concurrent object modification exception
-        Set<String> keys = this.productMap.keySet();
-        List<Integer> values = new ArrayList<>(productMap.values());
-
-        //Remove all the products from the Product Map
-        int i = 0;
-        for (String key : keys) {
-            removeProduct(key, values.get(i));
-            i++;
+        BasketEvent event = BasketEvent.begin("clear", id, null, productMap.size());
+        try {
+            //Removing a product changes the Product Map, so the products are walked on a copy
+            List<Map.Entry<String, Integer>> products = new ArrayList<>(Map.copyOf(productMap).entrySet());
+
+            //Remove all the products from the Product Map
+            for (Map.Entry<String, Integer> product : products) {
+                removeProduct(product.getKey(), product.getValue());
+            }
+
+            this.productMap.clear();
+            this.unitPriceMap.clear();
+            this.subtotalCents = 0;
+
+            //Clear Basket and remove Customer association, unless the Customer has moved on to another Basket
+            if (this.customer.getBasket() == this)
+                this.customer.assignBasket(null);
+            this.customer = null;
+        } catch (StoreException e) {
+            event.failure = e.getReason();
+            throw e;
+        } finally {
+            event.commit();
         }
+    }
 
+    /**
+     * Take all Products out of the Basket without putting them back on a shelf, and release the
+     * Customer. The caller is responsible for the Products taken out
+     * @return Count of each Product that was in the Basket, by product id
+     */
+    synchronized public Map<String, Integer> emptyBasket() {
+        Map<String, Integer> products = new HashMap<>(this.productMap);
         this.productMap.clear();
+        this.unitPriceMap.clear();
+        this.subtotalCents = 0;
 
-        //Clear Basket and remove Customer association
-        this.customer.assignBasket(null);
+        //Release the Customer, unless the Customer has moved on to another Basket
+        if (this.customer != null && this.customer.getBasket() == this)
+            this.customer.assignBasket(null);
         this.customer = null;
+        return products;
     }
 
     /**
@@ -214,6 +285,14 @@ public class Basket {
         return Collections.unmodifiableMap(this.productMap);
     }
 
+    /**
+     * Getter method for the total price of the products in the Basket, in cents
+     * @return
+     */
+    public long getSubtotalCents() {
+        return subtotalCents;
+    }
+
     /**
      * Setter method for the Customer to establish a connection between Basket and the Store
      * @param store
@@ -227,6 +306,15 @@ public class Basket {
      */
     public void setCustomer(Customer customer){
         this.customer = customer;
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Getter method for the last time the Basket was assigned or its products changed
+     * @return Milliseconds since the epoch
+     */
+    public long getLastActivity() {
+        return lastActivity;
     }
 
     /**
@@ -245,11 +333,40 @@ public class Basket {
         return this.customer;
     }
 
+    /**
+     * Number of inventory slots on all the shelves of an aisle
+     * @param aisle
+     * @return
+     */
+    private static int scanSize(Aisle aisle) {
+        int size = 0;
+        for (Shelf shelf : aisle.getShelfMap().values()) {
+            size += shelf.getInventoryMap().size();
+        }
+        return size;
+    }
+
+    /**
+     * Log a rejected basket operation. Only ids are logged, and at most a few messages per second
+     * get through no matter how many baskets are failing
+     * @param action
+     * @param reason
+     * @param productId
+     */
+    private void logFailure(String action, String reason, String productId) {
+        if (errorLogLimiter.tryAcquire()) {
+            logger.warn("{} failed: {} (basket {}, customer {}, product {}, location {}; {} similar messages suppressed)",
+                    action, reason, id, customer.getId(), productId, customer.getStoreLocation(),
+                    errorLogLimiter.drainSuppressed());
+        }
+    }
+
     @Override
     public String toString() {
         return "Basket{" +
                 "id='" + id + '\'' +
                 ", productMap=" + productMap +
+                ", subtotalCents=" + subtotalCents +
                 '}';
     }
 }
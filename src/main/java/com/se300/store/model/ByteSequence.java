@@ -0,0 +1,79 @@
+package com.se300.store.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Characters of UTF-8 bytes in a buffer, read in place. Each byte reads as one character, which
+ * is exact for the ASCII names, words and quotes an event is parsed by; toString decodes the
+ * bytes as UTF-8
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+class ByteSequence implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    ByteSequence() {
+    }
+
+    private ByteSequence(ByteBuffer buffer, int offset, int length) {
+        wrap(buffer, offset, length);
+    }
+
+    ByteSequence wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new ByteSequence(buffer, offset + start, end - start);
+    }
+
+    /**
+     * Copy the UTF-8 bytes of part of the sequence into a buffer, as many as fit without splitting
+     * a character
+     */
+    void copyTo(int start, int end, ByteBuffer target) {
+        int count = end - start;
+        if (count > target.remaining()) {
+            count = target.remaining();
+            // Back off to the first byte of the character that does not fit
+            while (count > 0 && (buffer.get(offset + start + count) & 0xC0) == 0x80) {
+                count--;
+            }
+        }
+        target.put(target.position(), buffer, offset + start, count);
+        target.position(target.position() + count);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -23,6 +23,29 @@ public class CommandException extends Exception{
         this.reason = reason;
     }
 
+    /**
+     * Exception Constructor allowing the stack trace capture to be skipped.
+     * Used for script errors that are only reported by reason and line number.
+     * @param command
+     * @param reason
+     * @param stackTrace false to skip filling in the stack trace
+     */
+    public CommandException(String command, String reason, boolean stackTrace) {
+        super(null, null, false, stackTrace);
+        this.command = command;
+        this.reason = reason;
+    }
+
+    /**
+     * Factory method for a CommandException without a stack trace
+     * @param command
+     * @param reason
+     * @return
+     */
+    public static CommandException stackless(String command, String reason) {
+        return new CommandException(command, reason, false);
+    }
+
     /**
      * Getter method for command
      * @return
@@ -10,6 +10,11 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.se300.store.jfr.CommandEvent;
+import com.se300.store.service.InstrumentedStoreService;
 import com.se300.store.service.StoreService;
 
 /**
@@ -21,24 +26,74 @@ import com.se300.store.service.StoreService;
  */
 public class CommandProcessor implements CommandAPI  {
 
-    StoreService storeService = new StoreService();
+    private static final Logger logger = LoggerFactory.getLogger(CommandProcessor.class);
+    private static final String PROFILE_DIRECTIVE = "profile";
+
+    StoreService storeService = new InstrumentedStoreService();
+
+    private CommandProfile lastProfile = new CommandProfile();
 
     public void processCommand(String commandBefore) throws CommandException, StoreException {
+        processCommand(commandBefore, 0);
+    }
+
+    /**
+     * Process a single command, recording it as a Flight Recorder event
+     * @param commandBefore
+     * @param lineNumber Line of the command in its script, 0 if it was not read from a file
+     * @throws CommandException
+     * @throws StoreException
+     */
+    public void processCommand(String commandBefore, int lineNumber) throws CommandException, StoreException {
+        CommandEvent event = new CommandEvent();
+        if (event.isEnabled()) {
+            event.commandType = commandType(commandBefore);
+            event.command = commandBefore;
+            event.lineNumber = lineNumber;
+            event.begin();
+        }
+        try {
+            execute(commandBefore);
+        } catch (CommandException e) {
+            event.failure = e.getReason();
+            throw e;
+        } catch (StoreException e) {
+            event.failure = e.getReason();
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Type of a command: its first two words in lower case, for example "define store"
+     * @param command
+     * @return
+     */
+    static String commandType(String command) {
+        String[] words = command.trim().toLowerCase().split("\\s+", 3);
+        return words.length < 2 ? words[0] : words[0] + " " + words[1];
+    }
+
+    private void execute(String commandBefore) throws CommandException, StoreException {
 
         List<String> tokens = new ArrayList<>();
+        List<Integer> tokenStarts = new ArrayList<>();
         //Split the line into tokens between spaces and quotes
         Matcher matcher = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(commandBefore);
-        while (matcher.find())
+        while (matcher.find()) {
             tokens.add(matcher.group(1).replace("\"", ""));
+            tokenStarts.add(matcher.start(1));
+        }
 
-        System.out.println(">>> Processing DSL : " + commandBefore);
+        logger.info(">>> Processing DSL : {}", commandBefore);
 
         String command = commandBefore.trim().replaceAll(" +", " ");
 
         if (command.toLowerCase().contains("define store")){
             storeService.provisionStore(tokens.get(2), tokens.get(4), tokens.get(6), null);
         } else if(command.toLowerCase().contains("show store")){
-            System.out.println("<<< " + storeService.showStore(tokens.get(2),null));
+            logger.info("<<< {}", storeService.showStore(tokens.get(2),null));
         } else if(command.toLowerCase().contains("define aisle")){
 
             String[] location = tokens.get(2).split(":");
@@ -48,7 +103,7 @@ public class CommandProcessor implements CommandAPI  {
         } else if(command.toLowerCase().contains("show aisle")){
 
             String[] location = tokens.get(2).split(":");
-            System.out.println("<<< " + storeService.showAisle(location[0],location[1],null));
+            logger.info("<<< {}", storeService.showAisle(location[0],location[1],null));
 
         } else if(command.toLowerCase().contains("define shelf")) {
 
@@ -59,7 +114,7 @@ public class CommandProcessor implements CommandAPI  {
         } else if(command.toLowerCase().contains("show shelf")){
 
             String[] location = tokens.get(2).split(":");
-            System.out.println ("<<< " + storeService.showShelf(location[0], location[1], location[2], null));
+            logger.info("<<< {}", storeService.showShelf(location[0], location[1], location[2], null));
 
         } else if(command.toLowerCase().contains("define product")) {
 
@@ -70,7 +125,7 @@ public class CommandProcessor implements CommandAPI  {
         } else if(command.toLowerCase().contains("show product")) {
 
             Product product = storeService.showProduct(tokens.get(2), null);
-            System.out.println("<<< " + product);
+            logger.info("<<< {}", product);
 
         } else if(command.toLowerCase().contains("define inventory")) {
 
@@ -82,12 +137,12 @@ public class CommandProcessor implements CommandAPI  {
 
         } else if(command.toLowerCase().contains("show inventory")) {
 
-            System.out.println("<<< " + storeService.showInventory(tokens.get(2), null));
+            logger.info("<<< {}", storeService.showInventory(tokens.get(2), null));
 
         } else if(command.toLowerCase().contains("update inventory")) {
 
             Inventory inventory = storeService.updateInventory(tokens.get(2),Integer.parseInt(tokens.get(4)), null );
-            System.out.println(inventory);
+            logger.info("<<< {}", inventory);
 
         } else if(command.toLowerCase().contains("define customer")){
 
@@ -99,11 +154,11 @@ public class CommandProcessor implements CommandAPI  {
             String[] location = tokens.get(4).split(":");
             Customer customer = storeService.updateCustomer(tokens.get(2), location[0], location[1], null);
 
-            System.out.println("<<< " + customer);
+            logger.info("<<< {}", customer);
 
         } else if(command.toLowerCase().contains("show customer")){
 
-            System.out.println(storeService.showCustomer(tokens.get(2),null));
+            logger.info("<<< {}", storeService.showCustomer(tokens.get(2),null));
 
         } else if(command.toLowerCase().contains("define basket")){
 
@@ -116,29 +171,29 @@ public class CommandProcessor implements CommandAPI  {
         } else if(command.toLowerCase().contains("get_customer_basket")){
 
             Basket basket = storeService.getCustomerBasket(tokens.get(1), null);
-            System.out.println("<<< " + basket);
+            logger.info("<<< {}", basket);
 
         } else if (command.toLowerCase().contains("add_basket_item")){
 
             Basket basket = storeService.addBasketProduct(tokens.get(1), tokens.get(3),
                     Integer.parseInt(tokens.get(5)), null);
-            System.out.println("<<< " + basket);
+            logger.info("<<< {}", basket);
 
         } else if (command.toLowerCase().contains("remove_basket_item")) {
 
             Basket basket = storeService.removeBasketProduct(tokens.get(1), tokens.get(3),
                     Integer.parseInt(tokens.get(5)), null);
-            System.out.println(basket);
+            logger.info("<<< {}", basket);
 
         } else if (command.toLowerCase().contains("clear_basket")){
 
             Basket basket = storeService.clearBasket(tokens.get(1),null);
-            System.out.println("<<< " + basket);
+            logger.info("<<< {}", basket);
 
         } else if (command.toLowerCase().contains("show basket_items")){
 
             Basket basket = storeService.showBasket(tokens.get(2),null);
-            System.out.println("<<< " + basket);
+            logger.info("<<< {}", basket);
 
         } else if (command.toLowerCase().contains("define device")){
 
@@ -148,22 +203,25 @@ public class CommandProcessor implements CommandAPI  {
 
         } else if (command.toLowerCase().contains("show device")){
 
-            System.out.println("<<< " + storeService.showDevice(tokens.get(2),null));
+            logger.info("<<< {}", storeService.showDevice(tokens.get(2),null));
 
         } else if (command.toLowerCase().contains("create event")){
 
-            storeService.raiseEvent(tokens.get(2), tokens.get(4) + " " + tokens.get(5),null);
+            //The event runs from its name to the end of the line
+            storeService.raiseEvent(tokens.get(2), EventParser.parse(commandBefore, tokenStarts.get(4),
+                    commandBefore.length(), new StructuredEvent()), null);
 
         } else if (command.toLowerCase().contains("create_event")){
 
-            storeService.raiseEvent(tokens.get(1), tokens.get(3) + " " + tokens.get(4) + " " + tokens.get(5),null);
+            storeService.raiseEvent(tokens.get(1), EventParser.parse(commandBefore, tokenStarts.get(3),
+                    commandBefore.length(), new StructuredEvent()), null);
 
         } else if (command.toLowerCase().contains("create command")){
 
             storeService.issueCommand(tokens.get(2), tokens.get(4) + " " + tokens.get(5),null);
 
         } else {
-            throw new CommandException(command, "Unrecognized Command");
+            throw CommandException.stackless(command, "Unrecognized Command");
         }
     }
 
@@ -180,22 +238,61 @@ public class CommandProcessor implements CommandAPI  {
         }
 
         Iterator<String> iterator = tokens.iterator();
+        CommandProfile profile = new CommandProfile();
+        boolean profiling = true;
 
         //Filter out any empty lines and lines that start with #
         for (int i = 0; iterator.hasNext(); i ++) {
             String temp = iterator.next();
             if(!temp.trim().startsWith("#") && !temp.trim().isEmpty()) {
+                //The profile directive switches timing on and off for the following lines
+                String[] directive = temp.trim().split("\\s+");
+                if (directive[0].equalsIgnoreCase(PROFILE_DIRECTIVE)) {
+                    if (directive.length == 2 && directive[1].equalsIgnoreCase("on")) {
+                        profiling = true;
+                    } else if (directive.length == 2 && directive[1].equalsIgnoreCase("off")) {
+                        profiling = false;
+                    } else {
+                        logger.warn("Failed due to: Expected profile on or profile off for Command: {} On Line Number: {}",
+                                temp, i + 1);
+                    }
+                    continue;
+                }
+
+                long start = profiling ? System.nanoTime() : 0;
+                boolean failed = true;
                 try {
-                    processCommand(temp);
+                    processCommand(temp, i + 1);
+                    failed = false;
                 } catch (CommandException e) { // none of these will ever catch
                     e.setLineNumber(i + 1);
-                    System.out.println("\u001B[31m" + "Failed due to: " + e.getReason() + " for Command: " + e.getCommand()
-                            + " On Line Number: " + e.getLineNumber() + "\u001B[0m");
+                    logger.warn("Failed due to: {} for Command: {} On Line Number: {}",
+                            e.getReason(), e.getCommand(), e.getLineNumber());
                 } catch (StoreException e) {
-                    System.out.println("\u001B[31m" + "Failed due to: " + e.getReason() + " for Command: " + e.getAction() + "\u001B[0m");
+                    logger.warn("Failed due to: {} for Command: {} On Line Number: {}",
+                            e.getReason(), e.getAction(), i + 1);
+                } finally {
+                    if (profiling) {
+                        profile.record(commandType(temp), System.nanoTime() - start, failed);
+                    }
                 }
             }
         }
 
+        lastProfile = profile;
+        if (!profile.getEntries().isEmpty()) {
+            logger.info("Command profile for {}", fileName);
+            for (String row : profile.toTable()) {
+                logger.info(row);
+            }
+        }
+    }
+
+    /**
+     * Get the command profile of the last script processed
+     * @return
+     */
+    public CommandProfile getLastProfile() {
+        return lastProfile;
     }
 }
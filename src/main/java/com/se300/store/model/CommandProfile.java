@@ -0,0 +1,118 @@
+package com.se300.store.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.se300.store.metrics.LatencyHistogram;
+
+/**
+ * CommandProfile class implementation gathering per command type timing of a script run:
+ * count, total, mean and p99 time, and failures. Command types are the first two words of a
+ * command, for example "define store".
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public class CommandProfile {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Record one command
+     * @param commandType
+     * @param nanos Time spent processing the command
+     * @param failed Whether the command failed
+     */
+    public void record(String commandType, long nanos, boolean failed) {
+        Entry entry = entries.computeIfAbsent(commandType, Entry::new);
+        entry.latency.record(nanos);
+        if (failed) {
+            entry.failures++;
+        }
+    }
+
+    /**
+     * Method returning the statistics of a command type, null if it was never recorded
+     * @param commandType
+     * @return
+     */
+    public Entry getEntry(String commandType) {
+        return entries.get(commandType);
+    }
+
+    /**
+     * Method returning the statistics of every command type, slowest total first
+     * @return
+     */
+    public List<Entry> getEntries() {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+        return sorted;
+    }
+
+    /**
+     * Method returning the summary as table rows, header first
+     * @return
+     */
+    public List<String> toTable() {
+        List<String> rows = new ArrayList<>();
+        rows.add(String.format("%-24s %8s %12s %10s %10s %8s",
+                "Command", "Count", "Total ms", "Mean ms", "p99 ms", "Failures"));
+        long count = 0;
+        long total = 0;
+        long failures = 0;
+        for (Entry entry : getEntries()) {
+            rows.add(String.format("%-24s %8d %12.3f %10.3f %10.3f %8d",
+                    entry.getCommandType(), entry.getCount(), entry.getTotalNanos() / 1e6,
+                    entry.getMeanNanos() / 1e6, entry.getP99Nanos() / 1e6, entry.getFailures()));
+            count += entry.getCount();
+            total += entry.getTotalNanos();
+            failures += entry.getFailures();
+        }
+        rows.add(String.format("%-24s %8d %12.3f %10s %10s %8d", "total", count, total / 1e6, "", "", failures));
+        return rows;
+    }
+
+    /**
+     * Statistics of one command type
+     */
+    public static class Entry {
+
+        private final String commandType;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long failures;
+
+        Entry(String commandType) {
+            this.commandType = commandType;
+        }
+
+        public String getCommandType() {
+            return commandType;
+        }
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getTotalNanos() {
+            return latency.getSum();
+        }
+
+        public long getMeanNanos() {
+            long count = getCount();
+            return count == 0 ? 0 : getTotalNanos() / count;
+        }
+
+        public long getP99Nanos() {
+            return latency.getValueAtQuantile(0.99);
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+    }
+}
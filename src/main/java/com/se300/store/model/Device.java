@@ -101,6 +101,14 @@ public abstract class Device {
      */
     public abstract void processEvent(String event);
 
+    /**
+     * Process a parsed event. Devices that do not act on the event type see its text
+     * @param event
+     */
+    public void processEvent(StructuredEvent event) {
+        processEvent(event.toString());
+    }
+
     @Override
     public String toString() {
         return "Device{" +
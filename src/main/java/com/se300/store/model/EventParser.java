@@ -0,0 +1,138 @@
+package com.se300.store.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parser of device events of the form {@code <name> <argument> ...} where an argument is a word
+ * or text in double quotes. Parses in place from characters or UTF-8 bytes, recording where the
+ * name and arguments are instead of cutting them out, so an event can be parsed into a reused
+ * {@link StructuredEvent} without allocating
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public final class EventParser {
+
+    private EventParser() {
+    }
+
+    /**
+     * Parse an event into a new structured event
+     * @param text
+     * @return
+     */
+    public static StructuredEvent parse(CharSequence text) {
+        return parse(text, 0, text.length(), new StructuredEvent());
+    }
+
+    /**
+     * Parse part of a character sequence into a structured event
+     * @param text
+     * @param start Index of the first character of the event
+     * @param end Index after the last character of the event
+     * @param into Event to parse into, reused
+     * @return The event parsed into
+     */
+    public static StructuredEvent parse(CharSequence text, int start, int end, StructuredEvent into) {
+        int from = skipWhitespace(text, start, end);
+        int to = end;
+        while (to > from && isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        into.reset(text, from, to);
+        if (from == to) {
+            return into;
+        }
+
+        int nameEnd = skipWord(text, from, to);
+        EventType type = EventType.of(text, from, nameEnd);
+        into.setName(type, from, nameEnd);
+
+        int position = skipWhitespace(text, nameEnd, to);
+        int words = type == EventType.other ? StructuredEvent.MAX_ARGUMENTS : type.getArgumentCount();
+        while (position < to) {
+            // The last argument of an event with trailing text, and the last one an other event
+            // has room for, run to the end of the event
+            if (into.getArgumentCount() == words - 1 && (type.hasTrailingText() || type == EventType.other)) {
+                addArgument(into, text, position, to);
+                break;
+            }
+            if (into.getArgumentCount() == words) {
+                into.setExtraArguments();
+                break;
+            }
+            int wordEnd = skipWord(text, position, to);
+            addArgument(into, text, position, wordEnd);
+            position = skipWhitespace(text, wordEnd, to);
+        }
+        return into;
+    }
+
+    /**
+     * Parse the UTF-8 bytes between the position and the limit of a buffer into a structured
+     * event. The buffer position is left unchanged
+     * @param buffer
+     * @param into Event to parse into, reused
+     * @return The event parsed into
+     */
+    public static StructuredEvent parse(ByteBuffer buffer, StructuredEvent into) {
+        return parse(buffer, buffer.position(), buffer.remaining(), into);
+    }
+
+    /**
+     * Parse UTF-8 bytes at an absolute offset of a buffer into a structured event, leaving the
+     * buffer position and limit unchanged
+     * @param buffer
+     * @param offset Index of the first byte of the event
+     * @param length Number of bytes of the event
+     * @param into Event to parse into, reused
+     * @return The event parsed into
+     */
+    public static StructuredEvent parse(ByteBuffer buffer, int offset, int length, StructuredEvent into) {
+        ByteSequence bytes = into.bytes().wrap(buffer, offset, length);
+        return parse(bytes, 0, length, into);
+    }
+
+    /**
+     * Record an argument, without its quotes when it is quoted
+     */
+    private static void addArgument(StructuredEvent into, CharSequence text, int start, int end) {
+        if (end - start >= 2 && text.charAt(start) == '"' && text.charAt(end - 1) == '"') {
+            into.addArgument(start + 1, end - 1);
+        } else {
+            into.addArgument(start, end);
+        }
+    }
+
+    /**
+     * End of the word or quoted text starting at a position
+     */
+    private static int skipWord(CharSequence text, int start, int end) {
+        int i = start;
+        if (text.charAt(i) == '"') {
+            i++;
+            while (i < end && text.charAt(i) != '"') {
+                i++;
+            }
+            return Math.min(i + 1, end);
+        }
+        while (i < end && !isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // ASCII only, so that no byte of a multi-byte UTF-8 character reads as whitespace
+    private static boolean isWhitespace(char c) {
+        return c <= ' ';
+    }
+}
@@ -0,0 +1,96 @@
+package com.se300.store.model;
+
+import java.util.Set;
+
+/**
+ * Enumeration representing the events devices raise, with the device types that raise each one
+ * and the arguments it carries. Arguments are single words except a trailing text argument,
+ * which runs to the end of the event and may be quoted. Event names match regardless of case;
+ * names that match no type are raised as other events with free-form arguments
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public enum EventType {
+    item_added_to_basket(Set.of(SensorType.camera.name()), false, "basketId", "productId"),
+    item_removed_from_basket(Set.of(SensorType.camera.name()), false, "basketId", "productId"),
+    customer_asked_question(Set.of(SensorType.microphone.name()), true, "customerId", "question"),
+    spilled_milk(Set.of(ApplianceType.robot.name()), false, "location"),
+    customer_question(Set.of(ApplianceType.robot.name(), ApplianceType.speaker.name()), true, "question"),
+    price_check(Set.of(ApplianceType.turnstile.name(), ApplianceType.speaker.name()), false, "productId"),
+    other(Set.of(), false);
+
+    private final Set<String> deviceTypes;
+    private final boolean trailingText;
+    private final String[] arguments;
+
+    EventType(Set<String> deviceTypes, boolean trailingText, String... arguments) {
+        this.deviceTypes = deviceTypes;
+        this.trailingText = trailingText;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Find the type named by part of a character sequence without copying it
+     * @param text
+     * @param start Index of the first character of the name
+     * @param end Index after the last character of the name
+     * @return The matching type, other when none matches
+     */
+    public static EventType of(CharSequence text, int start, int end) {
+        for (EventType type : values()) {
+            if (type != other && type.matches(text, start, end)) {
+                return type;
+            }
+        }
+        return other;
+    }
+
+    private boolean matches(CharSequence text, int start, int end) {
+        String name = name();
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a device of the given type raises this event. Other events are raised by any device
+     * @param deviceType
+     * @return
+     */
+    public boolean isSupportedBy(String deviceType) {
+        return this == other || deviceTypes.contains(deviceType);
+    }
+
+    /**
+     * Number of arguments the event carries, 0 for other events whose arguments are free-form
+     * @return
+     */
+    public int getArgumentCount() {
+        return arguments.length;
+    }
+
+    /**
+     * Name of an argument of the event
+     * @param index
+     * @return
+     */
+    public String getArgumentName(int index) {
+        return arguments[index];
+    }
+
+    /**
+     * Whether the last argument is text running to the end of the event
+     * @return
+     */
+    public boolean hasTrailingText() {
+        return trailingText;
+    }
+}
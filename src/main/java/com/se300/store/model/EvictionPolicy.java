@@ -0,0 +1,15 @@
+package com.se300.store.model;
+
+/**
+ * Enumeration representing what a Store does when a customer or basket would exceed its limits
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public enum EvictionPolicy {
+    // Refuse the newcomer
+    reject,
+    // Make room by evicting whoever arrived first
+    oldest
+}
@@ -1,5 +1,8 @@
 package com.se300.store.model;
 
+import com.se300.store.jfr.InventoryEvent;
+import com.se300.store.jfr.StockLevelEvent;
+
 /**
  * Inventory class implementation representing inventory on the shelf of the store
  *
@@ -15,6 +18,10 @@ public class Inventory {
     private int count;
     private String productId;
     private InventoryType type;
+    private int lowWatermark;
+    private int highWatermark;
+    private transient StockLevel stockLevel;
+    private transient InventoryListener inventoryListener;
 
     /**
      * Constructor for the Inventory class
@@ -32,6 +39,9 @@ public class Inventory {
         this.count = count;
         this.productId = productId;
         this.type = type;
+        this.lowWatermark = 0;
+        this.highWatermark = capacity;
+        this.stockLevel = evaluateStockLevel();
     }
 
     /**
@@ -78,8 +88,12 @@ public class Inventory {
      * Setter method for Inventory capacity on the shelf of the store
      * @param capacity
      */
-    public void setCapacity(int capacity) {
+    synchronized public void setCapacity(int capacity) {
+        //A high watermark at the old capacity follows the capacity
+        if (highWatermark == this.capacity || highWatermark > capacity)
+            highWatermark = capacity;
         this.capacity = capacity;
+        updateStockLevel();
     }
 
     /**
@@ -94,8 +108,77 @@ public class Inventory {
      * Setter method for Inventory count on the shelf of the store
      * @param count
      */
-    public void setCount(int count) {
+    synchronized public void setCount(int count) {
+        int delta = count - this.count;
         this.count = count;
+        countChanged(delta);
+        updateStockLevel();
+    }
+
+    /**
+     * Getter method for the low watermark, the Inventory is low when its count is at or below it
+     * @return
+     */
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Setter method for the low watermark
+     * @param lowWatermark
+     */
+    synchronized public void setLowWatermark(int lowWatermark) {
+        this.lowWatermark = lowWatermark;
+        updateStockLevel();
+    }
+
+    /**
+     * Getter method for the high watermark, the Inventory is high when its count is at or above it
+     * @return
+     */
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Setter method for the high watermark
+     * @param highWatermark
+     */
+    synchronized public void setHighWatermark(int highWatermark) {
+        this.highWatermark = highWatermark;
+        updateStockLevel();
+    }
+
+    /**
+     * Method for setting both watermarks at once.
+     * Throws StoreException unless 0 <= low < high <= capacity
+     * @param lowWatermark
+     * @param highWatermark
+     * @throws StoreException
+     */
+    synchronized public void setWatermarks(int lowWatermark, int highWatermark) throws StoreException {
+        if (lowWatermark < 0 || lowWatermark >= highWatermark || highWatermark > capacity)
+            throw new StoreException("Update Inventory Watermarks", "Watermarks Must Satisfy 0 <= Low < High <= Capacity");
+
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        updateStockLevel();
+    }
+
+    /**
+     * Getter method for the stock level of the Inventory relative to its watermarks
+     * @return
+     */
+    public StockLevel getStockLevel() {
+        return stockLevel;
+    }
+
+    /**
+     * Setter method for the listener notified when the count or stock level changes
+     * @param inventoryListener
+     */
+    public void setInventoryListener(InventoryListener inventoryListener) {
+        this.inventoryListener = inventoryListener;
     }
 
     /**
@@ -123,12 +206,30 @@ public class Inventory {
      */
     synchronized public void updateInventory(int count) throws StoreException {
 
-        //Check to see if count within proper bounds
-        if((this.count - count) < 0 || (this.count + count) > capacity)
-            throw new StoreException("Update Inventory", "Inventory Is Smaller Than O " +
-                    "or Larger Than Shelf Capacity");
+        InventoryEvent event = new InventoryEvent();
+        if (event.isEnabled()) {
+            event.inventoryId = id;
+            event.productId = productId;
+            event.delta = count;
+            event.capacity = capacity;
+            event.begin();
+        }
+        try {
+            //Check to see if count within proper bounds
+            if((this.count - count) < 0 || (this.count + count) > capacity)
+                throw new StoreException("Update Inventory", "Inventory Is Smaller Than O " +
+                        "or Larger Than Shelf Capacity");
 
-        this.count = this.count + count;
+            this.count = this.count + count;
+            countChanged(count);
+            updateStockLevel();
+        } catch (StoreException e) {
+            event.failure = e.getReason();
+            throw e;
+        } finally {
+            event.count = this.count;
+            event.commit();
+        }
     }
 
     /**
@@ -148,6 +249,41 @@ public class Inventory {
         this.type = type;
     }
 
+    private void countChanged(int delta) {
+        if (delta != 0 && inventoryListener != null)
+            inventoryListener.countChanged(this, delta);
+    }
+
+    private StockLevel evaluateStockLevel() {
+        if (count <= lowWatermark)
+            return StockLevel.low;
+        return count >= highWatermark ? StockLevel.high : StockLevel.normal;
+    }
+
+    /**
+     * Re-evaluate the stock level after a change, publishing the crossing if it moved.
+     * Callers hold the Inventory lock
+     */
+    private void updateStockLevel() {
+        StockLevel previous = stockLevel;
+        stockLevel = evaluateStockLevel();
+        if (previous == stockLevel)
+            return;
+
+        StockLevelEvent event = new StockLevelEvent();
+        if (event.isEnabled()) {
+            event.inventoryId = id;
+            event.storeId = inventoryLocation == null ? null : inventoryLocation.getStoreId();
+            event.productId = productId;
+            event.previous = previous == null ? null : previous.name();
+            event.level = stockLevel.name();
+            event.count = count;
+            event.commit();
+        }
+        if (inventoryListener != null)
+            inventoryListener.stockLevelChanged(this, previous, stockLevel);
+    }
+
     @Override
     public String toString() {
         return "Inventory{" +
@@ -157,6 +293,8 @@ public class Inventory {
                 ", count=" + count +
                 ", productId='" + productId + '\'' +
                 ", type='" + type + '\'' +
+                ", lowWatermark=" + lowWatermark +
+                ", highWatermark=" + highWatermark +
                 '}';
     }
 
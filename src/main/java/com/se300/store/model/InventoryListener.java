@@ -0,0 +1,29 @@
+package com.se300.store.model;
+
+/**
+ * Listener notified when the count of an Inventory changes or crosses one of its watermarks.
+ * Both methods are called while the Inventory is locked, so they should return quickly
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public interface InventoryListener {
+
+    /**
+     * Method called after the count of an Inventory changed
+     * @param inventory
+     * @param delta Count after the change minus the count before it
+     */
+    default void countChanged(Inventory inventory, int delta) {
+    }
+
+    /**
+     * Method called after the stock level of an Inventory changed
+     * @param inventory
+     * @param previous Stock level before the change
+     * @param current Stock level after the change
+     */
+    default void stockLevelChanged(Inventory inventory, StockLevel previous, StockLevel current) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.se300.store.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LogRateLimiter class implementation guarding noisy log statements. At most a fixed number of
+ * messages are let through per time window; the rest are counted so that the next message that
+ * gets through can report how many were suppressed.
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public class LogRateLimiter {
+
+    private final int permitsPerWindow;
+    private final long windowNanos;
+
+    private final AtomicLong windowStart;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Constructor for LogRateLimiter class
+     * @param permitsPerWindow
+     * @param window
+     * @param unit
+     */
+    public LogRateLimiter(int permitsPerWindow, long window, TimeUnit unit) {
+        if (permitsPerWindow <= 0 || window <= 0) {
+            throw new IllegalArgumentException("Permits and window must be positive");
+        }
+        this.permitsPerWindow = permitsPerWindow;
+        this.windowNanos = unit.toNanos(window);
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Method to check whether a message may be logged now. Never blocks
+     * @return true if the message should be logged, false if it was suppressed
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            used.set(0);
+        }
+        if (used.incrementAndGet() <= permitsPerWindow) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Method returning the number of messages suppressed since the last call and resetting it
+     * @return
+     */
+    public long drainSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+}
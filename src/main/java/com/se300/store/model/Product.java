@@ -1,5 +1,8 @@
 package com.se300.store.model;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 /**
  * Product class implementation representing products in the Stores associated with Inventory items
  *
@@ -134,6 +137,15 @@ public class Product {
         this.price = price;
     }
 
+    /**
+     * Getter method for Product price in whole cents, rounded half up. A missing price is 0
+     * @return
+     */
+    public long getPriceCents() {
+        return price == null ? 0 : BigDecimal.valueOf(price).movePointRight(2)
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
     /**
      * Getter method for Product temperature
      * @return
@@ -1,5 +1,8 @@
 package com.se300.store.model;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Sensor class implementation representing Sensor Device in the Store
  *
@@ -9,6 +12,8 @@ package com.se300.store.model;
  */
 public class Sensor extends Device{
 
+    private static final Logger logger = LoggerFactory.getLogger(Sensor.class);
+
     /**
      * Constructor for Sensor class
      * @param id
@@ -26,6 +31,18 @@ public class Sensor extends Device{
      * Notifies observers when an event is processed
      */
     public void processEvent(String event) {
-        System.out.println("<<< " + "Processing Event : " + event);
+        logger.debug("<<< Processing Event : {} on Sensor {}", event, getId());
+    }
+
+    /**
+     * Sensor specific processing of a parsed event, by its type and arguments. The arguments are
+     * only copied out of the event when they are logged
+     * @param event
+     */
+    @Override
+    public void processEvent(StructuredEvent event) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("<<< Processing {} Event : {} on Sensor {}", event.getType(), event.getArguments(), getId());
+        }
     }
 }
\ No newline at end of file
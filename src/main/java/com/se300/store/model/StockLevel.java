@@ -0,0 +1,14 @@
+package com.se300.store.model;
+
+/**
+ * Enumeration representing the stock level of an Inventory relative to its watermarks
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public enum StockLevel {
+    low,
+    normal,
+    high
+}
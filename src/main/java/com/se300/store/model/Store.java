@@ -20,6 +20,8 @@ public class Store {
     private final transient Map<String, Customer> customerMap;
     private final transient Map<String, Inventory> inventoryMap;
     private final transient Map<String, Basket> basketMap;
+    // Replaced by request threads and read without the lock when admitting customers and baskets
+    private transient volatile StoreLimits limits;
 
     /**
      * Constructor for the Store class
@@ -33,9 +35,11 @@ public class Store {
         this.description = description;
         this.aislesMap = new HashMap<>();
         this.deviceMap = new HashMap<>();
-        this.customerMap = new HashMap<>();
+        // Customers and baskets are kept in arrival order, the oldest is evicted first
+        this.customerMap = new LinkedHashMap<>();
         this.inventoryMap = new HashMap<>();
-        this.basketMap = new HashMap<>();
+        this.basketMap = new LinkedHashMap<>();
+        this.limits = StoreLimits.UNLIMITED;
     }
 
     /**
@@ -116,10 +120,19 @@ public class Store {
         Aisle aisle = this.aislesMap.get(aisleNumber);
         //Check to see if Aisle exists in the Store
         if(aisle == null){
-            throw new StoreException("Get Aisle", "Aisle Does Not Exist");
+            throw StoreException.stackless("Get Aisle", "Aisle Does Not Exist");
         }
 
-        return this.aislesMap.get(aisleNumber);
+        return aisle;
+    }
+
+    /**
+     * Find Aisle in the Store without throwing when it does not exist
+     * @param aisleNumber
+     * @return
+     */
+    public Optional<Aisle> findAisle(String aisleNumber) {
+        return Optional.ofNullable(this.aislesMap.get(aisleNumber));
     }
 
     /**
@@ -135,13 +148,21 @@ public class Store {
 
     }
 
+    /**
+     * Method for getting a Map of Inventory items that belong to the Store
+     * @return
+     */
+    public Map<String, Inventory> getInventoryMap() {
+        return this.inventoryMap;
+    }
+
     /**
      * Method for keeping local reference of the Customer in the Store.
      * If Customer already exists in the Store throw StoreException
      * @param customer
      * @throws StoreException
      */
-    public void addCustomer(Customer customer) throws StoreException {
+    public synchronized void addCustomer(Customer customer) throws StoreException {
 
         //Check to see if Customer already exists in the Store
         if(this.customerMap.putIfAbsent(customer.getId(), customer) != null)
@@ -162,13 +183,29 @@ public class Store {
 
     }
 
+    /**
+     * Method for getting a Map of Devices that belong to the Store
+     * @return
+     */
+    public Map<String, Device> getDeviceMap() {
+        return this.deviceMap;
+    }
+
+    /**
+     * Method for removing Basket from the Store
+     * @param basket
+     */
+    public synchronized void removeBasket(Basket basket) {
+        this.basketMap.remove(basket.getId(), basket);
+    }
+
     /**
      * Method for keeping local reference of the Basket in the Store.
      * If Basket already exists in the Store throw StoreException
      * @param basket
      * @throws StoreException
      */
-    public void addBasket(Basket basket) throws StoreException {
+    public synchronized void addBasket(Basket basket) throws StoreException {
         //Check to see if basket already exists in the Store
         if(this.basketMap.putIfAbsent(basket.getId(), basket) != null)
             throw new StoreException("Add Device", "Device Already Exists");
@@ -180,7 +217,7 @@ public class Store {
      * @param customerId
      * @return
      */
-    public Customer getCustomer(String customerId){
+    public synchronized Customer getCustomer(String customerId){
         return this.customerMap.get(customerId);
     }
 
@@ -188,11 +225,72 @@ public class Store {
      * Method for removing Customer from the Store
      * @param customer
      */
-    public void removeCustomer(Customer customer){
+    public synchronized void removeCustomer(Customer customer){
+        this.customerMap.remove(customer.getId(), customer);
+    }
 
-        if(this.customerMap.get(customer.getId()) == null){
-            this.customerMap.remove(customer.getId());
-        }
+    /**
+     * Method getting the Customers in the Store, in the order they arrived
+     * @return
+     */
+    public synchronized List<Customer> getCustomers() {
+        return new ArrayList<>(this.customerMap.values());
+    }
+
+    /**
+     * Method getting the Baskets in use in the Store, in the order they were assigned
+     * @return
+     */
+    public synchronized List<Basket> getBaskets() {
+        return new ArrayList<>(this.basketMap.values());
+    }
+
+    /**
+     * Method getting the Customer who arrived first, null when the Store is empty
+     * @return
+     */
+    public synchronized Customer getOldestCustomer() {
+        return this.customerMap.isEmpty() ? null : this.customerMap.values().iterator().next();
+    }
+
+    /**
+     * Method getting the Basket assigned first, null when no Basket is in use
+     * @return
+     */
+    public synchronized Basket getOldestBasket() {
+        return this.basketMap.isEmpty() ? null : this.basketMap.values().iterator().next();
+    }
+
+    /**
+     * Method getting the number of Customers in the Store
+     * @return
+     */
+    public synchronized int getCustomerCount() {
+        return this.customerMap.size();
+    }
+
+    /**
+     * Method getting the number of Baskets in use in the Store
+     * @return
+     */
+    public synchronized int getBasketCount() {
+        return this.basketMap.size();
+    }
+
+    /**
+     * Method getting the customer and basket limits of the Store
+     * @return
+     */
+    public StoreLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Method setting the customer and basket limits of the Store
+     * @param limits
+     */
+    public void setLimits(StoreLimits limits) {
+        this.limits = limits;
     }
 
     @Override
@@ -21,6 +21,30 @@ public class StoreException extends Exception{
         this.reason = reason;
     }
 
+    /**
+     * Exception Constructor allowing the stack trace capture to be skipped.
+     * Stackless exceptions are cheap to throw and meant for expected outcomes such as
+     * "Does Not Exist" that are reported to the caller and never logged with a trace.
+     * @param action
+     * @param reason
+     * @param stackTrace false to skip filling in the stack trace
+     */
+    public StoreException(String action, String reason, boolean stackTrace) {
+        super(null, null, false, stackTrace);
+        this.action = action;
+        this.reason = reason;
+    }
+
+    /**
+     * Factory method for a StoreException without a stack trace
+     * @param action
+     * @param reason
+     * @return
+     */
+    public static StoreException stackless(String action, String reason) {
+        return new StoreException(action, reason, false);
+    }
+
     /**
      * Getter method for action
      * @return
@@ -0,0 +1,73 @@
+package com.se300.store.model;
+
+/**
+ * StoreLimits class implementation representing how many customers and baskets a Store holds
+ * at once, and what happens to a newcomer once a limit is reached. A limit of 0 means no limit.
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public class StoreLimits {
+
+    public static final StoreLimits UNLIMITED = new StoreLimits(0, 0, EvictionPolicy.oldest);
+
+    private final int maxCustomers;
+    private final int maxBaskets;
+    private final EvictionPolicy evictionPolicy;
+
+    /**
+     * Constructor for the StoreLimits class
+     * @param maxCustomers Customers in the store at once, 0 for no limit
+     * @param maxBaskets Baskets in use in the store at once, 0 for no limit
+     * @param evictionPolicy
+     * @throws IllegalArgumentException If a limit is negative or the policy is missing
+     */
+    public StoreLimits(int maxCustomers, int maxBaskets, EvictionPolicy evictionPolicy) {
+        if (maxCustomers < 0 || maxBaskets < 0 || evictionPolicy == null) {
+            throw new IllegalArgumentException("Limits must not be negative and need an eviction policy");
+        }
+        this.maxCustomers = maxCustomers;
+        this.maxBaskets = maxBaskets;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public int getMaxCustomers() {
+        return maxCustomers;
+    }
+
+    public int getMaxBaskets() {
+        return maxBaskets;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Whether a store already holding the given number of customers is full
+     * @param customers
+     * @return
+     */
+    public boolean isCustomerLimitReached(int customers) {
+        return maxCustomers > 0 && customers >= maxCustomers;
+    }
+
+    /**
+     * Whether a store already holding the given number of baskets is full
+     * @param baskets
+     * @return
+     */
+    public boolean isBasketLimitReached(int baskets) {
+        return maxBaskets > 0 && baskets >= maxBaskets;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreLimits{" +
+                "maxCustomers=" + maxCustomers +
+                ", maxBaskets=" + maxBaskets +
+                ", evictionPolicy=" + evictionPolicy +
+                '}';
+    }
+}
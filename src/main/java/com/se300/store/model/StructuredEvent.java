@@ -0,0 +1,199 @@
+package com.se300.store.model;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A device event parsed by {@link EventParser}: its type and arguments as positions in the text
+ * it was parsed from. Arguments are read as views of that text, so parsing copies no characters.
+ * The text must not change while the event is in use; an event can be reused by parsing into it
+ * again
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ * @since   2025-09-25
+ */
+public class StructuredEvent {
+
+    static final int MAX_ARGUMENTS = 8;
+
+    private CharSequence source;
+    private int start;
+    private int end;
+    private EventType type = EventType.other;
+    private int nameStart;
+    private int nameEnd;
+    private final int[] argumentStarts = new int[MAX_ARGUMENTS];
+    private final int[] argumentEnds = new int[MAX_ARGUMENTS];
+    private int argumentCount;
+    private boolean extraArguments;
+    private String text;
+    // Reused view of the bytes the event was last parsed from
+    private ByteSequence bytes;
+    // Reused encoder of events parsed from characters
+    private CharsetEncoder encoder;
+
+    void reset(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.type = EventType.other;
+        this.nameStart = start;
+        this.nameEnd = start;
+        this.argumentCount = 0;
+        this.extraArguments = false;
+        this.text = null;
+    }
+
+    void setName(EventType type, int nameStart, int nameEnd) {
+        this.type = type;
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+    }
+
+    boolean addArgument(int argumentStart, int argumentEnd) {
+        if (argumentCount == MAX_ARGUMENTS) {
+            extraArguments = true;
+            return false;
+        }
+        argumentStarts[argumentCount] = argumentStart;
+        argumentEnds[argumentCount] = argumentEnd;
+        argumentCount++;
+        return true;
+    }
+
+    void setExtraArguments() {
+        this.extraArguments = true;
+    }
+
+    ByteSequence bytes() {
+        if (bytes == null) {
+            bytes = new ByteSequence();
+        }
+        return bytes;
+    }
+
+    /**
+     * Getter method for the Event type
+     * @return
+     */
+    public EventType getType() {
+        return type;
+    }
+
+    /**
+     * The event name as it was raised
+     * @return
+     */
+    public CharSequence getName() {
+        return view(nameStart, nameEnd);
+    }
+
+    /**
+     * Number of arguments the event was raised with
+     * @return
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * An argument of the event, without the quotes around quoted text
+     * @param index
+     * @return
+     */
+    public CharSequence getArgument(int index) {
+        if (index < 0 || index >= argumentCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return view(argumentStarts[index], argumentEnds[index]);
+    }
+
+    /**
+     * An argument of the event by the name its type gives it
+     * @param name
+     * @return The argument, null when the type has no such argument or it was not raised
+     */
+    public CharSequence getArgument(String name) {
+        for (int i = 0; i < type.getArgumentCount() && i < argumentCount; i++) {
+            if (type.getArgumentName(i).equals(name)) {
+                return getArgument(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The arguments of the event as strings
+     * @return
+     */
+    public List<String> getArguments() {
+        List<String> arguments = new ArrayList<>(argumentCount);
+        for (int i = 0; i < argumentCount; i++) {
+            arguments.add(getArgument(i).toString());
+        }
+        return arguments;
+    }
+
+    /**
+     * Whether the event carries the arguments its type calls for. Other events always do
+     * @return
+     */
+    public boolean isWellFormed() {
+        return type == EventType.other
+                || (argumentCount == type.getArgumentCount() && !extraArguments);
+    }
+
+    private CharSequence view(int from, int to) {
+        return source instanceof ByteSequence
+                ? source.subSequence(from, to)
+                : CharBuffer.wrap(source, from, to);
+    }
+
+    /**
+     * The event text as a view of what it was parsed from, without copying it. Text parsed from
+     * bytes reads one character per byte, like the arguments
+     * @return
+     */
+    public CharSequence getText() {
+        return source == null ? "" : view(start, end);
+    }
+
+    /**
+     * Write the event text as UTF-8 into a buffer, as much of it as fits without splitting a
+     * character. Text parsed from bytes is copied as it is, without decoding it
+     * @param target
+     */
+    public void encodeTo(ByteBuffer target) {
+        if (source instanceof ByteSequence sequence) {
+            sequence.copyTo(start, end, target);
+        } else if (source != null) {
+            if (encoder == null) {
+                encoder = StandardCharsets.UTF_8.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            encoder.reset();
+            if (!encoder.encode(CharBuffer.wrap(source, start, end), target, true).isOverflow()) {
+                encoder.flush(target);
+            }
+        }
+    }
+
+    /**
+     * The event text as it was raised. Decoded once and kept until the event is reused
+     * @return
+     */
+    @Override
+    public String toString() {
+        if (text == null) {
+            text = source == null ? "" : source.subSequence(start, end).toString();
+        }
+        return text;
+    }
+}
@@ -0,0 +1,43 @@
+package com.se300.store.service;
+
+/**
+ * A device event or command as kept in the device event archive.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class ArchivedEvent {
+    private final long timestamp;
+    private final String kind;
+    private final String deviceId;
+    private final String payload;
+
+    ArchivedEvent(long timestamp, String kind, String deviceId, String payload) {
+        this.timestamp = timestamp;
+        this.kind = kind;
+        this.deviceId = deviceId;
+        this.payload = payload;
+    }
+
+    /**
+     * When the event was raised or the command issued, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * "event" or "command"
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
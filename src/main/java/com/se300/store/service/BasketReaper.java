@@ -0,0 +1,59 @@
+package com.se300.store.service;
+
+import java.util.function.LongSupplier;
+
+import com.se300.store.model.Basket;
+import com.se300.store.model.Customer;
+
+/**
+ * Expires baskets that have been idle for too long, returning their products to the shelves and
+ * dropping them from the Store Service. A basket coming due is checked against its latest
+ * activity (and the last time its customer was seen) and rescheduled if it is still in use.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class BasketReaper extends IdleReaper<Basket> {
+
+    private final StoreService storeService;
+
+    /**
+     * Constructor for BasketReaper
+     * @param storeService Service owning the baskets
+     * @param idleMillis How long a basket may be idle before it expires
+     * @param tickMillis How often idle baskets are looked for
+     * @param clock Current time in milliseconds
+     */
+    public BasketReaper(StoreService storeService, long idleMillis, long tickMillis, LongSupplier clock) {
+        super("basket", idleMillis, tickMillis, clock);
+        this.storeService = storeService;
+    }
+
+    /**
+     * Start watching a basket for inactivity
+     * @param basket
+     */
+    public void track(Basket basket) {
+        schedule(basket);
+    }
+
+    @Override
+    protected long lastActive(Basket basket) {
+        long lastActive = basket.getLastActivity();
+        Customer customer = basket.getCustomer();
+        if (customer != null && customer.getLastSeen() != null) {
+            lastActive = Math.max(lastActive, customer.getLastSeen().getTime());
+        }
+        return lastActive;
+    }
+
+    @Override
+    protected boolean expire(Basket basket) {
+        return storeService.expireBasket(basket);
+    }
+
+    @Override
+    protected String idOf(Basket basket) {
+        return basket.getId();
+    }
+}
@@ -0,0 +1,84 @@
+package com.se300.store.service;
+
+import java.util.Map;
+
+/**
+ * Acknowledgements of a command broadcast to a group of appliances: how every targeted appliance
+ * completed it, by device id. An appliance acknowledges with {@code executed} or
+ * {@code superseded}, or with the reason it did not process the command, such as a full queue.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class BroadcastResult {
+    private final String storeId;
+    private final String aisleNumber;
+    private final String type;
+    private final String command;
+    private final int targets;
+    private final int executed;
+    private final int superseded;
+    private final int failed;
+    private final Map<String, String> acknowledgements;
+
+    BroadcastResult(String storeId, String aisleNumber, String type, String command, int executed, int superseded,
+                    Map<String, String> acknowledgements) {
+        this.storeId = storeId;
+        this.aisleNumber = aisleNumber;
+        this.type = type;
+        this.command = command;
+        this.targets = acknowledgements.size();
+        this.executed = executed;
+        this.superseded = superseded;
+        this.failed = targets - executed - superseded;
+        this.acknowledgements = acknowledgements;
+    }
+
+    public String getStoreId() {
+        return storeId;
+    }
+
+    /**
+     * Aisle the broadcast was limited to, null for the whole store
+     */
+    public String getAisleNumber() {
+        return aisleNumber;
+    }
+
+    /**
+     * Appliance type the broadcast was limited to, null for every type
+     */
+    public String getType() {
+        return type;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Number of appliances the command was sent to
+     */
+    public int getTargets() {
+        return targets;
+    }
+
+    public int getExecuted() {
+        return executed;
+    }
+
+    public int getSuperseded() {
+        return superseded;
+    }
+
+    /**
+     * Number of appliances that did not process the command, whether rejected or failed
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    public Map<String, String> getAcknowledgements() {
+        return acknowledgements;
+    }
+}
@@ -0,0 +1,239 @@
+package com.se300.store.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.se300.store.model.Appliance;
+import com.se300.store.model.StoreException;
+
+/**
+ * Runs appliance commands in the order they were issued per appliance, on a small shared pool of
+ * threads rather than one per appliance. Every appliance has a bounded queue of pending commands;
+ * an appliance with pending commands is drained by one pool thread at a time, a slice of commands
+ * per turn so that a busy appliance does not hold up the others.
+ * A setting command, one whose name starts with {@code set_} such as {@code set_volume 7},
+ * replaces the same setting command when that is the last one still pending, so a burst of
+ * setting changes is processed once with the final value and no other command is reordered.
+ * Every command issued gets a future completed once it is processed or replaced.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class CommandDispatcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandDispatcher.class);
+
+    private static final int SLICE = 32;
+    private static final String SETTING_PREFIX = "set_";
+
+    private final int queueCapacity;
+    private final BiConsumer<Appliance, String> processor;
+    private final ExecutorService executor;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Constructor for CommandDispatcher
+     * @param threads Number of threads processing commands
+     * @param queueCapacity Number of commands that may be pending per appliance
+     * @param processor Processes one command on an appliance
+     */
+    public CommandDispatcher(int threads, int queueCapacity, BiConsumer<Appliance, String> processor) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+        this.processor = processor;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "appliance-commands-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a command for an appliance
+     * @param appliance
+     * @param command
+     * @return Future completed with how the command was completed, or exceptionally when the
+     *         appliance failed to process it
+     * @throws StoreException If the appliance already has as many commands pending as allowed, or
+     *                        the dispatcher is closed
+     */
+    public CompletableFuture<CommandOutcome> submit(Appliance appliance, String command) throws StoreException {
+        if (closed) {
+            throw StoreException.stackless("Issue Command", "Command Queue Is Closed");
+        }
+        Mailbox mailbox = mailboxes.computeIfAbsent(appliance.getId(), id -> new Mailbox());
+        CompletableFuture<CommandOutcome> future = new CompletableFuture<>();
+        boolean schedule;
+        synchronized (mailbox) {
+            PendingCommand last = mailbox.pending.peekLast();
+            if (last != null && last.appliance == appliance && supersedes(command, last.command)) {
+                last.supersede(command, future);
+                return future;
+            }
+            if (mailbox.pending.size() >= queueCapacity) {
+                throw StoreException.stackless("Issue Command", "Command Queue Is Full");
+            }
+            mailbox.pending.addLast(new PendingCommand(appliance, command, future));
+            schedule = !mailbox.scheduled;
+            mailbox.scheduled = true;
+        }
+        if (schedule) {
+            schedule(mailbox);
+        }
+        return future;
+    }
+
+    /**
+     * Number of commands pending for an appliance
+     * @param deviceId
+     * @return
+     */
+    public int getPendingCount(String deviceId) {
+        Mailbox mailbox = mailboxes.get(deviceId);
+        if (mailbox == null) {
+            return 0;
+        }
+        synchronized (mailbox) {
+            return mailbox.pending.size();
+        }
+    }
+
+    /**
+     * Forget the queue of an appliance that is gone. Commands already pending are still processed
+     * @param deviceId
+     */
+    public void remove(String deviceId) {
+        mailboxes.remove(deviceId);
+    }
+
+    /**
+     * Stop taking commands. Every command already pending is still processed; this waits up to
+     * ten seconds for them
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether a command replaces a pending one: both set the same setting
+     */
+    static boolean supersedes(String command, String pending) {
+        int length = nameLength(command);
+        return length > SETTING_PREFIX.length()
+                && command.regionMatches(true, 0, SETTING_PREFIX, 0, SETTING_PREFIX.length())
+                && length == nameLength(pending)
+                && command.regionMatches(true, 0, pending, 0, length);
+    }
+
+    private static int nameLength(String command) {
+        int i = 0;
+        while (i < command.length() && !Character.isWhitespace(command.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private void schedule(Mailbox mailbox) {
+        try {
+            executor.execute(() -> drain(mailbox, SLICE));
+        } catch (RejectedExecutionException e) {
+            // Closed, no more turns are taken, so what is pending is finished right here
+            drain(mailbox, Integer.MAX_VALUE);
+        }
+    }
+
+    private void drain(Mailbox mailbox, int slice) {
+        for (int i = 0; i < slice; i++) {
+            PendingCommand command;
+            synchronized (mailbox) {
+                command = mailbox.pending.pollFirst();
+                if (command == null) {
+                    mailbox.scheduled = false;
+                    return;
+                }
+            }
+            command.process(processor);
+        }
+        // Take another turn later, behind the appliances already waiting
+        schedule(mailbox);
+    }
+
+    /**
+     * Pending commands of one appliance; scheduled while a turn to drain them is queued or running
+     */
+    private static final class Mailbox {
+        final ArrayDeque<PendingCommand> pending = new ArrayDeque<>();
+        boolean scheduled;
+    }
+
+    /**
+     * A command waiting for its turn. Replaced only while it is still the last one pending, so its
+     * fields are guarded by the mailbox until it is taken off
+     */
+    private static final class PendingCommand {
+        final Appliance appliance;
+        String command;
+        CompletableFuture<CommandOutcome> future;
+        List<CompletableFuture<CommandOutcome>> superseded;
+
+        PendingCommand(Appliance appliance, String command, CompletableFuture<CommandOutcome> future) {
+            this.appliance = appliance;
+            this.command = command;
+            this.future = future;
+        }
+
+        void supersede(String command, CompletableFuture<CommandOutcome> future) {
+            if (superseded == null) {
+                superseded = new ArrayList<>();
+            }
+            superseded.add(this.future);
+            this.command = command;
+            this.future = future;
+        }
+
+        void process(BiConsumer<Appliance, String> processor) {
+            try {
+                processor.accept(appliance, command);
+            } catch (RuntimeException e) {
+                logger.error("Appliance {} failed to process {}", appliance.getId(), command, e);
+                fail(e);
+                return;
+            }
+            future.complete(CommandOutcome.executed);
+            if (superseded != null) {
+                superseded.forEach(replaced -> replaced.complete(CommandOutcome.superseded));
+            }
+        }
+
+        void fail(Throwable failure) {
+            future.completeExceptionally(failure);
+            if (superseded != null) {
+                superseded.forEach(replaced -> replaced.completeExceptionally(failure));
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.se300.store.service;
+
+/**
+ * Enumeration representing how an issued appliance command was completed
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public enum CommandOutcome {
+    // The appliance processed the command
+    executed,
+    // A later command of the same setting replaced it before it was processed, and has been processed
+    superseded
+}
@@ -0,0 +1,74 @@
+package com.se300.store.service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import com.se300.store.model.Customer;
+
+/**
+ * Counts customers out of the occupancy of their store once they have not been seen for too
+ * long, since nothing reports a customer walking out. Being seen again only updates a timestamp,
+ * and a customer coming due is checked against his/her latest one and rescheduled if he/she was
+ * seen since. A customer counted out is counted in again the next time he/she is seen.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class CustomerReaper extends IdleReaper<Customer> {
+
+    private final StoreService storeService;
+    // Last time each watched customer was counted in or seen by the service
+    private final Map<Customer, Long> counted = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for CustomerReaper
+     * @param storeService Service counting the customers
+     * @param idleMillis How long a customer may go without being seen before he/she is counted out
+     * @param tickMillis How often unseen customers are looked for
+     * @param clock Current time in milliseconds
+     */
+    public CustomerReaper(StoreService storeService, long idleMillis, long tickMillis, LongSupplier clock) {
+        super("customer", idleMillis, tickMillis, clock);
+        this.storeService = storeService;
+    }
+
+    /**
+     * Note that a customer was counted in or seen, and start watching him/her unless already watched
+     * @param customer
+     */
+    public void track(Customer customer) {
+        if (counted.put(customer, now()) == null) {
+            schedule(customer);
+        }
+    }
+
+    @Override
+    protected boolean isIdle(Customer customer, long now) {
+        Long countedAt = counted.get(customer);
+        // Seen since, or counted in again while this was deciding, so not due yet
+        return (super.isIdle(customer, now) || !storeService.isCounted(customer))
+                && counted.remove(customer, countedAt);
+    }
+
+    @Override
+    protected long lastActive(Customer customer) {
+        long lastActive = counted.getOrDefault(customer, 0L);
+        Date lastSeen = customer.getLastSeen();
+        if (lastSeen != null) {
+            lastActive = Math.max(lastActive, lastSeen.getTime());
+        }
+        return lastActive;
+    }
+
+    @Override
+    protected boolean expire(Customer customer) {
+        return storeService.expireCustomer(customer);
+    }
+
+    @Override
+    protected String idOf(Customer customer) {
+        return customer.getId();
+    }
+}
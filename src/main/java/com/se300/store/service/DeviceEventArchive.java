@@ -0,0 +1,443 @@
+package com.se300.store.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only archive of device events and commands on local disk. The archive is a directory of
+ * numbered segments; a segment is a sequence of blocks, each holding up to 64 KB of records
+ * compressed on its own with {@link Deflater}, and comes with a sparse index file giving the
+ * time range and file offset of every block, so a query only inflates the blocks that may hold
+ * events in its range.
+ * Appending only puts the event on a bounded queue. A background thread drains the queue in
+ * batches, writes whole blocks to the end of the active segment, rolls to a new segment once
+ * the active one is large or old enough and deletes segments past the retention period. When
+ * the queue is full events are dropped and counted rather than making the caller wait.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class DeviceEventArchive implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceEventArchive.class);
+
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final int QUEUE_CAPACITY = 65_536;
+    private static final int BATCH_SIZE = 1_024;
+    private static final long FLUSH_MILLIS = 1_000;
+    private static final int BLOCK_HEADER_BYTES = 8;
+    private static final int INDEX_ENTRY_BYTES = 24;
+    // Keeps every string within what DataOutput.writeUTF accepts
+    private static final int MAX_STRING_LENGTH = 16_384;
+    private static final byte EVENT = 0;
+    private static final byte COMMAND = 1;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long rollMillis;
+    private final long retentionMillis;
+    private final BlockingQueue<ArchivedEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Owned by the writer thread
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_BYTES + 1_024);
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private long blockMin = Long.MAX_VALUE;
+    private long blockMax = Long.MIN_VALUE;
+    private Segment active;
+    private FileChannel activeData;
+    private FileChannel activeIndex;
+    private long lastFlush;
+    private long nextSequence;
+
+    /**
+     * Open the archive in a directory, keeping the segments already there, and start writing
+     * @param directory
+     * @param segmentBytes Compressed size at which the active segment is rolled
+     * @param rollMillis Age at which the active segment is rolled
+     * @param retentionMillis How long segments are kept after their last event
+     * @throws IOException If the directory or its segments cannot be read
+     */
+    public DeviceEventArchive(Path directory, long segmentBytes, long rollMillis, long retentionMillis)
+            throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.rollMillis = rollMillis;
+        this.retentionMillis = retentionMillis;
+        Files.createDirectories(directory);
+        load();
+        this.lastFlush = System.currentTimeMillis();
+        this.writer = new Thread(this::write, "device-event-archive");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue an event for the archive without waiting
+     * @param timestamp
+     * @param kind "event" or "command"
+     * @param deviceId
+     * @param payload
+     * @return Whether the event was queued, false when the archive is behind or closed
+     */
+    public boolean append(long timestamp, String kind, String deviceId, String payload) {
+        if (running && queue.offer(new ArchivedEvent(timestamp, kind, truncate(deviceId), truncate(payload)))) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Find archived events in a time range, oldest segment first. Events still on the queue or
+     * in the block being filled are not visible yet
+     * @param deviceId Only events of this device, any when null
+     * @param from Start of the range in milliseconds since the epoch, inclusive
+     * @param to End of the range, exclusive
+     * @param limit Maximum number of events returned
+     * @return
+     */
+    public List<ArchivedEvent> read(String deviceId, long from, long to, int limit) {
+        List<ArchivedEvent> events = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try {
+            for (Segment segment : segments) {
+                if (events.size() >= limit) {
+                    break;
+                }
+                List<IndexEntry> entries = segment.entries;
+                if (entries.isEmpty() || segment.maxTimestamp < from || segment.minTimestamp >= to) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(segment.data, StandardOpenOption.READ)) {
+                    for (IndexEntry entry : entries) {
+                        if (entry.maxTimestamp < from || entry.minTimestamp >= to) {
+                            continue;
+                        }
+                        readBlock(channel, entry.offset, inflater, deviceId, from, to, limit, events);
+                        if (events.size() >= limit) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    // Deleted by retention while being read, or damaged; skip what cannot be read
+                    logger.warn("Could not read archive segment {}: {}", segment.data, e.getMessage());
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return events;
+    }
+
+    /**
+     * Number of events dropped because the archive could not keep up
+     * @return
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Number of segments on disk, including the active one
+     * @return
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Write everything queued so far, then stop
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        List<ArchivedEvent> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            expire(System.currentTimeMillis());
+            while (running || !queue.isEmpty()) {
+                ArchivedEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    for (ArchivedEvent event : batch) {
+                        writeRecord(event);
+                    }
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastFlush >= FLUSH_MILLIS) {
+                    flushBlock();
+                    if (active != null && (active.size >= segmentBytes || now - active.opened >= rollMillis)) {
+                        roll();
+                    }
+                    expire(now);
+                    lastFlush = now;
+                }
+            }
+            roll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            running = false;
+            logger.error("Device event archive stopped", e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeRecord(ArchivedEvent event) throws IOException {
+        blockOut.writeLong(event.getTimestamp());
+        blockOut.writeByte("command".equals(event.getKind()) ? COMMAND : EVENT);
+        blockOut.writeUTF(event.getDeviceId());
+        blockOut.writeUTF(event.getPayload());
+        blockMin = Math.min(blockMin, event.getTimestamp());
+        blockMax = Math.max(blockMax, event.getTimestamp());
+        if (block.size() >= BLOCK_BYTES) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Compress the block being filled and append it and its index entry to the active segment
+     */
+    private void flushBlock() throws IOException {
+        if (block.size() == 0) {
+            return;
+        }
+        if (active == null) {
+            open();
+        }
+        byte[] raw = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8_192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        long offset = active.size;
+        ByteBuffer data = ByteBuffer.allocate(BLOCK_HEADER_BYTES + compressed.size());
+        data.putInt(compressed.size()).putInt(raw.length).put(compressed.toByteArray()).flip();
+        writeFully(activeData, data);
+        ByteBuffer index = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        index.putLong(blockMin).putLong(blockMax).putLong(offset).flip();
+        writeFully(activeIndex, index);
+
+        // Readers only see the block once it is on disk
+        active.size = offset + BLOCK_HEADER_BYTES + compressed.size();
+        active.add(new IndexEntry(blockMin, blockMax, offset));
+        block.reset();
+        blockMin = Long.MAX_VALUE;
+        blockMax = Long.MIN_VALUE;
+    }
+
+    private void open() throws IOException {
+        long sequence = nextSequence++;
+        Segment segment = new Segment(sequence, directory.resolve(String.format("segment-%012d.dat", sequence)),
+                directory.resolve(String.format("segment-%012d.idx", sequence)), System.currentTimeMillis());
+        activeData = FileChannel.open(segment.data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        activeIndex = FileChannel.open(segment.index, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        active = segment;
+        segments.add(segment);
+    }
+
+    /**
+     * Close the active segment, the next block starts a new one
+     */
+    private void roll() throws IOException {
+        flushBlock();
+        if (active != null) {
+            activeData.force(false);
+            activeIndex.force(false);
+            activeData.close();
+            activeIndex.close();
+            logger.info("Rolled archive segment {} at {} bytes", active.data.getFileName(), active.size);
+            active = null;
+        }
+    }
+
+    /**
+     * Delete the closed segments whose last event is past the retention period
+     */
+    private void expire(long now) throws IOException {
+        for (Segment segment : segments) {
+            if (segment != active && segment.maxTimestamp < now - retentionMillis) {
+                segments.remove(segment);
+                Files.deleteIfExists(segment.data);
+                Files.deleteIfExists(segment.index);
+                logger.info("Deleted archive segment {} past retention", segment.data.getFileName());
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        List<Segment> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.dat")) {
+            for (Path data : files) {
+                String name = data.getFileName().toString();
+                long sequence = Long.parseLong(name.substring("segment-".length(), name.length() - ".dat".length()));
+                Path index = directory.resolve(name.replace(".dat", ".idx"));
+                Segment segment = new Segment(sequence, data, index, Files.getLastModifiedTime(data).toMillis());
+                long dataSize = Files.size(data);
+                if (Files.exists(index)) {
+                    ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(index));
+                    // A block interrupted by a crash has no index entry, or one past the end of the data
+                    while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+                        IndexEntry entry = new IndexEntry(entries.getLong(), entries.getLong(), entries.getLong());
+                        if (entry.offset + BLOCK_HEADER_BYTES > dataSize) {
+                            break;
+                        }
+                        segment.add(entry);
+                    }
+                }
+                segment.size = dataSize;
+                loaded.add(segment);
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            }
+        }
+        loaded.sort(Comparator.comparingLong(segment -> segment.sequence));
+        segments.addAll(loaded);
+    }
+
+    private static void readBlock(FileChannel channel, long offset, Inflater inflater, String deviceId,
+                                  long from, long to, int limit, List<ArchivedEvent> events) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        readFully(channel, header, offset);
+        header.flip();
+        int compressedLength = header.getInt();
+        int rawLength = header.getInt();
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        readFully(channel, compressed, offset + BLOCK_HEADER_BYTES);
+
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed.array());
+        try {
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (count == 0 && inflater.needsInput()) {
+                    throw new IOException("Archive block at " + offset + " is truncated");
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Archive block at " + offset + " is damaged", e);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        try {
+            while (in.available() > 0 && events.size() < limit) {
+                long timestamp = in.readLong();
+                String kind = in.readByte() == COMMAND ? "command" : "event";
+                String device = in.readUTF();
+                String payload = in.readUTF();
+                if (timestamp >= from && timestamp < to && (deviceId == null || deviceId.equals(device))) {
+                    events.add(new ArchivedEvent(timestamp, kind, device, payload));
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Archive block at " + offset + " ends mid record", e);
+        }
+    }
+
+    private static String truncate(String text) {
+        return text.length() > MAX_STRING_LENGTH ? text.substring(0, MAX_STRING_LENGTH) : text;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Archive segment ends at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * A segment file, its index file and the blocks written to it so far
+     */
+    private static final class Segment {
+        private final long sequence;
+        private final Path data;
+        private final Path index;
+        private final long opened;
+        private final List<IndexEntry> entries = new CopyOnWriteArrayList<>();
+        private volatile long size;
+        private volatile long minTimestamp = Long.MAX_VALUE;
+        private volatile long maxTimestamp = Long.MIN_VALUE;
+
+        Segment(long sequence, Path data, Path index, long opened) {
+            this.sequence = sequence;
+            this.data = data;
+            this.index = index;
+            this.opened = opened;
+        }
+
+        void add(IndexEntry entry) {
+            minTimestamp = Math.min(minTimestamp, entry.minTimestamp);
+            maxTimestamp = Math.max(maxTimestamp, entry.maxTimestamp);
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Time range and file offset of one block
+     */
+    private static final class IndexEntry {
+        private final long minTimestamp;
+        private final long maxTimestamp;
+        private final long offset;
+
+        IndexEntry(long minTimestamp, long maxTimestamp, long offset) {
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.se300.store.service;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.se300.store.model.EventParser;
+import com.se300.store.model.StoreException;
+import com.se300.store.model.StructuredEvent;
+
+/**
+ * Consumer of a {@link DeviceEventRing}: a background thread polls the ring and raises the events
+ * a co-located process wrote into it. Each poll takes every record published so far, up to a
+ * batch, parses the events in place in the mapped file and raises them before handing their
+ * space back to the producer. While events keep coming the thread spins, so an event is picked
+ * up moments after it is published; once the ring has been empty for a while it parks for
+ * growing intervals of up to a millisecond.
+ * Events the store rejects are counted, as are jumps in the record sequence numbers. Events left
+ * in the ring when the feed is closed are raised by the next feed of the same file.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class DeviceEventFeed implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceEventFeed.class);
+
+    private static final int BATCH_SIZE = 1_024;
+    private static final int SPIN_POLLS = 10_000;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final StoreService storeService;
+    private final DeviceEventRing ring;
+    private final Thread consumer;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong sequenceGaps = new AtomicLong();
+    private volatile boolean running = true;
+
+    // Owned by the consumer thread
+    private final String[] deviceIds = new String[BATCH_SIZE];
+    private final StructuredEvent[] events = new StructuredEvent[BATCH_SIZE];
+    private final DeviceIdCache deviceIdCache = new DeviceIdCache();
+    private long nextSequence = -1;
+
+    /**
+     * Start raising the events written into a ring
+     * @param storeService Service the events are raised through
+     * @param ring
+     */
+    public DeviceEventFeed(StoreService storeService, DeviceEventRing ring) {
+        this.storeService = storeService;
+        this.ring = ring;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            events[i] = new StructuredEvent();
+        }
+        this.consumer = new Thread(this::consume, "device-event-feed");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Number of events read from the ring and handed to the store
+     * @return
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Number of events read that the store rejected, e.g. for an unknown device
+     * @return
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of times a record did not carry the sequence number after the one before, e.g.
+     * because the producer restarted its numbering
+     * @return
+     */
+    public long getSequenceGaps() {
+        return sequenceGaps.get();
+    }
+
+    /**
+     * Stop polling. Events not yet read stay in the ring
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consume() {
+        int idlePolls = 0;
+        long parkNanos = MIN_PARK_NANOS;
+        while (running) {
+            if (pollSafely() > 0) {
+                idlePolls = 0;
+                parkNanos = MIN_PARK_NANOS;
+            } else if (idlePolls < SPIN_POLLS) {
+                idlePolls++;
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    private int pollSafely() {
+        try {
+            return poll();
+        } catch (RuntimeException e) {
+            logger.error("Failed to poll device event ring", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Raise the events published since the last poll, up to a batch
+     * @return Number of events raised
+     */
+    private int poll() {
+        ByteBuffer buffer = ring.buffer();
+        long read = ring.acquireReadPosition();
+        long write = ring.acquireWritePosition();
+        int batchSize = 0;
+        while (read < write && batchSize < BATCH_SIZE) {
+            int offset = ring.offset(read);
+            int length = buffer.getInt(offset);
+            int toEnd = ring.getCapacity() - (int) (read & (ring.getCapacity() - 1));
+            int idLength = Short.toUnsignedInt(buffer.getShort(offset + 4));
+            int eventLength = Short.toUnsignedInt(buffer.getShort(offset + 6));
+            if (length < 8 || (length & 7) != 0 || length > toEnd || length > write - read
+                    || (idLength != 0 && DeviceEventRing.RECORD_HEADER_BYTES + idLength + eventLength > length)) {
+                // Nothing after a broken record can be trusted, skip everything published so far
+                logger.error("Skipping {} bytes of the device event ring after a broken record", write - read);
+                read = write;
+                break;
+            }
+            if (idLength != 0) {
+                long sequence = buffer.getLong(offset + 8);
+                if (nextSequence >= 0 && sequence != nextSequence) {
+                    sequenceGaps.incrementAndGet();
+                }
+                nextSequence = sequence + 1;
+                int idOffset = offset + DeviceEventRing.RECORD_HEADER_BYTES;
+                deviceIds[batchSize] = deviceIdCache.get(buffer, idOffset, idLength);
+                EventParser.parse(buffer, idOffset + idLength, eventLength, events[batchSize]);
+                batchSize++;
+            }
+            read += length;
+        }
+        // The events are views of the ring, so they are raised before their space is handed back
+        raise(batchSize);
+        ring.releaseReadPosition(read);
+        return batchSize;
+    }
+
+    private void raise(int batchSize) {
+        for (int i = 0; i < batchSize; i++) {
+            try {
+                storeService.raiseEvent(deviceIds[i], events[i], null);
+            } catch (StoreException e) {
+                rejected.incrementAndGet();
+            } catch (RuntimeException e) {
+                rejected.incrementAndGet();
+                logger.error("Failed to raise event for device {}", deviceIds[i], e);
+            }
+        }
+        received.addAndGet(batchSize);
+    }
+}
@@ -0,0 +1,183 @@
+package com.se300.store.service;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Single-producer, single-consumer ring of device events in a memory-mapped file, for a process
+ * on the same host to hand events to the store without a system call per event. One process
+ * writes events, the store reads them; both map the same file.
+ * All integers are little-endian. The file is a 192 byte header followed by the data region:
+ * <pre>
+ *   offset  0  int   magic 0x53535242 ("SSRB")
+ *   offset  4  int   layout version, 1
+ *   offset  8  long  capacity, bytes of the data region, a power of two of at least 64 KB
+ *   offset 64  long  write position, bytes ever written, advanced by the producer
+ *   offset 72  long  sequence number of the next event the producer writes
+ *   offset 128 long  read position, bytes ever read, advanced by the consumer
+ *   offset 192       data region
+ * </pre>
+ * Positions only grow; a position's place in the data region is the position modulo the
+ * capacity. The data region holds records, each 8 byte aligned and never wrapping round its end:
+ * <pre>
+ *   int    record length, header and padding included, a multiple of 8
+ *   short  deviceIdLength, 1 to 255, or 0 for a padding record that skips to the end of the region
+ *   short  eventLength, up to 16,384
+ *   long   sequence number, one more than the record before
+ *   byte[] deviceId, UTF-8
+ *   byte[] event, UTF-8, e.g. "item_added_to_basket b1 prod10"
+ *   padding to the record length, of any value
+ * </pre>
+ * The producer writes a record only where the ring has room, that is when the write position
+ * plus the record length is at most the read position plus the capacity, then publishes it by
+ * storing the new write position with release semantics. The consumer loads the write position
+ * with acquire semantics, reads the records up to it and stores the new read position with
+ * release semantics once it is done with them.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class DeviceEventRing {
+
+    static final int MAGIC = 0x53535242;
+    static final int VERSION = 1;
+    static final int CAPACITY_OFFSET = 8;
+    static final int WRITE_POSITION_OFFSET = 64;
+    static final int NEXT_SEQUENCE_OFFSET = 72;
+    static final int READ_POSITION_OFFSET = 128;
+    static final int HEADER_BYTES = 192;
+    static final int RECORD_HEADER_BYTES = 16;
+    static final int MIN_CAPACITY = 64 * 1024;
+    static final int MAX_DEVICE_ID_BYTES = 255;
+    static final int MAX_EVENT_BYTES = 16 * 1024;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // Read position as last seen by the producer, so it only loads the shared one when short of room
+    private long cachedReadPosition;
+
+    private DeviceEventRing(MappedByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Map a ring file, creating it with the given capacity when it does not exist yet
+     * @param file
+     * @param capacity Bytes of the data region of a new ring; ignored for an existing one
+     * @return
+     * @throws IOException If the file cannot be mapped or is not a ring
+     */
+    public static DeviceEventRing open(Path file, int capacity) throws IOException {
+        if (capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two of at least " + MIN_CAPACITY);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean created = channel.size() == 0;
+            long size = created ? HEADER_BYTES + (long) capacity : channel.size();
+            if (size < HEADER_BYTES + MIN_CAPACITY || size > HEADER_BYTES + (long) Integer.MAX_VALUE
+                    || Long.bitCount(size - HEADER_BYTES) != 1) {
+                throw new IOException(file + " is not a device event ring");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                buffer.putInt(4, VERSION);
+                buffer.putLong(CAPACITY_OFFSET, capacity);
+                // The magic goes last so that a reader never sees a half written header as a ring
+                VarHandle.storeStoreFence();
+                buffer.putInt(0, MAGIC);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(CAPACITY_OFFSET) != size - HEADER_BYTES) {
+                throw new IOException(file + " is not a device event ring");
+            }
+            DeviceEventRing ring = new DeviceEventRing(buffer, (int) (size - HEADER_BYTES));
+            ring.cachedReadPosition = ring.acquireReadPosition();
+            return ring;
+        }
+    }
+
+    /**
+     * Write an event as the producer. Only one thread of one process may write to a ring
+     * @param deviceId
+     * @param event
+     * @return Whether the event was written, false when the ring is full
+     */
+    public boolean offer(String deviceId, String event) {
+        byte[] id = deviceId.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = event.getBytes(StandardCharsets.UTF_8);
+        if (id.length == 0 || id.length > MAX_DEVICE_ID_BYTES || payload.length > MAX_EVENT_BYTES) {
+            throw new IllegalArgumentException("device id or event too long");
+        }
+        int length = align(RECORD_HEADER_BYTES + id.length + payload.length);
+        long write = buffer.getLong(WRITE_POSITION_OFFSET);
+        int toEnd = capacity - (int) (write & (capacity - 1));
+        int needed = toEnd < length ? toEnd + length : length;
+        if (write + needed - cachedReadPosition > capacity) {
+            cachedReadPosition = acquireReadPosition();
+            if (write + needed - cachedReadPosition > capacity) {
+                return false;
+            }
+        }
+        if (toEnd < length) {
+            int offset = offset(write);
+            buffer.putInt(offset, toEnd);
+            buffer.putShort(offset + 4, (short) 0);
+            write += toEnd;
+        }
+        long sequence = buffer.getLong(NEXT_SEQUENCE_OFFSET);
+        int offset = offset(write);
+        buffer.putInt(offset, length);
+        buffer.putShort(offset + 4, (short) id.length);
+        buffer.putShort(offset + 6, (short) payload.length);
+        buffer.putLong(offset + 8, sequence);
+        buffer.put(offset + RECORD_HEADER_BYTES, id);
+        buffer.put(offset + RECORD_HEADER_BYTES + id.length, payload);
+        buffer.putLong(NEXT_SEQUENCE_OFFSET, sequence + 1);
+        LONGS.setRelease(buffer, WRITE_POSITION_OFFSET, write + length);
+        return true;
+    }
+
+    /**
+     * Bytes of the data region
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    int offset(long position) {
+        return HEADER_BYTES + (int) (position & (capacity - 1));
+    }
+
+    long acquireWritePosition() {
+        return (long) LONGS.getAcquire(buffer, WRITE_POSITION_OFFSET);
+    }
+
+    long acquireReadPosition() {
+        return (long) LONGS.getAcquire(buffer, READ_POSITION_OFFSET);
+    }
+
+    void releaseReadPosition(long position) {
+        LONGS.setRelease(buffer, READ_POSITION_OFFSET, position);
+    }
+
+    static int align(int length) {
+        return (length + 7) & ~7;
+    }
+}
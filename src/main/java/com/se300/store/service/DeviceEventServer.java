@@ -0,0 +1,305 @@
+package com.se300.store.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.se300.store.model.EventParser;
+import com.se300.store.model.StoreException;
+import com.se300.store.model.StructuredEvent;
+
+/**
+ * Local server sensor gateways stream device events to, over TCP, a Unix-domain socket or both.
+ * A gateway writes frames back to back, all integers big-endian:
+ * <pre>
+ *   int    length          bytes after this field, 3 to 16,384
+ *   short  deviceIdLength  1 or more
+ *   byte[] deviceId        UTF-8
+ *   byte[] event           UTF-8, the rest of the frame, e.g. "item_added_to_basket b1 prod10"
+ * </pre>
+ * Nothing is sent back. A single thread serves every connection through one selector: it reads
+ * what a connection has sent, parses every whole frame in place into a batch of events and raises
+ * the batch before reading more, so a gateway sending faster than events are raised is slowed
+ * down by its socket filling up. Events the store rejects are counted; a connection sending a
+ * frame of the wrong size is closed.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class DeviceEventServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceEventServer.class);
+
+    static final int MAX_FRAME_BYTES = 16 * 1024;
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int BATCH_SIZE = 1_024;
+
+    private final StoreService storeService;
+    private final Selector selector;
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+    private final Path socketPath;
+    private final Thread server;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean running = true;
+
+    /**
+     * Listen on a TCP address, a Unix-domain socket or both and start serving
+     * @param storeService Service the events are raised through
+     * @param tcpAddress TCP address to listen on, none when null
+     * @param socketPath Path of the Unix-domain socket to listen on, none when null; a file left
+     *                   there by an earlier run is replaced
+     * @throws IOException If an address cannot be listened on
+     */
+    public DeviceEventServer(StoreService storeService, InetSocketAddress tcpAddress, Path socketPath)
+            throws IOException {
+        if (tcpAddress == null && socketPath == null) {
+            throw new IllegalArgumentException("a TCP address or socket path is required");
+        }
+        this.storeService = storeService;
+        this.socketPath = socketPath;
+        this.selector = Selector.open();
+        try {
+            if (tcpAddress != null) {
+                listen(ServerSocketChannel.open(StandardProtocolFamily.INET), tcpAddress);
+            }
+            if (socketPath != null) {
+                Files.deleteIfExists(socketPath);
+                listen(ServerSocketChannel.open(StandardProtocolFamily.UNIX), UnixDomainSocketAddress.of(socketPath));
+            }
+        } catch (IOException e) {
+            closeChannels();
+            throw e;
+        }
+        this.server = new Thread(this::serve, "device-event-server");
+        this.server.setDaemon(true);
+        this.server.start();
+    }
+
+    private void listen(ServerSocketChannel listener, SocketAddress address) throws IOException {
+        listeners.add(listener);
+        listener.bind(address);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Address the TCP listener is bound to, e.g. to find the port picked for port 0
+     * @return The address, null when not listening on TCP
+     * @throws IOException
+     */
+    public InetSocketAddress getTcpAddress() throws IOException {
+        for (ServerSocketChannel listener : listeners) {
+            if (listener.getLocalAddress() instanceof InetSocketAddress address) {
+                return address;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of frames received and handed to the store
+     * @return
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Number of received events the store rejected, e.g. for an unknown device
+     * @return
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of open gateway connections
+     * @return
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Stop listening and close every connection. Frames not yet read are lost
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            server.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select(250);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptSafely((ServerSocketChannel) key.channel());
+                    } else if (key.isReadable()) {
+                        readSafely(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Device event server stopped", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid() && key.attachment() instanceof Connection) {
+                    disconnect(key);
+                }
+            }
+            closeChannels();
+        }
+    }
+
+    private void acceptSafely(ServerSocketChannel listener) {
+        try {
+            SocketChannel channel = listener.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new Connection());
+            connections.incrementAndGet();
+        } catch (IOException e) {
+            logger.warn("Failed to accept device event connection", e);
+        }
+    }
+
+    private void readSafely(SelectionKey key) {
+        try {
+            read(key);
+        } catch (IOException e) {
+            logger.warn("Device event connection closed: {}", e.getMessage());
+            disconnect(key);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer in = connection.in;
+        if (channel.read(in) < 0) {
+            disconnect(key);
+            return;
+        }
+
+        in.flip();
+        int batchSize = 0;
+        while (in.remaining() >= Integer.BYTES) {
+            int position = in.position();
+            int length = in.getInt(position);
+            if (length < Short.BYTES + 1 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Frame length " + length + " out of range");
+            }
+            if (in.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            int idOffset = position + Integer.BYTES + Short.BYTES;
+            int idLength = Short.toUnsignedInt(in.getShort(position + Integer.BYTES));
+            if (idLength == 0 || idLength > length - Short.BYTES) {
+                throw new IOException("Device id length " + idLength + " out of range");
+            }
+            connection.deviceIds[batchSize] = connection.deviceIdCache.get(in, idOffset, idLength);
+            EventParser.parse(in, idOffset + idLength, length - Short.BYTES - idLength, connection.events[batchSize]);
+            in.position(position + Integer.BYTES + length);
+            if (++batchSize == BATCH_SIZE) {
+                raise(connection, batchSize);
+                batchSize = 0;
+            }
+        }
+        // The events are views of the buffer, so they are raised before it is compacted
+        raise(connection, batchSize);
+        in.compact();
+    }
+
+    private void raise(Connection connection, int batchSize) {
+        for (int i = 0; i < batchSize; i++) {
+            try {
+                storeService.raiseEvent(connection.deviceIds[i], connection.events[i], null);
+            } catch (StoreException e) {
+                rejected.incrementAndGet();
+            } catch (RuntimeException e) {
+                rejected.incrementAndGet();
+                logger.error("Failed to raise event for device {}", connection.deviceIds[i], e);
+            }
+        }
+        received.addAndGet(batchSize);
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.warn("Failed to close device event connection", e);
+        }
+        connections.decrementAndGet();
+    }
+
+    private void closeChannels() {
+        for (ServerSocketChannel listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close device event listener", e);
+            }
+        }
+        try {
+            selector.close();
+            if (socketPath != null) {
+                Files.deleteIfExists(socketPath);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to release device event server", e);
+        }
+    }
+
+    /**
+     * Read buffer and reused batch of one gateway connection
+     */
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        final String[] deviceIds = new String[BATCH_SIZE];
+        final StructuredEvent[] events = new StructuredEvent[BATCH_SIZE];
+        final DeviceIdCache deviceIdCache = new DeviceIdCache();
+
+        Connection() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                events[i] = new StructuredEvent();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.se300.store.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Device ids already decoded from UTF-8 bytes, by a hash of the bytes, so a feed raising events
+ * for the same devices over and over does not decode their ids again. A slot holds the last id
+ * that hashed to it. Not thread safe; each reader keeps its own
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+class DeviceIdCache {
+
+    private static final int SIZE = 64;
+
+    private final byte[][] idBytes = new byte[SIZE][];
+    private final String[] ids = new String[SIZE];
+
+    /**
+     * The device id held by bytes at an absolute offset of a buffer
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return
+     */
+    String get(ByteBuffer buffer, int offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        byte[] cached = idBytes[slot];
+        if (cached != null && cached.length == length && matches(cached, buffer, offset)) {
+            return ids[slot];
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        idBytes[slot] = bytes;
+        ids[slot] = new String(bytes, StandardCharsets.UTF_8);
+        return ids[slot];
+    }
+
+    private static boolean matches(byte[] cached, ByteBuffer buffer, int offset) {
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
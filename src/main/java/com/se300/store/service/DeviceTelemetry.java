@@ -0,0 +1,339 @@
+package com.se300.store.service;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.se300.store.model.StructuredEvent;
+
+/**
+ * Recent events of one device. The last events are kept in a ring of fixed-size records in a
+ * byte buffer, which may live outside the Java heap, and every event is also counted in rollups
+ * at one second, one minute and one hour resolution, each a ring of buckets. Memory is fixed when
+ * the telemetry is created; a busy device overwrites its oldest events and buckets sooner.
+ * Events whose text holds a number also add that number to the minimum, maximum and mean of
+ * their buckets.
+ * Writers take the lock of the telemetry; readers never do. Every record and bucket carries a
+ * version that writers bump around their update, and readers retry or skip a record that
+ * changed while it was being copied.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class DeviceTelemetry {
+
+    // Record layout: timestamp, numeric value, payload length and the UTF-8 payload
+    private static final int RECORD_BYTES = 128;
+    private static final int VALUE_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+    private static final int PAYLOAD_OFFSET = 18;
+    static final int MAX_PAYLOAD_BYTES = RECORD_BYTES - PAYLOAD_OFFSET;
+
+    /**
+     * Width and retention of the rollups
+     */
+    public enum Resolution {
+        // Ten minutes of seconds, a day of minutes and a week of hours
+        second(1_000, 600),
+        minute(60_000, 1_440),
+        hour(3_600_000, 168);
+
+        private final long widthMillis;
+        private final int buckets;
+
+        Resolution(long widthMillis, int buckets) {
+            this.widthMillis = widthMillis;
+            this.buckets = buckets;
+        }
+
+        public long getWidthMillis() {
+            return widthMillis;
+        }
+    }
+
+    private final int capacity;
+    private final ByteBuffer records;
+    // View of the records that payloads are written through, so readers never see its position move
+    private final ByteBuffer payload;
+    // Sequence number plus one of the record in each slot, 0 while it is being written
+    private final AtomicLongArray versions;
+    private final Rollup[] rollups;
+    // Number of records ever written, guarded by this
+    private long written;
+    private volatile long published;
+
+    /**
+     * Constructor for DeviceTelemetry
+     * @param capacity How many of the most recent events are kept
+     * @param offHeap Whether the events are kept outside the Java heap
+     */
+    public DeviceTelemetry(int capacity, boolean offHeap) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.records = offHeap
+                ? ByteBuffer.allocateDirect(capacity * RECORD_BYTES)
+                : ByteBuffer.allocate(capacity * RECORD_BYTES);
+        this.payload = records.duplicate();
+        this.versions = new AtomicLongArray(capacity);
+        Resolution[] resolutions = Resolution.values();
+        this.rollups = new Rollup[resolutions.length];
+        for (Resolution resolution : resolutions) {
+            rollups[resolution.ordinal()] = new Rollup(resolution);
+        }
+    }
+
+    /**
+     * Record an event. Text longer than a record holds is cut short
+     * @param timestamp When the event happened, in milliseconds since the epoch
+     * @param event
+     */
+    public synchronized void record(long timestamp, String event) {
+        double value = parseValue(event);
+        byte[] payload = truncate(event.getBytes(StandardCharsets.UTF_8));
+        open(timestamp, value).put(payload);
+        publish(timestamp, value);
+    }
+
+    /**
+     * Record a parsed event, encoding its text straight into the record without making a String of it.
+     * Text longer than a record holds is cut short
+     * @param timestamp When the event happened, in milliseconds since the epoch
+     * @param event
+     */
+    public synchronized void record(long timestamp, StructuredEvent event) {
+        double value = parseValue(event.getText());
+        event.encodeTo(open(timestamp, value));
+        publish(timestamp, value);
+    }
+
+    /**
+     * Start writing the next record, returning the buffer positioned at its payload
+     */
+    private ByteBuffer open(long timestamp, double value) {
+        int slot = (int) (written % capacity);
+        int offset = slot * RECORD_BYTES;
+        versions.set(slot, 0);
+        VarHandle.storeStoreFence();
+        records.putLong(offset, timestamp);
+        records.putDouble(offset + VALUE_OFFSET, value);
+        payload.clear().position(offset + PAYLOAD_OFFSET).limit(offset + PAYLOAD_OFFSET + MAX_PAYLOAD_BYTES);
+        return payload;
+    }
+
+    /**
+     * Finish the record started by open once its payload is written
+     */
+    private void publish(long timestamp, double value) {
+        long sequence = written++;
+        int slot = (int) (sequence % capacity);
+        int offset = slot * RECORD_BYTES;
+        records.putShort(offset + LENGTH_OFFSET, (short) (payload.position() - offset - PAYLOAD_OFFSET));
+        versions.set(slot, sequence + 1);
+        published = written;
+
+        for (Rollup rollup : rollups) {
+            rollup.add(timestamp, value);
+        }
+    }
+
+    /**
+     * Get the kept events that happened in a time range, oldest first
+     * @param from Start of the range in milliseconds since the epoch, inclusive
+     * @param to End of the range, exclusive
+     * @return
+     */
+    public List<TelemetryEvent> getEvents(long from, long to) {
+        List<TelemetryEvent> events = new ArrayList<>();
+        long last = published;
+        byte[] payload = new byte[MAX_PAYLOAD_BYTES];
+        for (long sequence = Math.max(0, last - capacity); sequence < last; sequence++) {
+            int slot = (int) (sequence % capacity);
+            int offset = slot * RECORD_BYTES;
+            if (versions.get(slot) != sequence + 1) {
+                continue;
+            }
+            long timestamp = records.getLong(offset);
+            double value = records.getDouble(offset + VALUE_OFFSET);
+            int length = Math.min(records.getShort(offset + LENGTH_OFFSET), MAX_PAYLOAD_BYTES);
+            records.get(offset + PAYLOAD_OFFSET, payload, 0, length);
+            VarHandle.loadLoadFence();
+            // Overwritten while it was being copied, the rest of the events are newer
+            if (versions.get(slot) != sequence + 1) {
+                continue;
+            }
+            if (timestamp >= from && timestamp < to) {
+                events.add(new TelemetryEvent(timestamp, new String(payload, 0, length, StandardCharsets.UTF_8),
+                        Double.isNaN(value) ? null : value));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Get the non-empty buckets of a rollup that start in a time range, oldest first
+     * @param resolution
+     * @param from Start of the range in milliseconds since the epoch, inclusive
+     * @param to End of the range, exclusive
+     * @return
+     */
+    public List<TelemetryBucket> getRollup(Resolution resolution, long from, long to) {
+        return rollups[resolution.ordinal()].get(from, to);
+    }
+
+    /**
+     * Number of events ever recorded
+     * @return
+     */
+    public long getEventCount() {
+        return published;
+    }
+
+    /**
+     * The first word of an event that is a number, NaN when there is none
+     */
+    static double parseValue(CharSequence event) {
+        int start = -1;
+        for (int i = 0; i <= event.length(); i++) {
+            boolean whitespace = i == event.length() || Character.isWhitespace(event.charAt(i));
+            if (!whitespace && start < 0) {
+                start = i;
+            } else if (whitespace && start >= 0) {
+                char first = event.charAt(start);
+                if (Character.isDigit(first) || first == '-' || first == '+' || first == '.') {
+                    try {
+                        return Double.parseDouble(event.subSequence(start, i).toString());
+                    } catch (NumberFormatException e) {
+                        // Not a number after all, keep looking
+                    }
+                }
+                start = -1;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Cut UTF-8 bytes to what fits in a record without splitting a character
+     */
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= MAX_PAYLOAD_BYTES) {
+            return bytes;
+        }
+        int length = MAX_PAYLOAD_BYTES;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Ring of fixed-width time buckets. A bucket is reused once the ring comes round to it again
+     */
+    private static final class Rollup {
+        private final long width;
+        private final int size;
+        private final long[] starts;
+        private final long[] counts;
+        private final long[] valueCounts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxs;
+        // Even while a bucket is stable, odd while it is being written
+        private final AtomicLongArray versions;
+        private volatile long newestBucket = Long.MIN_VALUE;
+
+        Rollup(Resolution resolution) {
+            this.width = resolution.widthMillis;
+            this.size = resolution.buckets;
+            this.starts = new long[size];
+            Arrays.fill(starts, Long.MIN_VALUE);
+            this.counts = new long[size];
+            this.valueCounts = new long[size];
+            this.sums = new double[size];
+            this.mins = new double[size];
+            this.maxs = new double[size];
+            this.versions = new AtomicLongArray(size);
+        }
+
+        // Called by the single writer holding the telemetry lock
+        void add(long timestamp, double value) {
+            long bucket = Math.floorDiv(timestamp, width);
+            int slot = (int) Math.floorMod(bucket, (long) size);
+            // Too late for a bucket the ring has already reused
+            if (starts[slot] > bucket) {
+                return;
+            }
+            long version = versions.get(slot);
+            versions.set(slot, version + 1);
+            VarHandle.storeStoreFence();
+            if (starts[slot] != bucket) {
+                starts[slot] = bucket;
+                counts[slot] = 0;
+                valueCounts[slot] = 0;
+                sums[slot] = 0;
+                mins[slot] = Double.POSITIVE_INFINITY;
+                maxs[slot] = Double.NEGATIVE_INFINITY;
+            }
+            counts[slot]++;
+            if (!Double.isNaN(value)) {
+                valueCounts[slot]++;
+                sums[slot] += value;
+                mins[slot] = Math.min(mins[slot], value);
+                maxs[slot] = Math.max(maxs[slot], value);
+            }
+            versions.set(slot, version + 2);
+            if (bucket > newestBucket) {
+                newestBucket = bucket;
+            }
+        }
+
+        List<TelemetryBucket> get(long from, long to) {
+            List<TelemetryBucket> buckets = new ArrayList<>();
+            long newest = newestBucket;
+            if (newest == Long.MIN_VALUE || to <= from) {
+                return buckets;
+            }
+            long first = Math.max(Math.floorDiv(from, width), newest - size + 1);
+            long last = Math.min(Math.floorDiv(to - 1, width), newest);
+            for (long bucket = first; bucket <= last; bucket++) {
+                TelemetryBucket read = read(bucket, (int) Math.floorMod(bucket, (long) size));
+                if (read != null) {
+                    buckets.add(read);
+                }
+            }
+            return buckets;
+        }
+
+        private TelemetryBucket read(long bucket, int slot) {
+            while (true) {
+                long version = versions.get(slot);
+                if ((version & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long start = starts[slot];
+                long count = counts[slot];
+                long valueCount = valueCounts[slot];
+                double sum = sums[slot];
+                double min = mins[slot];
+                double max = maxs[slot];
+                VarHandle.loadLoadFence();
+                if (versions.get(slot) != version) {
+                    continue;
+                }
+                if (start != bucket || count == 0) {
+                    return null;
+                }
+                return valueCount == 0
+                        ? new TelemetryBucket(start * width, count, null, null, null)
+                        : new TelemetryBucket(start * width, count, min, max, sum / valueCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.se300.store.service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Expires items of the Store Service that have been idle for too long. Each item sits in a
+ * {@link TimingWheel} once; activity only updates a timestamp the subclass reads, and an item
+ * coming due is checked against its latest activity and rescheduled if it is still in use. An
+ * item failing to expire is logged and skipped, the rest of the tick goes on.
+ *
+ * @param <T> The watched item
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public abstract class IdleReaper<T> implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final long idleMillis;
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final TimingWheel<T> wheel;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Constructor for IdleReaper
+     * @param name What is watched, for example "basket"; names the thread and the log lines
+     * @param idleMillis How long an item may be idle before it expires
+     * @param tickMillis How often idle items are looked for
+     * @param clock Current time in milliseconds
+     */
+    protected IdleReaper(String name, long idleMillis, long tickMillis, LongSupplier clock) {
+        this.name = name;
+        this.idleMillis = idleMillis;
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(tickMillis, clock.getAsLong());
+    }
+
+    /**
+     * Start expiring items on a background thread every tick
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name + "-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::reapSafely, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Expire the items that have been idle for longer than the idle timeout
+     * @return Number of items expired
+     */
+    public int reap() {
+        long now = clock.getAsLong();
+        List<T> due = wheel.advance(now);
+        int expired = 0;
+        for (T item : due) {
+            if (!isIdle(item, now)) {
+                schedule(item);
+            } else if (expireSafely(item)) {
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            logger.info("Expired {} idle {}s, {} still tracked", expired, name, wheel.size());
+        }
+        return expired;
+    }
+
+    /**
+     * Number of items being watched
+     * @return
+     */
+    public int size() {
+        return wheel.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Watch an item until it has been idle for the idle timeout
+     * @param item
+     */
+    protected void schedule(T item) {
+        wheel.schedule(item, lastActive(item) + idleMillis);
+    }
+
+    /**
+     * Current time in milliseconds
+     * @return
+     */
+    protected long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Whether a due item is to expire now. Items that are not go back in the wheel
+     * @param item
+     * @param now
+     * @return
+     */
+    protected boolean isIdle(T item, long now) {
+        return lastActive(item) + idleMillis <= now;
+    }
+
+    /**
+     * Last time the item was in use, in milliseconds
+     * @param item
+     * @return
+     */
+    protected abstract long lastActive(T item);
+
+    /**
+     * Expire an idle item
+     * @param item
+     * @return Whether the item was still in the service
+     */
+    protected abstract boolean expire(T item);
+
+    /**
+     * Id of an item for the log
+     * @param item
+     * @return
+     */
+    protected abstract String idOf(T item);
+
+    /**
+     * Expire one item without giving up on the rest of the tick when it fails
+     */
+    private boolean expireSafely(T item) {
+        try {
+            return expire(item);
+        } catch (RuntimeException e) {
+            logger.error("Failed to expire {} {}", name, idOf(item), e);
+            return false;
+        }
+    }
+
+    private void reapSafely() {
+        try {
+            reap();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive, the next tick retries
+            logger.error("The {} reaper failed", name, e);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.se300.store.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import com.se300.store.metrics.MetricsRegistry;
+import com.se300.store.metrics.OperationMetrics;
+import com.se300.store.model.Aisle;
+import com.se300.store.model.AisleLocation;
+import com.se300.store.model.ApplianceType;
+import com.se300.store.model.Basket;
+import com.se300.store.model.Customer;
+import com.se300.store.model.CustomerType;
+import com.se300.store.model.Device;
+import com.se300.store.model.EvictionPolicy;
+import com.se300.store.model.Inventory;
+import com.se300.store.model.InventoryType;
+import com.se300.store.model.Product;
+import com.se300.store.model.Shelf;
+import com.se300.store.model.ShelfLevel;
+import com.se300.store.model.Store;
+import com.se300.store.model.StoreException;
+import com.se300.store.model.StoreLimits;
+import com.se300.store.model.StructuredEvent;
+import com.se300.store.model.Temperature;
+import com.se300.store.repository.StoreRepository;
+
+/**
+ * StoreService decorator recording the latency of every public operation, and failures by
+ * action and reason, in the {@link MetricsRegistry}. Each call costs two System.nanoTime()
+ * reads and a histogram update; the per-operation metrics are resolved once, up front.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class InstrumentedStoreService extends StoreService {
+
+    private static final OperationMetrics PROVISION_STORE = operation("provisionStore");
+    private static final OperationMetrics SHOW_STORE = operation("showStore");
+    private static final OperationMetrics PROVISION_AISLE = operation("provisionAisle");
+    private static final OperationMetrics SHOW_AISLE = operation("showAisle");
+    private static final OperationMetrics PROVISION_SHELF = operation("provisionShelf");
+    private static final OperationMetrics SHOW_SHELF = operation("showShelf");
+    private static final OperationMetrics PROVISION_INVENTORY = operation("provisionInventory");
+    private static final OperationMetrics SHOW_INVENTORY = operation("showInventory");
+    private static final OperationMetrics UPDATE_INVENTORY = operation("updateInventory");
+    private static final OperationMetrics UPDATE_INVENTORY_WATERMARKS = operation("updateInventoryWatermarks");
+    private static final OperationMetrics UPDATE_STORE_LIMITS = operation("updateStoreLimits");
+    private static final OperationMetrics GET_STORE_OCCUPANCY = operation("getStoreOccupancy");
+    private static final OperationMetrics GET_AISLE_OCCUPANCY = operation("getAisleOccupancy");
+    private static final OperationMetrics GET_OCCUPANCY_SNAPSHOT = operation("getOccupancySnapshot");
+    private static final OperationMetrics GET_OCCUPANCY_HEATMAP = operation("getOccupancyHeatmap");
+    private static final OperationMetrics GET_DEVICE_EVENTS = operation("getDeviceEvents");
+    private static final OperationMetrics GET_DEVICE_ROLLUP = operation("getDeviceRollup");
+    private static final OperationMetrics GET_ARCHIVED_DEVICE_EVENTS = operation("getArchivedDeviceEvents");
+    private static final OperationMetrics GET_LOW_STOCK_INVENTORY = operation("getLowStockInventory");
+    private static final OperationMetrics GET_STORE_PRODUCT_COUNT = operation("getStoreProductCount");
+    private static final OperationMetrics GET_STORE_STOCK = operation("getStoreStock");
+    private static final OperationMetrics GET_CHAIN_PRODUCT_COUNT = operation("getChainProductCount");
+    private static final OperationMetrics GET_PRODUCT_LOCATIONS = operation("getProductLocations");
+    private static final OperationMetrics PROVISION_PRODUCT = operation("provisionProduct");
+    private static final OperationMetrics SHOW_PRODUCT = operation("showProduct");
+    private static final OperationMetrics SEARCH_PRODUCTS = operation("searchProducts");
+    private static final OperationMetrics PROVISION_CUSTOMER = operation("provisionCustomer");
+    private static final OperationMetrics UPDATE_CUSTOMER = operation("updateCustomer");
+    private static final OperationMetrics SHOW_CUSTOMER = operation("showCustomer");
+    private static final OperationMetrics PROVISION_BASKET = operation("provisionBasket");
+    private static final OperationMetrics ASSIGN_CUSTOMER_BASKET = operation("assignCustomerBasket");
+    private static final OperationMetrics GET_CUSTOMER_BASKET = operation("getCustomerBasket");
+    private static final OperationMetrics ADD_BASKET_PRODUCT = operation("addBasketProduct");
+    private static final OperationMetrics REMOVE_BASKET_PRODUCT = operation("removeBasketProduct");
+    private static final OperationMetrics CLEAR_BASKET = operation("clearBasket");
+    private static final OperationMetrics SHOW_BASKET = operation("showBasket");
+    private static final OperationMetrics PROVISION_DEVICE = operation("provisionDevice");
+    private static final OperationMetrics SHOW_DEVICE = operation("showDevice");
+    private static final OperationMetrics RAISE_EVENT = operation("raiseEvent");
+    private static final OperationMetrics ISSUE_COMMAND = operation("issueCommand");
+    private static final OperationMetrics BROADCAST_COMMAND = operation("broadcastCommand");
+    private static final OperationMetrics GET_PENDING_COMMAND_COUNT = operation("getPendingCommandCount");
+    private static final OperationMetrics FIND_STORE = operation("findStore");
+    private static final OperationMetrics FIND_PRODUCT = operation("findProduct");
+    private static final OperationMetrics FIND_CUSTOMER = operation("findCustomer");
+    private static final OperationMetrics FIND_BASKET = operation("findBasket");
+    private static final OperationMetrics FIND_INVENTORY = operation("findInventory");
+    private static final OperationMetrics FIND_DEVICE = operation("findDevice");
+    private static final OperationMetrics GET_ALL_STORES = operation("getAllStores");
+    private static final OperationMetrics GET_STORES = operation("getStores");
+    private static final OperationMetrics UPDATE_STORE = operation("updateStore");
+    private static final OperationMetrics DELETE_STORE = operation("deleteStore");
+
+    public InstrumentedStoreService() {
+        super();
+    }
+
+    public InstrumentedStoreService(StoreRepository storeRepository) {
+        super(storeRepository);
+    }
+
+    @Override
+    public Store provisionStore(String storeId, String name, String address, String token) throws StoreException {
+        return timed(PROVISION_STORE, () -> super.provisionStore(storeId, name, address, token));
+    }
+
+    @Override
+    public Store showStore(String storeId, String token) throws StoreException {
+        return timed(SHOW_STORE, () -> super.showStore(storeId, token));
+    }
+
+    @Override
+    public Aisle provisionAisle(String storeId, String aisleNumber, String name, String description,
+                                AisleLocation location, String token)
+            throws StoreException {
+        return timed(PROVISION_AISLE, () -> super.provisionAisle(
+                storeId, aisleNumber, name, description, location, token));
+    }
+
+    @Override
+    public Aisle showAisle(String storeId, String aisleNumber, String token) throws StoreException {
+        return timed(SHOW_AISLE, () -> super.showAisle(storeId, aisleNumber, token));
+    }
+
+    @Override
+    public Shelf provisionShelf(String storeId, String aisleNumber, String shelfId, String name,
+                                ShelfLevel level, String description, Temperature temperature, String token)
+            throws StoreException {
+        return timed(PROVISION_SHELF, () -> super.provisionShelf(
+                storeId, aisleNumber, shelfId, name, level, description, temperature, token));
+    }
+
+    @Override
+    public Shelf showShelf(String storeId, String aisleNumber, String shelfId, String token) throws StoreException {
+        return timed(SHOW_SHELF, () -> super.showShelf(storeId, aisleNumber, shelfId, token));
+    }
+
+    @Override
+    public Inventory provisionInventory(String inventoryId, String storeId, String aisleNumber,
+                                        String shelfId, int capacity, int count, String productId,
+                                        InventoryType type, String token)
+            throws StoreException {
+        return timed(PROVISION_INVENTORY, () -> super.provisionInventory(
+                inventoryId, storeId, aisleNumber, shelfId, capacity, count, productId, type, token));
+    }
+
+    @Override
+    public Inventory showInventory(String inventoryId, String token) throws StoreException {
+        return timed(SHOW_INVENTORY, () -> super.showInventory(inventoryId, token));
+    }
+
+    @Override
+    public Inventory updateInventory(String inventoryId, int count, String token) throws StoreException {
+        return timed(UPDATE_INVENTORY, () -> super.updateInventory(inventoryId, count, token));
+    }
+
+    @Override
+    public Inventory updateInventoryWatermarks(String inventoryId, int lowWatermark, int highWatermark, String token)
+            throws StoreException {
+        return timed(UPDATE_INVENTORY_WATERMARKS,
+                () -> super.updateInventoryWatermarks(inventoryId, lowWatermark, highWatermark, token));
+    }
+
+    @Override
+    public StoreLimits updateStoreLimits(String storeId, int maxCustomers, int maxBaskets,
+                                         EvictionPolicy evictionPolicy, String token) throws StoreException {
+        return timed(UPDATE_STORE_LIMITS,
+                () -> super.updateStoreLimits(storeId, maxCustomers, maxBaskets, evictionPolicy, token));
+    }
+
+    @Override
+    public long getStoreOccupancy(String storeId, String token) throws StoreException {
+        return timed(GET_STORE_OCCUPANCY, () -> super.getStoreOccupancy(storeId, token));
+    }
+
+    @Override
+    public long getAisleOccupancy(String storeId, String aisleNumber, String token) throws StoreException {
+        return timed(GET_AISLE_OCCUPANCY, () -> super.getAisleOccupancy(storeId, aisleNumber, token));
+    }
+
+    @Override
+    public OccupancySnapshot getOccupancySnapshot(String storeId, String token) throws StoreException {
+        return timed(GET_OCCUPANCY_SNAPSHOT, () -> super.getOccupancySnapshot(storeId, token));
+    }
+
+    @Override
+    public List<OccupancySnapshot> getOccupancyHeatmap(String storeId, String token) throws StoreException {
+        return timed(GET_OCCUPANCY_HEATMAP, () -> super.getOccupancyHeatmap(storeId, token));
+    }
+
+    @Override
+    public List<TelemetryEvent> getDeviceEvents(String deviceId, long from, long to, String token)
+            throws StoreException {
+        return timed(GET_DEVICE_EVENTS, () -> super.getDeviceEvents(deviceId, from, to, token));
+    }
+
+    @Override
+    public List<TelemetryBucket> getDeviceRollup(String deviceId, DeviceTelemetry.Resolution resolution,
+                                                 long from, long to, String token) throws StoreException {
+        return timed(GET_DEVICE_ROLLUP, () -> super.getDeviceRollup(deviceId, resolution, from, to, token));
+    }
+
+    @Override
+    public List<ArchivedEvent> getArchivedDeviceEvents(String deviceId, long from, long to, int limit, String token) {
+        return measured(GET_ARCHIVED_DEVICE_EVENTS, () -> super.getArchivedDeviceEvents(deviceId, from, to, limit, token));
+    }
+
+    @Override
+    public List<Inventory> getLowStockInventory(String storeId, String token) throws StoreException {
+        return timed(GET_LOW_STOCK_INVENTORY, () -> super.getLowStockInventory(storeId, token));
+    }
+
+    @Override
+    public long getStoreProductCount(String storeId, String productId, String token) throws StoreException {
+        return timed(GET_STORE_PRODUCT_COUNT, () -> super.getStoreProductCount(storeId, productId, token));
+    }
+
+    @Override
+    public Map<String, Long> getStoreStock(String storeId, String token) throws StoreException {
+        return timed(GET_STORE_STOCK, () -> super.getStoreStock(storeId, token));
+    }
+
+    @Override
+    public long getChainProductCount(String productId, String token) {
+        return measured(GET_CHAIN_PRODUCT_COUNT, () -> super.getChainProductCount(productId, token));
+    }
+
+    @Override
+    public List<ProductLocation> getProductLocations(String productId, boolean inStockOnly, String token) {
+        return measured(GET_PRODUCT_LOCATIONS, () -> super.getProductLocations(productId, inStockOnly, token));
+    }
+
+    @Override
+    public Product provisionProduct(String productId, String name, String description, String size,
+                                    String category, double price, Temperature temperature, String token)
+            throws StoreException {
+        return timed(PROVISION_PRODUCT, () -> super.provisionProduct(
+                productId, name, description, size, category, price, temperature, token));
+    }
+
+    @Override
+    public Product showProduct(String productId, String token) throws StoreException {
+        return timed(SHOW_PRODUCT, () -> super.showProduct(productId, token));
+    }
+
+    @Override
+    public ProductSearchIndex.Result searchProducts(String query, String category, boolean prefix, int limit,
+                                                    String token) {
+        return measured(SEARCH_PRODUCTS, () -> super.searchProducts(query, category, prefix, limit, token));
+    }
+
+    @Override
+    public Customer provisionCustomer(String customerId, String firstName, String lastName,
+                                      CustomerType type, String email, String address, String token)
+            throws StoreException {
+        return timed(PROVISION_CUSTOMER, () -> super.provisionCustomer(
+                customerId, firstName, lastName, type, email, address, token));
+    }
+
+    @Override
+    public Customer updateCustomer(String customerId, String storeId, String aisleNumber, String token)
+            throws StoreException {
+        return timed(UPDATE_CUSTOMER, () -> super.updateCustomer(customerId, storeId, aisleNumber, token));
+    }
+
+    @Override
+    public Customer showCustomer(String customerId, String token) throws StoreException {
+        return timed(SHOW_CUSTOMER, () -> super.showCustomer(customerId, token));
+    }
+
+    @Override
+    public Basket provisionBasket(String basketId, String token) throws StoreException {
+        return timed(PROVISION_BASKET, () -> super.provisionBasket(basketId, token));
+    }
+
+    @Override
+    public Basket assignCustomerBasket(String customerId, String basketId, String token) throws StoreException {
+        return timed(ASSIGN_CUSTOMER_BASKET, () -> super.assignCustomerBasket(customerId, basketId, token));
+    }
+
+    @Override
+    public Basket getCustomerBasket(String customerId, String token) throws StoreException {
+        return timed(GET_CUSTOMER_BASKET, () -> super.getCustomerBasket(customerId, token));
+    }
+
+    @Override
+    public Basket addBasketProduct(String basketId, String productId, int count, String token) throws StoreException {
+        return timed(ADD_BASKET_PRODUCT, () -> super.addBasketProduct(basketId, productId, count, token));
+    }
+
+    @Override
+    public Basket removeBasketProduct(String basketId, String productId, int count, String token)
+            throws StoreException {
+        return timed(REMOVE_BASKET_PRODUCT, () -> super.removeBasketProduct(
+                basketId, productId, count, token));
+    }
+
+    @Override
+    public Basket clearBasket(String basketId, String token) throws StoreException {
+        return timed(CLEAR_BASKET, () -> super.clearBasket(basketId, token));
+    }
+
+    @Override
+    public Basket showBasket(String basketId, String token) throws StoreException {
+        return timed(SHOW_BASKET, () -> super.showBasket(basketId, token));
+    }
+
+    @Override
+    public Device provisionDevice(String deviceId, String name, String deviceType, String storeId,
+                                  String aisleNumber, String token)
+            throws StoreException {
+        return timed(PROVISION_DEVICE, () -> super.provisionDevice(
+                deviceId, name, deviceType, storeId, aisleNumber, token));
+    }
+
+    @Override
+    public Device showDevice(String deviceId, String token) throws StoreException {
+        return timed(SHOW_DEVICE, () -> super.showDevice(deviceId, token));
+    }
+
+    @Override
+    public void raiseEvent(String deviceId, String event, String token) throws StoreException {
+        timed(RAISE_EVENT, () -> {
+            super.raiseEvent(deviceId, event, token);
+            return null;
+        });
+    }
+
+    @Override
+    public void raiseEvent(String deviceId, StructuredEvent event, String token) throws StoreException {
+        timed(RAISE_EVENT, () -> {
+            super.raiseEvent(deviceId, event, token);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommandOutcome> issueCommand(String deviceId, String command, String token)
+            throws StoreException {
+        return timed(ISSUE_COMMAND, () -> super.issueCommand(deviceId, command, token));
+    }
+
+    @Override
+    public CompletableFuture<BroadcastResult> broadcastCommand(String storeId, String aisleNumber, ApplianceType type,
+                                                               String command, String token) throws StoreException {
+        return timed(BROADCAST_COMMAND, () -> super.broadcastCommand(storeId, aisleNumber, type, command, token));
+    }
+
+    @Override
+    public int getPendingCommandCount(String deviceId) {
+        return measured(GET_PENDING_COMMAND_COUNT, () -> super.getPendingCommandCount(deviceId));
+    }
+
+    @Override
+    public Optional<Store> findStore(String storeId) {
+        return measured(FIND_STORE, () -> super.findStore(storeId));
+    }
+
+    @Override
+    public Optional<Product> findProduct(String productId) {
+        return measured(FIND_PRODUCT, () -> super.findProduct(productId));
+    }
+
+    @Override
+    public Optional<Customer> findCustomer(String customerId) {
+        return measured(FIND_CUSTOMER, () -> super.findCustomer(customerId));
+    }
+
+    @Override
+    public Optional<Basket> findBasket(String basketId) {
+        return measured(FIND_BASKET, () -> super.findBasket(basketId));
+    }
+
+    @Override
+    public Optional<Inventory> findInventory(String inventoryId) {
+        return measured(FIND_INVENTORY, () -> super.findInventory(inventoryId));
+    }
+
+    @Override
+    public Optional<Device> findDevice(String deviceId) {
+        return measured(FIND_DEVICE, () -> super.findDevice(deviceId));
+    }
+
+    @Override
+    public Collection<Store> getAllStores() {
+        return measured(GET_ALL_STORES, () -> super.getAllStores());
+    }
+
+    @Override
+    public List<Store> getStores(Collection<String> storeIds) {
+        return measured(GET_STORES, () -> super.getStores(storeIds));
+    }
+
+    @Override
+    public Store updateStore(String storeId, String description, String address) throws StoreException {
+        return timed(UPDATE_STORE, () -> super.updateStore(storeId, description, address));
+    }
+
+    @Override
+    public void deleteStore(String storeId) throws StoreException {
+        timed(DELETE_STORE, () -> {
+            super.deleteStore(storeId);
+            return null;
+        });
+    }
+
+    /**
+     * Operation that may fail with a StoreException
+     */
+    @FunctionalInterface
+    private interface StoreCall<T> {
+        T call() throws StoreException;
+    }
+
+    private static OperationMetrics operation(String name) {
+        return MetricsRegistry.getInstance().operation(name);
+    }
+
+    private static <T> T timed(OperationMetrics metrics, StoreCall<T> call) throws StoreException {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (StoreException e) {
+            metrics.failed(e.getAction(), e.getReason());
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.failed(metrics.getOperation(), e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            metrics.record(System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T measured(OperationMetrics metrics, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            metrics.failed(metrics.getOperation(), e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            metrics.record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.se300.store.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Takes an occupancy snapshot of every store at a fixed rate and keeps the most recent ones,
+ * so clients polling for a heatmap read a prepared list instead of summing the counters.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class OccupancyHeatmap implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OccupancyHeatmap.class);
+
+    private final StoreService storeService;
+    private final long periodMillis;
+    private final int historySize;
+    private final Map<String, Deque<OccupancySnapshot>> history = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Constructor for OccupancyHeatmap
+     * @param storeService Service counting the customers
+     * @param periodMillis How often snapshots are taken
+     * @param historySize How many snapshots are kept per store
+     */
+    public OccupancyHeatmap(StoreService storeService, long periodMillis, int historySize) {
+        this.storeService = storeService;
+        this.periodMillis = periodMillis;
+        this.historySize = historySize;
+    }
+
+    /**
+     * Start taking snapshots on a background thread
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "occupancy-heatmap");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this::sampleSafely, 0, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Take a snapshot of every store now
+     */
+    public void sample() {
+        List<OccupancySnapshot> snapshots = storeService.snapshotOccupancy(System.currentTimeMillis());
+        for (OccupancySnapshot snapshot : snapshots) {
+            Deque<OccupancySnapshot> snapshotHistory =
+                    history.computeIfAbsent(snapshot.getStoreId(), storeId -> new ArrayDeque<>());
+            synchronized (snapshotHistory) {
+                snapshotHistory.addLast(snapshot);
+                if (snapshotHistory.size() > historySize) {
+                    snapshotHistory.removeFirst();
+                }
+            }
+        }
+        //Deleted stores have no snapshot any more
+        if (history.size() > snapshots.size()) {
+            history.keySet().retainAll(snapshots.stream().map(OccupancySnapshot::getStoreId).toList());
+        }
+    }
+
+    /**
+     * Snapshots of a store, oldest first
+     * @param storeId
+     * @return
+     */
+    public List<OccupancySnapshot> getHistory(String storeId) {
+        Deque<OccupancySnapshot> snapshotHistory = history.get(storeId);
+        if (snapshotHistory == null) {
+            return List.of();
+        }
+        synchronized (snapshotHistory) {
+            return new ArrayList<>(snapshotHistory);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive, the next period retries
+            logger.error("Occupancy snapshot failed", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.se300.store.service;
+
+import java.util.Map;
+
+/**
+ * Heatmap of a store at one point in time: how many customers were in the store and in each of
+ * its aisles, by aisle number.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class OccupancySnapshot {
+    private final String storeId;
+    private final long timestamp;
+    private final long total;
+    private final Map<String, Long> aisles;
+
+    OccupancySnapshot(String storeId, long timestamp, long total, Map<String, Long> aisles) {
+        this.storeId = storeId;
+        this.timestamp = timestamp;
+        this.total = total;
+        this.aisles = aisles;
+    }
+
+    public String getStoreId() {
+        return storeId;
+    }
+
+    /**
+     * When the snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public Map<String, Long> getAisles() {
+        return aisles;
+    }
+}
@@ -0,0 +1,46 @@
+package com.se300.store.service;
+
+import com.se300.store.model.Inventory;
+
+/**
+ * Snapshot of where a product sits in the chain: the store, aisle and shelf of an inventory slot
+ * holding it, and the units in that slot when the snapshot was taken.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class ProductLocation {
+    private final String storeId;
+    private final String aisleNumber;
+    private final String shelfId;
+    private final String inventoryId;
+    private final int count;
+
+    ProductLocation(Inventory inventory) {
+        this.storeId = inventory.getInventoryLocation().getStoreId();
+        this.aisleNumber = inventory.getInventoryLocation().getAisleId();
+        this.shelfId = inventory.getInventoryLocation().getShelfId();
+        this.inventoryId = inventory.getId();
+        this.count = inventory.getCount();
+    }
+
+    public String getStoreId() {
+        return storeId;
+    }
+
+    public String getAisleNumber() {
+        return aisleNumber;
+    }
+
+    public String getShelfId() {
+        return shelfId;
+    }
+
+    public String getInventoryId() {
+        return inventoryId;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
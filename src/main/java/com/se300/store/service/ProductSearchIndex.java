@@ -0,0 +1,328 @@
+package com.se300.store.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.se300.store.model.Product;
+
+/**
+ * In-memory inverted index over the name, description and category of every Product.
+ * Products get dense document numbers in the order they are added; each term maps to a growable
+ * int array of postings holding the document number and the fields the term occurs in, so the
+ * index costs one int per (term, product) pair on top of the sorted term dictionary.
+ * Terms are kept sorted so a prefix query is a range scan of the dictionary.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class ProductSearchIndex {
+
+    // Field bits stored in the low bits of each posting
+    private static final int NAME = 1;
+    private static final int CATEGORY = 2;
+    private static final int DESCRIPTION = 4;
+    private static final int FIELD_BITS = 3;
+
+    private static final int MAX_TERM_LENGTH = 32;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    private final List<Product> products = new ArrayList<>();
+
+    /**
+     * Add a product to the index
+     * @param product
+     */
+    public void add(Product product) {
+        Map<String, Integer> fields = new HashMap<>();
+        tokenize(product.getName(), NAME, fields);
+        tokenize(product.getCategory(), CATEGORY, fields);
+        tokenize(product.getDescription(), DESCRIPTION, fields);
+
+        lock.writeLock().lock();
+        try {
+            int document = products.size();
+            products.add(product);
+            for (Map.Entry<String, Integer> field : fields.entrySet()) {
+                terms.computeIfAbsent(field.getKey(), term -> new Postings())
+                        .add(document << FIELD_BITS | field.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every product from the index
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            terms.clear();
+            products.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the products matching every word of a query. Matches in the name weigh more than
+     * matches in the category, which weigh more than matches in the description, and rare words
+     * weigh more than common ones.
+     * @param query Words to look for
+     * @param category Only return products in this category (ignoring case), any when null
+     * @param prefix Whether the last word of the query may be the start of a longer word
+     * @param limit Maximum number of hits returned
+     * @return The best hits, the number of matches, and the matches per category
+     */
+    public Result search(String query, String category, boolean prefix, int limit) {
+        List<String> words = new ArrayList<>(tokenize(query));
+        if (words.isEmpty()) {
+            return new Result(0, List.of(), Map.of());
+        }
+
+        lock.readLock().lock();
+        try {
+            Match matches = null;
+            for (int i = 0; i < words.size(); i++) {
+                Match match = match(words.get(i), prefix && i == words.size() - 1);
+                matches = matches == null ? match : matches.intersect(match);
+                if (matches.size == 0) {
+                    return new Result(0, List.of(), Map.of());
+                }
+            }
+
+            Map<String, Integer> categories = new HashMap<>();
+            PriorityQueue<Hit> best = new PriorityQueue<>(Comparator.comparingDouble(Hit::getScore));
+            int total = 0;
+            for (int i = 0; i < matches.size; i++) {
+                Product product = products.get(matches.documents[i]);
+                if (product.getCategory() != null) {
+                    categories.merge(product.getCategory(), 1, Integer::sum);
+                }
+                if (category != null && !category.equalsIgnoreCase(product.getCategory())) {
+                    continue;
+                }
+                total++;
+                if (limit > 0 && (best.size() < limit || matches.scores[i] > best.peek().getScore())) {
+                    best.add(new Hit(product, matches.scores[i]));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+
+            List<Hit> hits = new ArrayList<>(best);
+            hits.sort(Comparator.comparingDouble(Hit::getScore).reversed()
+                    .thenComparing(hit -> hit.getProduct().getId()));
+            return new Result(total, hits, sortByCount(categories));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Products containing a word, or a word starting with it, in ascending document order
+     */
+    private Match match(String word, boolean prefix) {
+        Collection<Postings> postings;
+        if (prefix) {
+            postings = terms.subMap(word, true, word + Character.MAX_VALUE, false).values();
+        } else {
+            Postings exact = terms.get(word);
+            postings = exact == null ? List.of() : List.of(exact);
+        }
+
+        int[] merged;
+        if (postings.size() == 1) {
+            Postings only = postings.iterator().next();
+            merged = Arrays.copyOf(only.values, only.size);
+        } else {
+            int length = 0;
+            for (Postings posting : postings) {
+                length += posting.size;
+            }
+            merged = new int[length];
+            int offset = 0;
+            for (Postings posting : postings) {
+                System.arraycopy(posting.values, 0, merged, offset, posting.size);
+                offset += posting.size;
+            }
+            // Document numbers are in the high bits, so this orders by document
+            Arrays.sort(merged);
+        }
+
+        // Combine the fields of a product matched through several words sharing the prefix
+        int[] documents = new int[merged.length];
+        int[] fields = new int[merged.length];
+        int size = 0;
+        for (int posting : merged) {
+            int document = posting >>> FIELD_BITS;
+            if (size > 0 && documents[size - 1] == document) {
+                fields[size - 1] |= posting & ((1 << FIELD_BITS) - 1);
+            } else {
+                documents[size] = document;
+                fields[size++] = posting & ((1 << FIELD_BITS) - 1);
+            }
+        }
+
+        double idf = size == 0 ? 0 : Math.log(1 + (double) products.size() / size);
+        double[] scores = new double[size];
+        for (int i = 0; i < size; i++) {
+            scores[i] = idf * weight(fields[i]);
+        }
+        return new Match(documents, scores, size);
+    }
+
+    private static int weight(int fields) {
+        return ((fields & NAME) != 0 ? 3 : 0) + ((fields & CATEGORY) != 0 ? 2 : 0) + ((fields & DESCRIPTION) != 0 ? 1 : 0);
+    }
+
+    private static Map<String, Integer> sortByCount(Map<String, Integer> counts) {
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    /**
+     * Split text into lower case words of letters and digits, in order of first occurrence
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (text == null) {
+            return words;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordCharacter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                words.add(lower.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static void tokenize(String text, int field, Map<String, Integer> fields) {
+        for (String word : tokenize(text)) {
+            fields.merge(word, field, (a, b) -> a | b);
+        }
+    }
+
+    /**
+     * Growable array of postings, appended in ascending document order
+     */
+    private static final class Postings {
+        private int[] values = new int[2];
+        private int size;
+
+        void add(int posting) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size + (size >> 1) + 1);
+            }
+            values[size++] = posting;
+        }
+    }
+
+    /**
+     * Matching documents in ascending order with their scores
+     */
+    private static final class Match {
+        private final int[] documents;
+        private final double[] scores;
+        private final int size;
+
+        Match(int[] documents, double[] scores, int size) {
+            this.documents = documents;
+            this.scores = scores;
+            this.size = size;
+        }
+
+        Match intersect(Match other) {
+            int[] documents = new int[Math.min(size, other.size)];
+            double[] scores = new double[documents.length];
+            int count = 0;
+            for (int i = 0, j = 0; i < size && j < other.size; ) {
+                if (this.documents[i] < other.documents[j]) {
+                    i++;
+                } else if (this.documents[i] > other.documents[j]) {
+                    j++;
+                } else {
+                    documents[count] = this.documents[i];
+                    scores[count++] = this.scores[i++] + other.scores[j++];
+                }
+            }
+            return new Match(documents, scores, count);
+        }
+    }
+
+    /**
+     * A product matching a query and its relevance score
+     */
+    public static class Hit {
+        private final Product product;
+        private final double score;
+
+        Hit(Product product, double score) {
+            this.product = product;
+            this.score = score;
+        }
+
+        public Product getProduct() {
+            return product;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * The best hits of a query, the number of products matching it, and the matches per category
+     */
+    public static class Result {
+        private final int total;
+        private final List<Hit> hits;
+        private final Map<String, Integer> categories;
+
+        Result(int total, List<Hit> hits, Map<String, Integer> categories) {
+            this.total = total;
+            this.hits = hits;
+            this.categories = categories;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public List<Hit> getHits() {
+            return hits;
+        }
+
+        /**
+         * Matches per category before the category filter, most common first
+         */
+        public Map<String, Integer> getCategories() {
+            return categories;
+        }
+    }
+}
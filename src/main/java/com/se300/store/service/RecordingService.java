@@ -0,0 +1,136 @@
+package com.se300.store.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import com.se300.store.model.StoreException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Starts and stops Java Flight Recorder recordings on demand. Recordings use one of the JDK
+ * settings ("default" or "profile"); the Smart Store events are enabled by default in both.
+ * A stopped recording is written to the recordings directory as name.jfr.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class RecordingService {
+
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Path directory;
+    private final Map<String, Recording> recordings = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for RecordingService
+     * @param directory Where stopped recordings are written
+     */
+    public RecordingService(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Start a named recording
+     * @param name
+     * @param settings JDK settings name, "default" when null
+     * @return
+     * @throws StoreException If the name is invalid or in use, or the settings do not exist
+     */
+    public RecordingInfo startRecording(String name, String settings) throws StoreException {
+        // The name becomes the file name, keep it inside the recordings directory
+        if (name == null || !VALID_NAME.matcher(name).matches()) {
+            throw new StoreException("Start Recording", "Recording Name Is Invalid");
+        }
+        String settingsName = settings == null ? "default" : settings;
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settingsName);
+        } catch (IOException | ParseException e) {
+            throw new StoreException("Start Recording", "Recording Settings Do Not Exist");
+        }
+
+        Recording recording = new Recording(configuration);
+        recording.setName(name);
+        if (recordings.putIfAbsent(name, recording) != null) {
+            recording.close();
+            throw new StoreException("Start Recording", "Recording Already Exists");
+        }
+        recording.start();
+        return new RecordingInfo(recording, null);
+    }
+
+    /**
+     * Stop a named recording and write it to disk
+     * @param name
+     * @return The recording, including the file it was written to
+     * @throws StoreException If there is no such recording or it cannot be written
+     */
+    public RecordingInfo stopRecording(String name) throws StoreException {
+        Recording recording = recordings.remove(name);
+        if (recording == null) {
+            throw StoreException.stackless("Stop Recording", "Recording Does Not Exist");
+        }
+        try {
+            Files.createDirectories(directory);
+            Path destination = directory.resolve(name + ".jfr").toAbsolutePath();
+            recording.stop();
+            recording.dump(destination);
+            return new RecordingInfo(recording, destination.toString());
+        } catch (IOException e) {
+            throw new StoreException("Stop Recording", "Recording Could Not Be Written");
+        } finally {
+            recording.close();
+        }
+    }
+
+    /**
+     * Get all running recordings
+     * @return
+     */
+    public Collection<RecordingInfo> getRecordings() {
+        List<RecordingInfo> running = new ArrayList<>();
+        for (Recording recording : recordings.values()) {
+            running.add(new RecordingInfo(recording, null));
+        }
+        return running;
+    }
+
+    /**
+     * Snapshot of a recording returned to API clients
+     */
+    public static class RecordingInfo {
+        private final String name;
+        private final String state;
+        private final String startTime;
+        private final String destination;
+
+        RecordingInfo(Recording recording, String destination) {
+            this.name = recording.getName();
+            this.state = recording.getState().name();
+            this.startTime = recording.getStartTime() == null ? null : recording.getStartTime().toString();
+            this.destination = destination;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.se300.store.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of customers in a store and in each of its aisles. The counters are striped so that
+ * customers moving around different aisles at the same time do not contend on one value, and
+ * reading a count never walks the customers.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+class StoreOccupancy {
+
+    private final String storeId;
+    private final LongAdder total = new LongAdder();
+    private final Map<String, LongAdder> aisles = new ConcurrentHashMap<>();
+
+    StoreOccupancy(String storeId) {
+        this.storeId = storeId;
+    }
+
+    /**
+     * Start counting an aisle, so it shows up in snapshots while empty
+     */
+    void addAisle(String aisleNumber) {
+        aisles.computeIfAbsent(aisleNumber, aisle -> new LongAdder());
+    }
+
+    void enter(String aisleNumber) {
+        total.increment();
+        aisles.computeIfAbsent(aisleNumber, aisle -> new LongAdder()).increment();
+    }
+
+    void leave(String aisleNumber) {
+        total.decrement();
+        aisles.computeIfAbsent(aisleNumber, aisle -> new LongAdder()).decrement();
+    }
+
+    long getTotal() {
+        return total.sum();
+    }
+
+    long getAisle(String aisleNumber) {
+        LongAdder aisle = aisles.get(aisleNumber);
+        return aisle == null ? 0 : aisle.sum();
+    }
+
+    /**
+     * Counts of the store and every aisle at one point in time. Customers moving while the
+     * snapshot is taken may be seen in both aisles or neither, never lost
+     */
+    OccupancySnapshot snapshot(long timestamp) {
+        Map<String, Long> counts = new TreeMap<>();
+        aisles.forEach((aisleNumber, count) -> counts.put(aisleNumber, count.sum()));
+        return new OccupancySnapshot(storeId, timestamp, total.sum(), counts);
+    }
+}
@@ -1,11 +1,29 @@
 package com.se300.store.service;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.se300.store.jfr.DeviceEvent;
+import com.se300.store.metrics.MetricsRegistry;
 import com.se300.store.model.Aisle;
 import com.se300.store.model.AisleLocation;
 import com.se300.store.model.Appliance;
@@ -14,16 +32,22 @@ import com.se300.store.model.Basket;
 import com.se300.store.model.Customer;
 import com.se300.store.model.CustomerType;
 import com.se300.store.model.Device;
+import com.se300.store.model.EventParser;
+import com.se300.store.model.EvictionPolicy;
 import com.se300.store.model.Inventory;
+import com.se300.store.model.InventoryListener;
 import com.se300.store.model.InventoryType;
 import com.se300.store.model.Product;
 import com.se300.store.model.Sensor;
 import com.se300.store.model.SensorType;
+import com.se300.store.model.StockLevel;
 import com.se300.store.model.Shelf;
 import com.se300.store.model.ShelfLevel;
 import com.se300.store.model.Store;
 import com.se300.store.model.StoreException;
+import com.se300.store.model.StoreLimits;
 import com.se300.store.model.StoreLocation;
+import com.se300.store.model.StructuredEvent;
 import com.se300.store.model.Temperature;
 import com.se300.store.repository.StoreRepository;
 
@@ -37,12 +61,72 @@ import com.se300.store.repository.StoreRepository;
  **/
 public class StoreService {
 
+    private static final Logger logger = LoggerFactory.getLogger(StoreService.class);
+
+    /** Counter of expired basket units no inventory slot had room for */
+    public static final String UNSHELVED_UNITS = "smartstore_unshelved_units_total";
+
     private static final Map<String, Store> storeMap;
     private static final Map<String, Customer> customerMap;
     private static final Map<String, Product> productMap;
     private static final Map<String, Inventory> inventoryMap;
     private static final Map<String, Basket> basketMap;
     private static final Map<String, Device> deviceMap;
+    // Inventory ids currently at or below their low watermark, by store id
+    private static final Map<String, Set<String>> lowStockMap;
+    // Units on the shelves by store id and product id, and by product id across the chain
+    private static final Map<String, Map<String, AtomicLong>> storeStockMap;
+    private static final Map<String, AtomicLong> chainStockMap;
+    // Inventory holding each product, and the subset with units on the shelf, by product id
+    private static final Map<String, Set<Inventory>> productLocationMap;
+    private static final Map<String, Set<Inventory>> inStockLocationMap;
+    // Customers in each store and aisle by store id, and the location each customer is counted at
+    private static final Map<String, StoreOccupancy> occupancyMap;
+    private static final Map<String, StoreLocation> countedLocationMap;
+    // Recent events and rollups by device id, created at the first event of a device
+    private static final Map<String, DeviceTelemetry> telemetryMap;
+    // Appliances by store id and appliance type, the targets of broadcast commands
+    private static final Map<String, Map<ApplianceType, Set<Appliance>>> applianceIndex;
+    // Words of every product name, description and category
+    private static final ProductSearchIndex productSearchIndex = new ProductSearchIndex();
+    // Expires idle baskets once started
+    private static volatile BasketReaper basketReaper;
+    // Snapshots occupancy once started
+    private static volatile OccupancyHeatmap occupancyHeatmap;
+    // Counts unseen customers out of the occupancy once started
+    private static volatile CustomerReaper customerReaper;
+    // Keeps every device event and command on disk once started
+    private static volatile DeviceEventArchive deviceEventArchive;
+    private static volatile DeviceEventServer deviceEventServer;
+    private static volatile DeviceEventFeed deviceEventFeed;
+    // Runs appliance commands in order per appliance on a shared pool, created at the first command
+    private static volatile CommandDispatcher commandDispatcher;
+    private static volatile int commandThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static volatile int commandQueueCapacity = 64;
+    // Limits given to new stores
+    private static volatile StoreLimits defaultStoreLimits = StoreLimits.UNLIMITED;
+    // Events kept per device and where they are kept
+    private static volatile int telemetryCapacity = 1024;
+    private static volatile boolean telemetryOffHeap;
+
+    // Keeps the low stock sets and stock totals in step with every inventory count change
+    private static final InventoryListener inventoryListener = new InventoryListener() {
+        @Override
+        public void countChanged(Inventory inventory, int delta) {
+            addStock(inventory.getInventoryLocation().getStoreId(), inventory.getProductId(), delta);
+            int previous = inventory.getCount() - delta;
+            if (previous <= 0 && inventory.getCount() > 0) {
+                locations(inStockLocationMap, inventory.getProductId()).add(inventory);
+            } else if (previous > 0 && inventory.getCount() <= 0) {
+                locations(inStockLocationMap, inventory.getProductId()).remove(inventory);
+            }
+        }
+
+        @Override
+        public void stockLevelChanged(Inventory inventory, StockLevel previous, StockLevel current) {
+            trackStockLevel(inventory, previous, current);
+        }
+    };
 
     // Initialize maps
     static {
@@ -50,8 +134,18 @@ public class StoreService {
         customerMap = new HashMap<>();
         productMap = new HashMap<>();
         inventoryMap = new HashMap<>();
-        basketMap = new HashMap<>();
+        // The basket reaper removes baskets from its own thread
+        basketMap = Collections.synchronizedMap(new HashMap<>());
         deviceMap = new HashMap<>();
+        lowStockMap = new ConcurrentHashMap<>();
+        storeStockMap = new ConcurrentHashMap<>();
+        chainStockMap = new ConcurrentHashMap<>();
+        productLocationMap = new ConcurrentHashMap<>();
+        inStockLocationMap = new ConcurrentHashMap<>();
+        occupancyMap = new ConcurrentHashMap<>();
+        countedLocationMap = new ConcurrentHashMap<>();
+        telemetryMap = new ConcurrentHashMap<>();
+        applianceIndex = new ConcurrentHashMap<>();
     }
 
     private final StoreRepository storeRepository;
@@ -76,6 +170,17 @@ public class StoreService {
         inventoryMap.clear();
         basketMap.clear();
         deviceMap.clear();
+        lowStockMap.clear();
+        storeStockMap.clear();
+        chainStockMap.clear();
+        productLocationMap.clear();
+        inStockLocationMap.clear();
+        occupancyMap.clear();
+        countedLocationMap.clear();
+        telemetryMap.clear();
+        productSearchIndex.clear();
+        applianceIndex.clear();
+        closeCommandDispatcher();
     }
 
 
@@ -83,11 +188,13 @@ public class StoreService {
             throws StoreException {
 
         Store store = new Store(storeId, address, name);
+        store.setLimits(defaultStoreLimits);
 
         //If Store already exists throw and exception
         if (storeMap.putIfAbsent(storeId, store) != null) {
             throw new StoreException("Provision Store", "Store Already Exists");
         }
+        occupancyMap.put(storeId, new StoreOccupancy(storeId));
 
         // Also save to repository if available
         if (storeRepository != null) {
@@ -102,7 +209,7 @@ public class StoreService {
         //If Store does not exist throw and exception
         Store store = storeMap.get(storeId);
         if(store == null)
-            throw new StoreException("Show Store", "Store Does Not Exist");
+            throw StoreException.stackless("Show Store", "Store Does Not Exist");
 
         return store;
     }
@@ -115,9 +222,12 @@ public class StoreService {
 
         //Check to see if Store already exists;
         if(store == null){
-            throw new StoreException("Provision Aisle", "Store Does Not Exist");
+            throw StoreException.stackless("Provision Aisle", "Store Does Not Exist");
         } else {
             aisle = store.addAisle(aisleNumber, name, description, location);
+            StoreOccupancy occupancy = occupancyMap.get(storeId);
+            if (occupancy != null)
+                occupancy.addAisle(aisleNumber);
         }
 
         return aisle;
@@ -128,7 +238,7 @@ public class StoreService {
         Aisle aisle;
         //Check to see if Store exists
         if(store == null){
-            throw new StoreException("Show Aisle", "Store Does Not Exist");
+            throw StoreException.stackless("Show Aisle", "Store Does Not Exist");
         } else {
             //Check to see if Aisle already exists
             aisle = store.getAisle(aisleNumber);
@@ -150,7 +260,7 @@ public class StoreService {
 
         //Check to see if Store exists
         if(store == null){
-            throw new StoreException("Provision Shelf", "Store Does Not Exist");
+            throw StoreException.stackless("Provision Shelf", "Store Does Not Exist");
         } else {
             Aisle aisle = store.getAisle(aisleNumber);
             //Check to see if Aisle exists
@@ -183,7 +293,7 @@ public class StoreService {
 
         //Check to see if Store exists
         if(store == null){
-            throw new StoreException("Show Shelf", "Store Does Not Exist");
+            throw StoreException.stackless("Show Shelf", "Store Does Not Exist");
         } else {
             //Check to see if Aisle exists
             Aisle aisle = store.getAisle(aisleNumber);
@@ -216,7 +326,7 @@ public class StoreService {
 
         //Check to see if Store exists
         if(store == null){
-            throw new StoreException("Provision Inventory", "Store Does Not Exist");
+            throw StoreException.stackless("Provision Inventory", "Store Does Not Exist");
         } else {
             //Check to see if Aisle exists
             Aisle aisle = store.getAisle(aisleNumber);
@@ -258,6 +368,17 @@ public class StoreService {
 
             //Add Inventory to the Store
             store.addInventory(inventory);
+
+            //Track count changes and watermark crossings from now on
+            inventory.setInventoryListener(inventoryListener);
+            addStock(storeId, productId, count);
+            if (productId != null) {
+                locations(productLocationMap, productId).add(inventory);
+                if (count > 0)
+                    locations(inStockLocationMap, productId).add(inventory);
+            }
+            if (inventory.getStockLevel() == StockLevel.low)
+                lowStock(storeId).add(inventoryId);
         }
 
         return inventory;
@@ -268,7 +389,7 @@ public class StoreService {
         Inventory inventory = inventoryMap.get(inventoryId);
         //Check to see if Inventory exists
         if (inventory == null)
-            throw new StoreException("Show Inventory", "Inventory Does Not Exist");
+            throw StoreException.stackless("Show Inventory", "Inventory Does Not Exist");
         return inventory;
     }
 
@@ -276,7 +397,7 @@ public class StoreService {
         Inventory inventory = inventoryMap.get(inventoryId);
         //Check to see if Inventory exists
         if (inventory == null)
-            throw new StoreException("Update Inventory", "Inventory Does Not Exist");
+            throw StoreException.stackless("Update Inventory", "Inventory Does Not Exist");
 
         //Update Inventory count
         inventory.updateInventory(count);
@@ -284,6 +405,119 @@ public class StoreService {
         return inventory;
     }
 
+    /**
+     * Set the low and high watermarks of an Inventory
+     */
+    public Inventory updateInventoryWatermarks(String inventoryId, int lowWatermark, int highWatermark, String token)
+            throws StoreException {
+        Inventory inventory = inventoryMap.get(inventoryId);
+        //Check to see if Inventory exists
+        if (inventory == null)
+            throw StoreException.stackless("Update Inventory Watermarks", "Inventory Does Not Exist");
+
+        inventory.setWatermarks(lowWatermark, highWatermark);
+
+        return inventory;
+    }
+
+    /**
+     * Get the Inventory of a store currently at or below its low watermark. The set is
+     * maintained as counts change, so this does not walk the aisles and shelves of the store
+     */
+    public List<Inventory> getLowStockInventory(String storeId, String token) throws StoreException {
+        if (!storeMap.containsKey(storeId))
+            throw StoreException.stackless("Show Low Stock", "Store Does Not Exist");
+
+        List<Inventory> inventories = new ArrayList<>();
+        for (String inventoryId : lowStock(storeId)) {
+            Inventory inventory = inventoryMap.get(inventoryId);
+            if (inventory != null)
+                inventories.add(inventory);
+        }
+        return inventories;
+    }
+
+    /**
+     * Get the units of a product on the shelves of a store. The total is maintained as counts
+     * change, so this is a single lookup
+     */
+    public long getStoreProductCount(String storeId, String productId, String token) throws StoreException {
+        if (!storeMap.containsKey(storeId))
+            throw StoreException.stackless("Show Product Stock", "Store Does Not Exist");
+
+        Map<String, AtomicLong> stock = storeStockMap.get(storeId);
+        AtomicLong units = stock == null ? null : stock.get(productId);
+        return units == null ? 0 : units.get();
+    }
+
+    /**
+     * Get the units of every product on the shelves of a store, by product id
+     */
+    public Map<String, Long> getStoreStock(String storeId, String token) throws StoreException {
+        if (!storeMap.containsKey(storeId))
+            throw StoreException.stackless("Show Product Stock", "Store Does Not Exist");
+
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        storeStockMap.getOrDefault(storeId, Map.of())
+                .forEach((productId, units) -> snapshot.put(productId, units.get()));
+        return snapshot;
+    }
+
+    /**
+     * Get the units of a product on the shelves of every store in the chain
+     */
+    public long getChainProductCount(String productId, String token) {
+        AtomicLong units = chainStockMap.get(productId);
+        return units == null ? 0 : units.get();
+    }
+
+    /**
+     * Get every shelf in the chain holding a product, optionally only those with units on them.
+     * The slots are indexed by product id, so this does not walk the stores
+     */
+    public List<ProductLocation> getProductLocations(String productId, boolean inStockOnly, String token) {
+        Set<Inventory> inventories = (inStockOnly ? inStockLocationMap : productLocationMap).get(productId);
+        List<ProductLocation> locations = new ArrayList<>();
+        if (inventories != null) {
+            for (Inventory inventory : inventories) {
+                ProductLocation location = new ProductLocation(inventory);
+                //The count may have dropped to 0 after the in-stock set was read
+                if (!inStockOnly || location.getCount() > 0)
+                    locations.add(location);
+            }
+        }
+        locations.sort(Comparator.comparing(ProductLocation::getStoreId).thenComparing(ProductLocation::getInventoryId));
+        return locations;
+    }
+
+    private static Set<Inventory> locations(Map<String, Set<Inventory>> index, String productId) {
+        return index.computeIfAbsent(productId, id -> ConcurrentHashMap.newKeySet());
+    }
+
+    private static void addStock(String storeId, String productId, long delta) {
+        if (productId == null)
+            return;
+        storeStockMap.computeIfAbsent(storeId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(productId, id -> new AtomicLong()).addAndGet(delta);
+        chainStockMap.computeIfAbsent(productId, id -> new AtomicLong()).addAndGet(delta);
+    }
+
+    private static Set<String> lowStock(String storeId) {
+        return lowStockMap.computeIfAbsent(storeId, id -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Keep the low stock set of the store in step with a watermark crossing
+     */
+    private static void trackStockLevel(Inventory inventory, StockLevel previous, StockLevel current) {
+        String storeId = inventory.getInventoryLocation().getStoreId();
+        if (current == StockLevel.low) {
+            lowStock(storeId).add(inventory.getId());
+        } else if (previous == StockLevel.low) {
+            lowStock(storeId).remove(inventory.getId());
+        }
+    }
+
     public Product provisionProduct(String productId, String name, String description, String size, String category,
                                     double price, Temperature temperature, String token) throws StoreException {
         Product product = new Product(productId, name, description, size, category, price, temperature);
@@ -292,14 +526,27 @@ public class StoreService {
         if (productMap.putIfAbsent(productId, product) != null)
             throw new StoreException("Provision Product", "Product Already Exists");
 
+        productSearchIndex.add(product);
         return product;
     }
 
+    /**
+     * Search the product catalog by name, description and category
+     * @param query Words that must all occur in a product
+     * @param category Only return products in this category, any when null
+     * @param prefix Whether the last word may be the start of a longer word, as typed in a search box
+     * @param limit Maximum number of products returned, best first
+     */
+    public ProductSearchIndex.Result searchProducts(String query, String category, boolean prefix, int limit,
+                                                    String token) {
+        return productSearchIndex.search(query, category, prefix, limit);
+    }
+
     public Product showProduct(String productId, String token) throws StoreException {
         Product product = productMap.get(productId);
         //Check to see if Product exists
         if (product == null)
-            throw new StoreException("Show Product", "Product Does Not Exist");
+            throw StoreException.stackless("Show Product", "Product Does Not Exist");
         return product;
     }
 
@@ -324,7 +571,7 @@ public class StoreService {
 
         // Check to see if the Store exists
         if(store == null){
-            throw new StoreException("Update Customer", "Store Does Not Exist");
+            throw StoreException.stackless("Update Customer", "Store Does Not Exist");
         } else {
             //Check to see if Aisle exists
             Aisle aisle = store.getAisle(aisleNumber);
@@ -343,41 +590,118 @@ public class StoreService {
             // }
         }
         customer = customerMap.get(customerId);
+        if(customer == null)
+            throw StoreException.stackless("Update Customer", "Customer Does Not Exist");
 
         //Check to see if Customer changing Stores
         if(customer.getStoreLocation() != null && !customer.getStoreLocation().getStoreId().equals(storeId)){
-            //Check to see if Customer already exists in other Stores
-            Map<Store, Customer> customerStores  = storeMap.entrySet()
-                    .stream().filter(tempStore -> (tempStore.getValue().getCustomer(customerId) != null && tempStore.getValue().getCustomer(customerId).getId().equals(customerId))) .collect(Collectors.toMap(Map.Entry::getValue, tempStore -> tempStore.getValue().getCustomer(customerId)));
-
-            //If Customer exist in other stores remove him/her
-            customerStores.forEach((key, value) -> key.removeCustomer(customer));
+            //Make room before the Customer leaves, so a rejected Customer stays where he/she is
+            admitCustomer(store, customer);
 
             //Before Customer can change the Store he/she must clear the Basket
             if(customer.getBasket() != null)
                 customer.getBasket().clearBasket();
 
+            //Remove the Customer from the Store he/she is leaving
+            Store previous = storeMap.get(customer.getStoreLocation().getStoreId());
+            if(previous != null)
+                previous.removeCustomer(customer);
+
             //If the Customer moves to a different Store clear out the basket and the time seen
             customer.assignBasket(null);
             customer.setLastSeen(null);
+            customer.setStoreLocation(new StoreLocation(storeId, aisleNumber));
+            countCustomer(customer, customer.getStoreLocation());
 
             //Add Customer to another store
             store.addCustomer(customer);
         } else {
+            //Customer entering the Store or moving between its Aisles
+            if(store.getCustomer(customerId) == null){
+                admitCustomer(store, customer);
+                store.addCustomer(customer);
+            }
 
             customer.setStoreLocation(new StoreLocation(storeId, aisleNumber));
+            countCustomer(customer, customer.getStoreLocation());
             customer.setLastSeen(new Date(System.currentTimeMillis()));
         }
 
         return customer;
     }
 
+    /**
+     * Move a Customer in the occupancy counters from wherever he/she was counted to a new location.
+     * Counting by the location recorded here keeps the counters right when a Customer's location
+     * is changed outside of the service
+     * @param location Where the Customer is now, null when he/she left
+     */
+    private static void countCustomer(Customer customer, StoreLocation location) {
+        StoreLocation previous = location == null
+                ? countedLocationMap.remove(customer.getId())
+                : countedLocationMap.put(customer.getId(), location);
+        if (previous != null) {
+            StoreOccupancy occupancy = occupancyMap.get(previous.getStoreId());
+            if (occupancy != null)
+                occupancy.leave(previous.getAisleId());
+        }
+        if (location != null) {
+            StoreOccupancy occupancy = occupancyMap.get(location.getStoreId());
+            if (occupancy != null)
+                occupancy.enter(location.getAisleId());
+            CustomerReaper reaper = customerReaper;
+            if (reaper != null)
+                reaper.track(customer);
+        }
+    }
+
+    /**
+     * Whether a Customer is counted in the occupancy of a store
+     */
+    boolean isCounted(Customer customer) {
+        return countedLocationMap.containsKey(customer.getId());
+    }
+
+    /**
+     * Count a Customer who has not been seen for too long out of the occupancy of his/her store.
+     * He/she stays in the store, and is counted in again when next seen
+     * @param customer
+     * @return Whether the Customer was still counted
+     */
+    boolean expireCustomer(Customer customer) {
+        if (!isCounted(customer))
+            return false;
+        countCustomer(customer, null);
+        return true;
+    }
+
+    /**
+     * Make room for a Customer entering a full Store, or refuse him/her, depending on its limits.
+     * Evicted Customers give their Basket back and are no longer located in the Store
+     */
+    private void admitCustomer(Store store, Customer customer) throws StoreException {
+        StoreLimits limits = store.getLimits();
+        while (limits.isCustomerLimitReached(store.getCustomerCount())) {
+            if (limits.getEvictionPolicy() == EvictionPolicy.reject)
+                throw new StoreException("Update Customer", "Store Customer Limit Reached");
+
+            Customer oldest = store.getOldestCustomer();
+            if (oldest.getBasket() != null)
+                expireBasket(oldest.getBasket());
+            oldest.assignBasket(null);
+            store.removeCustomer(oldest);
+            oldest.setStoreLocation(null);
+            countCustomer(oldest, null);
+            logger.debug("Evicted customer {} from store {} to admit {}", oldest.getId(), store.getId(), customer.getId());
+        }
+    }
+
     public Customer showCustomer(String customerId, String token) throws StoreException {
 
         //Check to see if the Customer exists
         Customer customer = customerMap.get(customerId);
         if(customer == null)
-            throw new StoreException("Show Customer", "Customer Does Not Exist");
+            throw StoreException.stackless("Show Customer", "Customer Does Not Exist");
 
         return customer;
     }
@@ -392,9 +716,189 @@ public class StoreService {
         if(basketMap.putIfAbsent(basketId, basket) != null)
             throw new StoreException("Provision Basket", "Basket Already Exists");
 
+        BasketReaper reaper = basketReaper;
+        if (reaper != null)
+            reaper.track(basket);
+
         return basket;
     }
 
+    /**
+     * Get the number of customers in a store
+     * @param storeId
+     * @param token
+     * @return
+     * @throws StoreException
+     */
+    public long getStoreOccupancy(String storeId, String token) throws StoreException {
+        return occupancy(storeId).getTotal();
+    }
+
+    /**
+     * Get the number of customers in an aisle of a store
+     * @param storeId
+     * @param aisleNumber
+     * @param token
+     * @return
+     * @throws StoreException
+     */
+    public long getAisleOccupancy(String storeId, String aisleNumber, String token) throws StoreException {
+        StoreOccupancy occupancy = occupancy(storeId);
+        storeMap.get(storeId).getAisle(aisleNumber);
+        return occupancy.getAisle(aisleNumber);
+    }
+
+    /**
+     * Get the number of customers in a store and in each of its aisles right now
+     * @param storeId
+     * @param token
+     * @return
+     * @throws StoreException
+     */
+    public OccupancySnapshot getOccupancySnapshot(String storeId, String token) throws StoreException {
+        return occupancy(storeId).snapshot(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the periodic occupancy snapshots of a store, oldest first. Empty until snapshots are started
+     * @param storeId
+     * @param token
+     * @return
+     * @throws StoreException
+     */
+    public List<OccupancySnapshot> getOccupancyHeatmap(String storeId, String token) throws StoreException {
+        occupancy(storeId);
+        OccupancyHeatmap heatmap = occupancyHeatmap;
+        return heatmap == null ? List.of() : heatmap.getHistory(storeId);
+    }
+
+    /**
+     * Start taking occupancy snapshots of every store at a fixed rate
+     * @param periodMillis How often snapshots are taken
+     * @param historySize How many snapshots are kept per store
+     * @return The running heatmap
+     */
+    public OccupancyHeatmap startOccupancyHeatmap(long periodMillis, int historySize) {
+        OccupancyHeatmap heatmap = new OccupancyHeatmap(this, periodMillis, historySize);
+        synchronized (StoreService.class) {
+            if (occupancyHeatmap != null)
+                occupancyHeatmap.close();
+            occupancyHeatmap = heatmap;
+        }
+        heatmap.start();
+        return heatmap;
+    }
+
+    /**
+     * Start counting customers out of the occupancy once they have not been seen for longer than
+     * the given time, including the customers counted already
+     * @param idleMillis How long a customer may go without being seen
+     * @param tickMillis How often unseen customers are looked for
+     * @return The running reaper
+     */
+    public CustomerReaper startCustomerReaper(long idleMillis, long tickMillis) {
+        CustomerReaper reaper = new CustomerReaper(this, idleMillis, tickMillis, System::currentTimeMillis);
+        synchronized (StoreService.class) {
+            if (customerReaper != null)
+                customerReaper.close();
+            customerReaper = reaper;
+        }
+        countedLocationMap.keySet().forEach(customerId -> {
+            Customer customer = customerMap.get(customerId);
+            if (customer != null)
+                reaper.track(customer);
+        });
+        reaper.start();
+        return reaper;
+    }
+
+    /**
+     * Occupancy snapshots of every store taken now
+     */
+    List<OccupancySnapshot> snapshotOccupancy(long timestamp) {
+        List<OccupancySnapshot> snapshots = new ArrayList<>(occupancyMap.size());
+        occupancyMap.values().forEach(occupancy -> snapshots.add(occupancy.snapshot(timestamp)));
+        return snapshots;
+    }
+
+    private static StoreOccupancy occupancy(String storeId) throws StoreException {
+        StoreOccupancy occupancy = occupancyMap.get(storeId);
+        if (occupancy == null)
+            throw StoreException.stackless("Show Occupancy", "Store Does Not Exist");
+        return occupancy;
+    }
+
+    /**
+     * Start expiring baskets idle for longer than the given time, including the existing ones.
+     * Expired baskets give their products back to the shelves and are dropped from the service
+     * and their store
+     * @param idleMillis How long a basket may go without activity, or its customer without being seen
+     * @param tickMillis How often idle baskets are looked for
+     * @return The running reaper
+     */
+    public BasketReaper startBasketReaper(long idleMillis, long tickMillis) {
+        BasketReaper reaper = new BasketReaper(this, idleMillis, tickMillis, System::currentTimeMillis);
+        synchronized (StoreService.class) {
+            if (basketReaper != null)
+                basketReaper.close();
+            basketReaper = reaper;
+        }
+        List<Basket> baskets;
+        synchronized (basketMap) {
+            baskets = new ArrayList<>(basketMap.values());
+        }
+        baskets.forEach(reaper::track);
+        reaper.start();
+        return reaper;
+    }
+
+    /**
+     * Return the products of an idle basket to the shelves and drop it
+     * @param basket
+     * @return Whether the basket was still in the service
+     */
+    boolean expireBasket(Basket basket) {
+        //The basket may have been replaced since it was scheduled
+        if (basketMap.get(basket.getId()) != basket)
+            return false;
+
+        //The products go straight back to the shelves, wherever the customer has wandered off to
+        Map<String, Integer> products = basket.emptyBasket();
+        if (basket.getStore() != null)
+            products.forEach((productId, count) -> shelveProduct(basket.getStore(), productId, count));
+
+        basketMap.remove(basket.getId(), basket);
+        if (basket.getStore() != null)
+            basket.getStore().removeBasket(basket);
+        return true;
+    }
+
+    /**
+     * Put units taken out of a basket back in the slots of a store holding the product, filling
+     * each up to its capacity. Units that fit nowhere, because the slots were restocked while the
+     * basket held them, are logged and counted rather than overfilling a slot
+     */
+    private static void shelveProduct(Store store, String productId, int count) {
+        for (Inventory inventory : locations(productLocationMap, productId)) {
+            if (count == 0)
+                break;
+            if (!store.getId().equals(inventory.getInventoryLocation().getStoreId()))
+                continue;
+            synchronized (inventory) {
+                int shelved = Math.min(count, inventory.getCapacity() - inventory.getCount());
+                if (shelved > 0) {
+                    inventory.setCount(inventory.getCount() + shelved);
+                    count -= shelved;
+                }
+            }
+        }
+        if (count > 0) {
+            logger.warn("{} units of product {} have no slot left in store {}", count, productId, store.getId());
+            MetricsRegistry.getInstance().counter(UNSHELVED_UNITS, "Units of expired baskets that fit in no inventory slot")
+                    .add(count);
+        }
+    }
+
     public Basket assignCustomerBasket(String customerId, String basketId, String token) throws StoreException {
 
         Customer customer = customerMap.get(customerId);
@@ -402,10 +906,10 @@ public class StoreService {
 
         //Check to see Customer and the Basket already exist
         if(customer == null){
-            throw new StoreException("Assign Customer Basket", "Customer Does Not Exist");
+            throw StoreException.stackless("Assign Customer Basket", "Customer Does Not Exist");
         } else {
             if (basket == null){
-                throw new StoreException("Assign Customer Basket", "Basket Does Not Exist");
+                throw StoreException.stackless("Assign Customer Basket", "Basket Does Not Exist");
             }
         }
 
@@ -415,6 +919,7 @@ public class StoreService {
         basketMap.put(basketId, basket);
 
         Store store = storeMap.get(customerMap.get(customerId).getStoreLocation().getStoreId());
+        admitBasket(store, basket);
 
         //Associate basket with the customer
         basket.setCustomer(customer);
@@ -425,13 +930,63 @@ public class StoreService {
         return basket;
     }
 
+    /**
+     * Make room for a Basket in a Store using its maximum number of Baskets, or refuse it,
+     * depending on its limits. Evicted Baskets are expired the same way idle ones are
+     */
+    private void admitBasket(Store store, Basket basket) throws StoreException {
+        StoreLimits limits = store.getLimits();
+        while (limits.isBasketLimitReached(store.getBasketCount())) {
+            if (limits.getEvictionPolicy() == EvictionPolicy.reject)
+                throw new StoreException("Assign Customer Basket", "Store Basket Limit Reached");
+
+            Basket oldest = store.getOldestBasket();
+            //A Basket no longer known to the service only has to leave the Store
+            if (!expireBasket(oldest))
+                store.removeBasket(oldest);
+            logger.debug("Evicted basket {} from store {} to admit {}", oldest.getId(), store.getId(), basket.getId());
+        }
+    }
+
+    /**
+     * Limit how many Customers and Baskets a Store holds at once
+     * @param storeId
+     * @param maxCustomers Customers in the store at once, 0 for no limit
+     * @param maxBaskets Baskets in use in the store at once, 0 for no limit
+     * @param evictionPolicy Whether newcomers are refused or the oldest ones evicted when a limit is reached
+     * @param token
+     * @return
+     * @throws StoreException
+     */
+    public StoreLimits updateStoreLimits(String storeId, int maxCustomers, int maxBaskets,
+                                         EvictionPolicy evictionPolicy, String token) throws StoreException {
+        Store store = storeMap.get(storeId);
+        if (store == null)
+            throw StoreException.stackless("Update Store Limits", "Store Does Not Exist");
+        if (maxCustomers < 0 || maxBaskets < 0 || evictionPolicy == null)
+            throw new StoreException("Update Store Limits", "Limits Are Invalid");
+
+        //Stores already over the new limits shrink as newcomers arrive
+        StoreLimits limits = new StoreLimits(maxCustomers, maxBaskets, evictionPolicy);
+        store.setLimits(limits);
+        return limits;
+    }
+
+    /**
+     * Set the limits given to Stores provisioned from now on
+     * @param limits
+     */
+    public static void setDefaultStoreLimits(StoreLimits limits) {
+        defaultStoreLimits = limits;
+    }
+
     public Basket getCustomerBasket(String customerId, String token) throws StoreException {
         Customer customer = customerMap.get(customerId);
         Basket basket;
 
         //Check if Customer exists
         if(customer == null){
-            throw new StoreException("Get Customer Basket", "Customer Does Not Exist");
+            throw StoreException.stackless("Get Customer Basket", "Customer Does Not Exist");
         } else {
             basket = customer.getBasket();
             //Check to see if Customer has been assigned the Basket
@@ -451,14 +1006,14 @@ public class StoreService {
         //Check to see if basket already exists product we are trying to add to the basket
         //exists as well and basket has been assigned to the customer
         if(basket == null){
-            throw new StoreException("Add Basket Product", "Basket Does Not Exist");
+            throw StoreException.stackless("Add Basket Product", "Basket Does Not Exist");
         } else if(product == null){
-            throw new StoreException("Add Basket Product", "Product Does Not Exist");
+            throw StoreException.stackless("Add Basket Product", "Product Does Not Exist");
         } else if(basket.getCustomer() == null){
             throw new StoreException("Add Basket Product", "Basket Has Not Being Assigned");
         }
-        //Add a product to the basket
-        basket.addProduct(productId, count);
+        //Add a product to the basket at its current price
+        basket.addProduct(productId, count, product.getPriceCents());
 
         return basket;
     }
@@ -470,9 +1025,9 @@ public class StoreService {
         //Check to see if basket already exists product we are trying to add to the basket
         //exists as well and basket has been assigned to the customer
         if(basket == null){
-            throw new StoreException("Remove Basket Product", "Basket Does Not Exist");
+            throw StoreException.stackless("Remove Basket Product", "Basket Does Not Exist");
         } else if(product == null){
-            throw new StoreException("Remove Basket Product", "Product Does Not Exist");
+            throw StoreException.stackless("Remove Basket Product", "Product Does Not Exist");
         } else if(basket.getCustomer() == null){
             throw new StoreException("Remove Basket Product", "Basket Has Not Being Assigned");
         }
@@ -488,7 +1043,7 @@ public class StoreService {
 
         //Check to see if basket already exists and basket has been assigned to the customer
         if(basket == null){
-            throw new StoreException("Clear Basket", "Basket Does Not Exist");
+            throw StoreException.stackless("Clear Basket", "Basket Does Not Exist");
         } else if(basket.getCustomer() == null){
             throw new StoreException("Clear Basket", "Basket Has Not Being Assigned");
         }
@@ -502,7 +1057,7 @@ public class StoreService {
 
         //Check to see if basket already exists
         if(basket == null){
-            throw new StoreException("Show Basket Product", "Basket Does Not Exist");
+            throw StoreException.stackless("Show Basket Product", "Basket Does Not Exist");
         }
         
         // Return basket even if not assigned to a customer
@@ -519,7 +1074,7 @@ public class StoreService {
 
         //Check to see if store exists
         if(store == null){
-            throw new StoreException("Provision Device", "Store Does Not Exist");
+            throw StoreException.stackless("Provision Device", "Store Does Not Exist");
         } else {
 
             //Check to see if aisle exists
@@ -547,6 +1102,7 @@ public class StoreService {
                 for (ApplianceType appliance : ApplianceType.values()) {
                     if (appliance.name().equals(deviceType)){
                         device = new Appliance(deviceId, name, storeLocation, deviceType);
+                        appliances(storeId, appliance).add((Appliance) device);
                     }
                 }
 
@@ -565,31 +1121,405 @@ public class StoreService {
 
         //Check to see if device exists
         if(device == null)
-            throw new StoreException("Show Device", "Device Does Not Exist");
+            throw StoreException.stackless("Show Device", "Device Does Not Exist");
 
         return device;
     }
 
     public void raiseEvent(String deviceId, String event, String token) throws StoreException {
+        raise(deviceId, EventParser.parse(event));
+    }
+
+    /**
+     * Raise an event already parsed, e.g. straight from the bytes of a device feed
+     * @param deviceId
+     * @param event
+     * @param token
+     * @throws StoreException
+     */
+    public void raiseEvent(String deviceId, StructuredEvent event, String token) throws StoreException {
+        raise(deviceId, event);
+    }
+
+    private static void raise(String deviceId, StructuredEvent event) throws StoreException {
         Device device = deviceMap.get(deviceId);
 
         //Check to see if a device exists
         if(device == null){
-            throw new StoreException("Raise Event", "Device Does Not Exist");
+            throw StoreException.stackless("Raise Event", "Device Does Not Exist");
         }
-        device.processEvent(event);
 
+        //Check to see if the device raises this type of event with its arguments
+        if(!event.getType().isSupportedBy(device.getType())){
+            throw StoreException.stackless("Raise Event", "Event Not Supported By Device");
+        }
+        if(!event.isWellFormed()){
+            throw StoreException.stackless("Raise Event", "Event Is Malformed");
+        }
+
+        // Telemetry copies the event text into its record, only the archive and Flight Recorder make a String of it
+        DeviceEvent recorded = deviceEvent("event", device, event);
+        long timestamp = System.currentTimeMillis();
+        archive(timestamp, "event", deviceId, event);
+        try {
+            telemetryMap.computeIfAbsent(deviceId, id -> new DeviceTelemetry(telemetryCapacity, telemetryOffHeap))
+                    .record(timestamp, event);
+            device.processEvent(event);
+        } finally {
+            recorded.commit();
+        }
     }
 
-    public void issueCommand(String deviceId, String command, String token) throws StoreException {
+    /**
+     * Get the recent events of a device in a time range, oldest first
+     * @param deviceId
+     * @param from Start of the range in milliseconds since the epoch, inclusive
+     * @param to End of the range, exclusive
+     * @param token
+     * @return
+     * @throws StoreException
+     */
+    public List<TelemetryEvent> getDeviceEvents(String deviceId, long from, long to, String token)
+            throws StoreException {
+        DeviceTelemetry telemetry = telemetry(deviceId);
+        return telemetry == null ? List.of() : telemetry.getEvents(from, to);
+    }
 
-        Appliance appliance = (Appliance) deviceMap.get(deviceId);
+    /**
+     * Get the event rollup of a device at a resolution in a time range, oldest bucket first
+     * @param deviceId
+     * @param resolution
+     * @param from Start of the range in milliseconds since the epoch, inclusive
+     * @param to End of the range, exclusive
+     * @param token
+     * @return
+     * @throws StoreException
+     */
+    public List<TelemetryBucket> getDeviceRollup(String deviceId, DeviceTelemetry.Resolution resolution,
+                                                 long from, long to, String token) throws StoreException {
+        DeviceTelemetry telemetry = telemetry(deviceId);
+        return telemetry == null ? List.of() : telemetry.getRollup(resolution, from, to);
+    }
+
+    /**
+     * Get archived events and commands of a device in a time range. Devices no longer in any
+     * store keep their history. Empty until the archive is started
+     * @param deviceId
+     * @param from Start of the range in milliseconds since the epoch, inclusive
+     * @param to End of the range, exclusive
+     * @param limit Maximum number of events returned
+     * @param token
+     * @return
+     */
+    public List<ArchivedEvent> getArchivedDeviceEvents(String deviceId, long from, long to, int limit, String token) {
+        DeviceEventArchive archive = deviceEventArchive;
+        return archive == null ? List.of() : archive.read(deviceId, from, to, limit);
+    }
+
+    /**
+     * Start archiving device events and commands to a directory, keeping what is already there
+     * @param directory
+     * @param segmentBytes Compressed size at which a segment is rolled
+     * @param rollMillis Age at which a segment is rolled
+     * @param retentionMillis How long segments are kept
+     * @return The running archive
+     * @throws IOException If the directory cannot be used
+     */
+    public DeviceEventArchive startDeviceEventArchive(Path directory, long segmentBytes, long rollMillis,
+                                                      long retentionMillis) throws IOException {
+        DeviceEventArchive archive = new DeviceEventArchive(directory, segmentBytes, rollMillis, retentionMillis);
+        synchronized (StoreService.class) {
+            if (deviceEventArchive != null)
+                deviceEventArchive.close();
+            deviceEventArchive = archive;
+        }
+        return archive;
+    }
+
+    /**
+     * Start accepting device events from sensor gateways, replacing a server already running
+     * @param tcpAddress TCP address to listen on, none when null
+     * @param socketPath Path of the Unix-domain socket to listen on, none when null
+     * @return The running server
+     * @throws IOException If an address cannot be listened on
+     */
+    public DeviceEventServer startDeviceEventServer(InetSocketAddress tcpAddress, Path socketPath) throws IOException {
+        synchronized (StoreService.class) {
+            if (deviceEventServer != null)
+                deviceEventServer.close();
+            deviceEventServer = new DeviceEventServer(this, tcpAddress, socketPath);
+            return deviceEventServer;
+        }
+    }
+
+    /**
+     * Start raising the events a co-located process writes into a memory-mapped ring file,
+     * replacing a feed already running
+     * @param file Ring file, created when it does not exist yet
+     * @param capacity Bytes of the data region of a new ring, a power of two
+     * @return The running feed
+     * @throws IOException If the file cannot be mapped or is not a ring
+     */
+    public DeviceEventFeed startDeviceEventFeed(Path file, int capacity) throws IOException {
+        DeviceEventRing ring = DeviceEventRing.open(file, capacity);
+        synchronized (StoreService.class) {
+            if (deviceEventFeed != null)
+                deviceEventFeed.close();
+            deviceEventFeed = new DeviceEventFeed(this, ring);
+            return deviceEventFeed;
+        }
+    }
+
+    private static void archive(long timestamp, String kind, String deviceId, Object payload) {
+        DeviceEventArchive archive = deviceEventArchive;
+        if (archive != null && payload != null)
+            archive.append(timestamp, kind, deviceId, payload.toString());
+    }
+
+    /**
+     * Set how many events are kept per device, and whether outside the Java heap, for devices
+     * raising their first event from now on
+     * @param capacity
+     * @param offHeap
+     */
+    public static void configureDeviceTelemetry(int capacity, boolean offHeap) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        telemetryCapacity = capacity;
+        telemetryOffHeap = offHeap;
+    }
+
+    /**
+     * Telemetry of a device, null when it has not raised any event yet
+     */
+    private static DeviceTelemetry telemetry(String deviceId) throws StoreException {
+        if (!deviceMap.containsKey(deviceId))
+            throw StoreException.stackless("Show Device Telemetry", "Device Does Not Exist");
+        return telemetryMap.get(deviceId);
+    }
+
+    /**
+     * Queue a command for an appliance. The commands of an appliance are processed one at a time
+     * in the order they were issued
+     * @param deviceId
+     * @param command
+     * @param token
+     * @return Future completed once the appliance has processed the command, or a later command
+     *         of the same setting replaced it
+     * @throws StoreException If the device does not exist, is not an appliance or has too many
+     *                        commands pending
+     */
+    public CompletableFuture<CommandOutcome> issueCommand(String deviceId, String command, String token)
+            throws StoreException {
+
+        Device device = deviceMap.get(deviceId);
 
         //Check to see if the appliance exists
-        if(appliance == null){
-            throw new StoreException("Issue Command", "Device Does Not Exist");
+        if(device == null){
+            throw StoreException.stackless("Issue Command", "Device Does Not Exist");
+        }
+        if(!(device instanceof Appliance appliance)){
+            throw StoreException.stackless("Issue Command", "Device Is Not An Appliance");
         }
-        appliance.processCommand(command);
+
+        CompletableFuture<CommandOutcome> processed = commandDispatcher().submit(appliance, command);
+        archive(System.currentTimeMillis(), "command", deviceId, command);
+        return processed;
+    }
+
+    /**
+     * Queue a command for every appliance of a store, optionally only those in one aisle or of one
+     * type. The appliances process it in parallel, each in order with its own commands. An
+     * appliance whose queue is full is acknowledged as such rather than failing the broadcast
+     * @param storeId
+     * @param aisleNumber Aisle to limit the broadcast to, the whole store when null
+     * @param type Appliance type to limit the broadcast to, every type when null
+     * @param command
+     * @param token
+     * @return Future completed with the acknowledgements once every targeted appliance is done
+     * @throws StoreException If the store or aisle does not exist
+     */
+    public CompletableFuture<BroadcastResult> broadcastCommand(String storeId, String aisleNumber, ApplianceType type,
+                                                               String command, String token) throws StoreException {
+
+        Store store = storeMap.get(storeId);
+
+        //Check to see if the store and aisle exist
+        if(store == null){
+            throw StoreException.stackless("Broadcast Command", "Store Does Not Exist");
+        }
+        if(aisleNumber != null){
+            store.getAisle(aisleNumber);
+        }
+
+        Map<ApplianceType, Set<Appliance>> byType = applianceIndex.getOrDefault(storeId, Map.of());
+        List<Appliance> targets = new ArrayList<>();
+        for (ApplianceType candidate : ApplianceType.values()) {
+            if (type != null && type != candidate)
+                continue;
+            for (Appliance appliance : byType.getOrDefault(candidate, Set.of())) {
+                if (aisleNumber == null || aisleNumber.equals(appliance.getStoreLocation().getAisleId()))
+                    targets.add(appliance);
+            }
+        }
+
+        Map<String, String> acknowledgements = new ConcurrentHashMap<>();
+        List<CompletableFuture<?>> pending = new ArrayList<>(targets.size());
+        long timestamp = System.currentTimeMillis();
+        CommandDispatcher dispatcher = commandDispatcher();
+        for (Appliance appliance : targets) {
+            try {
+                pending.add(dispatcher.submit(appliance, command).handle((outcome, failure) ->
+                        acknowledgements.put(appliance.getId(), outcome != null ? outcome.name() : reason(failure))));
+                archive(timestamp, "command", appliance.getId(), command);
+            } catch (StoreException e) {
+                acknowledgements.put(appliance.getId(), e.getReason());
+            }
+        }
+
+        String typeName = type == null ? null : type.name();
+        return CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            Map<String, String> acknowledged = new TreeMap<>(acknowledgements);
+            int executed = 0;
+            int superseded = 0;
+            for (String outcome : acknowledged.values()) {
+                if (CommandOutcome.executed.name().equals(outcome))
+                    executed++;
+                else if (CommandOutcome.superseded.name().equals(outcome))
+                    superseded++;
+            }
+            return new BroadcastResult(storeId, aisleNumber, typeName, command, executed, superseded, acknowledged);
+        });
+    }
+
+    private static String reason(Throwable failure) {
+        return failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+    }
+
+    private static Set<Appliance> appliances(String storeId, ApplianceType type) {
+        return applianceIndex.computeIfAbsent(storeId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(type, t -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Set how many threads process appliance commands and how many commands may be pending per
+     * appliance. Commands pending with the previous settings are still processed; this waits up
+     * to ten seconds for them
+     * @param threads
+     * @param queueCapacity
+     */
+    public static void configureCommandDispatcher(int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        }
+        CommandDispatcher previous;
+        synchronized (StoreService.class) {
+            commandThreads = threads;
+            commandQueueCapacity = queueCapacity;
+            previous = commandDispatcher;
+            commandDispatcher = null;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Stop the threads processing appliance commands once the commands pending are processed,
+     * waiting up to ten seconds for them. A later command starts them again
+     */
+    public static void closeCommandDispatcher() {
+        configureCommandDispatcher(commandThreads, commandQueueCapacity);
+    }
+
+    private static CommandDispatcher commandDispatcher() {
+        CommandDispatcher dispatcher = commandDispatcher;
+        if (dispatcher == null) {
+            synchronized (StoreService.class) {
+                dispatcher = commandDispatcher;
+                if (dispatcher == null) {
+                    dispatcher = new CommandDispatcher(commandThreads, commandQueueCapacity, StoreService::processCommand);
+                    commandDispatcher = dispatcher;
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Number of commands waiting to be processed by an appliance
+     * @param deviceId
+     * @return
+     */
+    public int getPendingCommandCount(String deviceId) {
+        CommandDispatcher dispatcher = commandDispatcher;
+        return dispatcher == null ? 0 : dispatcher.getPendingCount(deviceId);
+    }
+
+    private static void processCommand(Appliance appliance, String command) {
+        DeviceEvent recorded = deviceEvent("command", appliance, command);
+        try {
+            appliance.processCommand(command);
+        } finally {
+            recorded.commit();
+        }
+    }
+
+    /**
+     * Begin a Flight Recorder event for device activity, turning the payload into text only when recording
+     */
+    private static DeviceEvent deviceEvent(String kind, Device device, Object payload) {
+        DeviceEvent event = new DeviceEvent();
+        if (event.isEnabled()) {
+            event.kind = kind;
+            event.deviceId = device.getId();
+            event.deviceType = device.getType();
+            event.payload = payload == null ? null : payload.toString();
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Find a store without throwing when it does not exist
+     */
+    public Optional<Store> findStore(String storeId) {
+        return Optional.ofNullable(storeMap.get(storeId));
+    }
+
+    /**
+     * Find a product without throwing when it does not exist
+     */
+    public Optional<Product> findProduct(String productId) {
+        return Optional.ofNullable(productMap.get(productId));
+    }
+
+    /**
+     * Find a customer without throwing when it does not exist
+     */
+    public Optional<Customer> findCustomer(String customerId) {
+        return Optional.ofNullable(customerMap.get(customerId));
+    }
+
+    /**
+     * Find a basket without throwing when it does not exist
+     */
+    public Optional<Basket> findBasket(String basketId) {
+        return Optional.ofNullable(basketMap.get(basketId));
+    }
+
+    /**
+     * Find an inventory without throwing when it does not exist
+     */
+    public Optional<Inventory> findInventory(String inventoryId) {
+        return Optional.ofNullable(inventoryMap.get(inventoryId));
+    }
+
+    /**
+     * Find a device without throwing when it does not exist
+     */
+    public Optional<Device> findDevice(String deviceId) {
+        return Optional.ofNullable(deviceMap.get(deviceId));
     }
 
     /**
@@ -599,13 +1529,28 @@ public class StoreService {
         return storeMap.values();
     }
 
+    /**
+     * Get several stores in one pass. Stores are returned in the order of the requested ids;
+     * ids that do not exist are skipped.
+     */
+    public List<Store> getStores(Collection<String> storeIds) {
+        List<Store> stores = new ArrayList<>(storeIds.size());
+        for (String storeId : storeIds) {
+            Store store = storeMap.get(storeId);
+            if (store != null) {
+                stores.add(store);
+            }
+        }
+        return stores;
+    }
+
     /**
      * Update store information
      */
     public Store updateStore(String storeId, String description, String address) throws StoreException {
         Store store = storeMap.get(storeId);
         if (store == null) {
-            throw new StoreException("Update Store", "Store Does Not Exist");
+            throw StoreException.stackless("Update Store", "Store Does Not Exist");
         }
 
         if (description != null) {
@@ -627,10 +1572,48 @@ public class StoreService {
      * Delete a store
      */
     public void deleteStore(String storeId) throws StoreException {
-        Store store = storeMap.remove(storeId);
+        Store store = storeMap.get(storeId);
         if (store == null) {
-            throw new StoreException("Delete Store", "Store Does Not Exist");
+            throw StoreException.stackless("Delete Store", "Store Does Not Exist");
+        }
+
+        //Baskets in use give their products back before the shelves go away
+        for (Basket basket : store.getBaskets()) {
+            if (!expireBasket(basket))
+                store.removeBasket(basket);
         }
+        //Customers stay registered with the chain but are no longer in any Store
+        occupancyMap.remove(storeId);
+        for (Customer customer : store.getCustomers()) {
+            store.removeCustomer(customer);
+            customer.setStoreLocation(null);
+            countCustomer(customer, null);
+        }
+        applianceIndex.remove(storeId);
+        CommandDispatcher dispatcher = commandDispatcher;
+        store.getDeviceMap().values().forEach(device -> {
+            deviceMap.remove(device.getId(), device);
+            telemetryMap.remove(device.getId());
+            if (dispatcher != null)
+                dispatcher.remove(device.getId());
+        });
+
+        for (Inventory inventory : store.getInventoryMap().values()) {
+            inventoryMap.remove(inventory.getId(), inventory);
+            //Slots of a deleted store no longer count towards any aggregate
+            inventory.setInventoryListener(null);
+            if (inventory.getProductId() != null) {
+                locations(productLocationMap, inventory.getProductId()).remove(inventory);
+                locations(inStockLocationMap, inventory.getProductId()).remove(inventory);
+            }
+        }
+        Map<String, AtomicLong> stock = storeStockMap.remove(storeId);
+        if (stock != null)
+            stock.forEach((productId, units) -> chainStockMap.get(productId).addAndGet(-units.get()));
+        lowStockMap.remove(storeId);
+
+        //The store goes last, so that it is still found should any of the cleanup above fail
+        storeMap.remove(storeId, store);
 
         // Also delete from repository if available
         if (storeRepository != null) {
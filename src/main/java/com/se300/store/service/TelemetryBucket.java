@@ -0,0 +1,47 @@
+package com.se300.store.service;
+
+/**
+ * Events of a device in one rollup bucket: how many there were and the minimum, maximum and mean
+ * of the numbers they carried, null when none carried a number.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class TelemetryBucket {
+    private final long start;
+    private final long count;
+    private final Double min;
+    private final Double max;
+    private final Double mean;
+
+    TelemetryBucket(long start, long count, Double min, Double max, Double mean) {
+        this.start = start;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+    }
+
+    /**
+     * Start of the bucket, in milliseconds since the epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public Double getMean() {
+        return mean;
+    }
+}
@@ -0,0 +1,37 @@
+package com.se300.store.service;
+
+/**
+ * An event raised by a device: when it happened, its text, and the number it carried if any.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class TelemetryEvent {
+    private final long timestamp;
+    private final String event;
+    private final Double value;
+
+    TelemetryEvent(long timestamp, String event, Double value) {
+        this.timestamp = timestamp;
+        this.event = event;
+        this.value = value;
+    }
+
+    /**
+     * When the event happened, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    /**
+     * The first number in the event text, null when there is none
+     */
+    public Double getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,168 @@
+package com.se300.store.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel. Time is divided into ticks; each of the four levels has 64 slots,
+ * a slot of level L spanning 64^L ticks, so the wheel covers 64^4 ticks ahead of the current one.
+ * Scheduling and cancelling are O(1); an entry moves down a level at most three times before it
+ * expires, and advancing by one tick only touches the slots that are due, never the whole wheel.
+ * Deadlines beyond the last level are clamped to it and come back early; callers re-check them.
+ *
+ * @param <T> The scheduled item
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final Timeout<T>[][] wheels;
+    // Every tick up to and including this one has been expired
+    private long currentTick;
+    private int size;
+
+    /**
+     * Constructor for TimingWheel
+     * @param tickMillis Length of a tick, the resolution of the deadlines
+     * @param nowMillis Current time
+     */
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.wheels = newWheels();
+        for (Timeout<T>[] wheel : wheels) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Timeout<T> sentinel = new Timeout<>(null, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheel[slot] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedule an item
+     * @param item
+     * @param deadlineMillis When the item expires, rounded up to the next tick
+     * @return Handle for cancelling the item
+     */
+    public synchronized Timeout<T> schedule(T item, long deadlineMillis) {
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(item, Math.min(tick, currentTick + SPAN - 1));
+        insert(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancel a scheduled item
+     * @param timeout
+     * @return Whether the item was still scheduled
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.next == null) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advance the wheel to the given time
+     * @param nowMillis
+     * @return Items whose deadline has passed, in deadline order
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Move the entries of the higher level slots that start at this tick down, highest first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(wheels[level][(int) (currentTick >>> (SLOT_BITS * level)) & MASK]);
+                }
+            }
+            Timeout<T> sentinel = wheels[0][(int) currentTick & MASK];
+            while (sentinel.next != sentinel) {
+                Timeout<T> timeout = sentinel.next;
+                unlink(timeout);
+                size--;
+                expired.add(timeout.item);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Number of scheduled items
+     * @return
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    // Generic arrays cannot be created directly; the array never escapes and only ever holds Timeout<T>
+    @SuppressWarnings("unchecked")
+    private static <T> Timeout<T>[][] newWheels() {
+        return (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+    }
+
+    private void cascade(Timeout<T> sentinel) {
+        while (sentinel.next != sentinel) {
+            Timeout<T> timeout = sentinel.next;
+            unlink(timeout);
+            insert(timeout);
+        }
+    }
+
+    private void insert(Timeout<T> timeout) {
+        long delta = timeout.tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        Timeout<T> sentinel = wheels[level][(int) (timeout.tick >>> (SLOT_BITS * level)) & MASK];
+        timeout.previous = sentinel.previous;
+        timeout.next = sentinel;
+        sentinel.previous.next = timeout;
+        sentinel.previous = timeout;
+    }
+
+    private static <T> void unlink(Timeout<T> timeout) {
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    /**
+     * A scheduled item, linked into the list of its slot
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long tick;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+
+        public T getItem() {
+            return item;
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package com.se300.store.servlet;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.se300.store.metrics.MetricsRegistry;
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Base servlet providing common functionality for all API servlets.
@@ -16,29 +28,190 @@ import java.io.PrintWriter;
  */
 public abstract class BaseServlet extends HttpServlet {
 
+    /**
+     * Default maximum request body size (1 MB). Can be overridden with the
+     * "maxBodySize" servlet init parameter or {@link #setMaxBodySize(long)}.
+     */
+    public static final long DEFAULT_MAX_BODY_SIZE = 1024L * 1024L;
+
+    private static final String MAX_BODY_SIZE_PARAM = "maxBodySize";
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    // Response format negotiated from the Accept header of the request being serviced on this thread
+    private static final ThreadLocal<WireFormat> RESPONSE_FORMAT = ThreadLocal.withInitial(() -> WireFormat.JSON);
+
+    private long maxBodySize = DEFAULT_MAX_BODY_SIZE;
+
+    /**
+     * Pick up the optional "maxBodySize" init parameter.
+     *
+     * @throws ServletException If the parameter is not a positive number
+     */
+    @Override
+    public void init() throws ServletException {
+        String configured = getInitParameter(MAX_BODY_SIZE_PARAM);
+        if (configured != null) {
+            try {
+                setMaxBodySize(Long.parseLong(configured.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new ServletException("Invalid " + MAX_BODY_SIZE_PARAM + ": " + configured, e);
+            }
+        }
+    }
+
+    /**
+     * Negotiate the response format, dispatch the request and turn an oversized body into a 413 response.
+     * Every request is timed and counted in the {@link MetricsRegistry} under its servlet path and method.
+     */
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        MeteredResponse metered = new MeteredResponse(response);
+        boolean failed = true;
+        RESPONSE_FORMAT.set(WireFormat.fromAccept(request.getHeader("Accept")));
+        try {
+            super.service(request, metered);
+            failed = false;
+        } catch (RequestBodyTooLargeException e) {
+            if (!metered.isCommitted()) {
+                sendErrorResponse(metered, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+            }
+            failed = false;
+        } finally {
+            RESPONSE_FORMAT.remove();
+            metered.finish();
+            // An exception escaping the servlet becomes a 500 in the container
+            int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : metered.getStatus();
+            MetricsRegistry.getInstance()
+                    .endpoint(request.getServletPath(), request.getMethod())
+                    .record(status, System.nanoTime() - start,
+                            Math.max(request.getContentLengthLong(), 0), metered.getBytesWritten());
+        }
+    }
+
+    /**
+     * Get the maximum number of bytes accepted in a request body.
+     *
+     * @return The body size limit in bytes
+     */
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Set the maximum number of bytes accepted in a request body.
+     *
+     * @param maxBodySize The body size limit in bytes, must be positive
+     */
+    public void setMaxBodySize(long maxBodySize) {
+        if (maxBodySize <= 0) {
+            throw new IllegalArgumentException("maxBodySize must be positive");
+        }
+        this.maxBodySize = maxBodySize;
+    }
+
     /**
      * Read the request body as a string.
-     * Used for parsing JSON payloads from POST/PUT requests.
+     * Used for parsing small JSON payloads from POST/PUT requests. Line breaks are preserved
+     * and the body is limited to the configured maximum size in bytes, like
+     * {@link #openRequestBody(HttpServletRequest)}.
      *
      * @param request The HTTP request
      * @return The request body as a string
-     * @throws IOException If reading fails
+     * @throws IOException If reading fails or the body is too large
      */
     protected String readRequestBody(HttpServletRequest request) throws IOException {
         StringBuilder buffer = new StringBuilder();
-        BufferedReader reader = request.getReader();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            buffer.append(line);
+        try (Reader reader = new InputStreamReader(openRequestBody(request), requestCharset(request))) {
+            char[] chunk = new char[READ_BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(chunk)) != -1) {
+                buffer.append(chunk, 0, read);
+            }
         }
         return buffer.toString();
     }
 
     /**
-     * Send a JSON response with HTTP 200 OK status.
+     * Open the request body as a raw stream limited to the configured maximum size.
+     * Reading past the limit throws {@link RequestBodyTooLargeException}.
+     *
+     * @param request The HTTP request
+     * @return A size-limited stream over the request body
+     * @throws IOException If the declared body length is already too large
+     */
+    protected InputStream openRequestBody(HttpServletRequest request) throws IOException {
+        checkDeclaredLength(request);
+        return new BoundedInputStream(request.getInputStream(), maxBodySize);
+    }
+
+    /**
+     * Open the request body as a Gson streaming reader so that controllers can
+     * bind large JSON payloads incrementally without buffering the whole body.
+     *
+     * @param request The HTTP request
+     * @return A JsonReader over the size-limited request body
+     * @throws IOException If the declared body length is already too large
+     */
+    protected JsonReader openJsonReader(HttpServletRequest request) throws IOException {
+        return new JsonReader(new InputStreamReader(openRequestBody(request), requestCharset(request)));
+    }
+
+    /**
+     * Bind the request body directly to an object of the given type.
+     * The body is read as CBOR when the Content-Type is application/cbor, JSON otherwise.
+     *
+     * @param request The HTTP request
+     * @param typeOfT The type of the target object
+     * @param <T> The type of the target object
+     * @return The deserialized object, or null if the body is empty
+     * @throws IOException If reading fails or the body is too large
+     */
+    protected <T> T readJsonBody(HttpServletRequest request, Type typeOfT) throws IOException {
+        JsonReader source = WireFormat.fromContentType(request.getContentType()) == WireFormat.CBOR
+                ? new CborReader(openRequestBody(request))
+                : openJsonReader(request);
+        try (JsonReader reader = source) {
+            return JsonHelper.fromJson(reader, typeOfT);
+        } catch (JsonParseException e) {
+            // Gson wraps stream failures, surface the size limit so service() can answer 413
+            if (e.getCause() instanceof RequestBodyTooLargeException tooLarge) {
+                throw tooLarge;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reject the request early when the client declares a body larger than allowed.
+     */
+    private void checkDeclaredLength(HttpServletRequest request) throws RequestBodyTooLargeException {
+        if (request.getContentLengthLong() > maxBodySize) {
+            throw new RequestBodyTooLargeException(maxBodySize);
+        }
+    }
+
+    /**
+     * Resolve the request character encoding, defaulting to UTF-8.
+     */
+    private Charset requestCharset(HttpServletRequest request) {
+        String encoding = request.getCharacterEncoding();
+        if (encoding == null) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Send a response with HTTP 200 OK status in the negotiated format (JSON unless the client prefers CBOR).
      *
      * @param response The HTTP response
-     * @param object The object to serialize to JSON
+     * @param object The object to serialize
      * @throws IOException If writing fails
      */
     protected void sendJsonResponse(HttpServletResponse response, Object object) throws IOException {
@@ -46,21 +219,29 @@ public abstract class BaseServlet extends HttpServlet {
     }
 
     /**
-     * Send a JSON response with a specified HTTP status code.
+     * Send a response with a specified HTTP status code in the negotiated format.
      *
      * @param response The HTTP response
-     * @param object The object to serialize to JSON
+     * @param object The object to serialize
      * @param statusCode The HTTP status code (200, 201, 400, etc.)
      * @throws IOException If writing fails
      */
     protected void sendJsonResponse(HttpServletResponse response, Object object, int statusCode) throws IOException {
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        response.setStatus(statusCode);
+        writeEntity(response, object, statusCode, null);
+    }
 
-        PrintWriter out = response.getWriter();
-        out.print(JsonHelper.toJson(object));
-        out.flush();
+    /**
+     * Send a 200 OK response containing only the requested properties of the entity,
+     * or of each entity when the object is a collection.
+     *
+     * @param response The HTTP response
+     * @param object The object or collection to serialize
+     * @param fields The property names to keep, or null for all properties
+     * @throws IOException If writing fails
+     */
+    protected void sendProjectedResponse(HttpServletResponse response, Object object, Set<String> fields)
+            throws IOException {
+        writeEntity(response, object, HttpServletResponse.SC_OK, fields);
     }
 
     /**
@@ -72,14 +253,43 @@ public abstract class BaseServlet extends HttpServlet {
      * @throws IOException If writing fails
      */
     protected void sendErrorResponse(HttpServletResponse response, int statusCode, String message) throws IOException {
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        response.setStatus(statusCode);
-
         // Create a simple error object
         ErrorResponse error = new ErrorResponse(statusCode, message);
+        writeEntity(response, error, statusCode, null);
+    }
+
+    /**
+     * Get the response format negotiated for the request currently being serviced.
+     *
+     * @return The negotiated format, JSON outside of a request
+     */
+    protected WireFormat getResponseFormat() {
+        return RESPONSE_FORMAT.get();
+    }
+
+    /**
+     * Serialize the object straight to the response in the negotiated format.
+     */
+    private void writeEntity(HttpServletResponse response, Object object, int statusCode, Set<String> fields)
+            throws IOException {
+        WireFormat format = getResponseFormat();
+        response.setStatus(statusCode);
+        response.setHeader("Vary", "Accept");
+
+        if (format == WireFormat.CBOR) {
+            response.setContentType(format.getMediaType());
+            JsonHelper.toCbor(object, response.getOutputStream(), fields);
+            return;
+        }
+
+        response.setContentType(format.getMediaType());
+        response.setCharacterEncoding("UTF-8");
         PrintWriter out = response.getWriter();
-        out.print(JsonHelper.toJson(error));
+        if (fields == null) {
+            JsonHelper.toJson(object, out);
+        } else {
+            JsonHelper.toJson(object, out, fields);
+        }
         out.flush();
     }
 
@@ -102,23 +312,68 @@ public abstract class BaseServlet extends HttpServlet {
             return parts[0];
     }
 
+    /**
+     * Extract the sub-resource following the resource ID in the request path.
+     * For example, "/api/v1/stores/S1/low-stock" returns "low-stock"
+     *
+     * @param request The HTTP request
+     * @return The sub-resource name, or null if not present
+     */
+    protected String extractSubResource(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        if (pathInfo == null) {
+            return null;
+        }
+
+        String[] parts = pathInfo.substring(1).split("/");
+        return parts.length > 1 ? parts[1] : null;
+    }
+
+    /**
+     * Parse a comma separated query parameter such as "fields=id,address" or "ids=S1,S2".
+     * Blank entries are dropped and duplicates removed while keeping the original order.
+     *
+     * @param request The HTTP request
+     * @param name The parameter name
+     * @return The values, or null if the parameter is absent
+     */
+    protected Set<String> getListParameter(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        if (value == null) {
+            return null;
+        }
+        Set<String> values = new LinkedHashSet<>();
+        for (String part : value.split(",")) {
+            String trimmed = part.trim();
+            if (!trimmed.isEmpty()) {
+                values.add(trimmed);
+            }
+        }
+        return values;
+    }
+
     /**
      * Simple error response object for consistent error formatting.
+     * Package-private so that ModelTypeAdapters can serialize it without reflection.
      */
-    private static class ErrorResponse {
+    static class ErrorResponse {
         private final int status;
         private final String message;
         private final long timestamp;
 
         public ErrorResponse(int status, String message) {
-            this.status = status;
-            this.message = message;
-            this.timestamp = System.currentTimeMillis();
+            this(status, message, System.currentTimeMillis());
             getStatus();
             getMessage();
             getTimestamp();
         }
 
+        ErrorResponse(int status, String message, long timestamp) {
+            this.status = status;
+            this.message = message;
+            this.timestamp = timestamp;
+        }
+
         public int getStatus() {
             return status;
         }
@@ -131,4 +386,49 @@ public abstract class BaseServlet extends HttpServlet {
             return timestamp;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Input stream that fails once more than the allowed number of bytes has been read.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private final long limit;
+        private long consumed;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws RequestBodyTooLargeException {
+            consumed += bytes;
+            if (consumed > limit) {
+                throw new RequestBodyTooLargeException(limit);
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.se300.store.servlet;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Gson JsonReader that decodes CBOR (RFC 8949) so that the registered TypeAdapters can bind
+ * binary request bodies. Both definite and indefinite length items are accepted; semantic tags
+ * are skipped. Byte strings are not supported, and neither are maps with non-string keys.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class CborReader extends JsonReader {
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xFF;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    // Open containers: map or array, items left (-1 when indefinite), and whether a key is expected next
+    private boolean[] isMap = new boolean[16];
+    private long[] remaining = new long[16];
+    private boolean[] expectKey = new boolean[16];
+    private int depth;
+    private boolean topLevelRead;
+
+    private JsonToken peeked;
+    private int initial;
+
+    /**
+     * Constructor for CborReader
+     * @param in The stream of CBOR bytes
+     */
+    public CborReader(InputStream in) {
+        super(Reader.nullReader());
+        this.in = in;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        if (depth > 0 && remaining[depth - 1] == 0) {
+            peeked = isMap[depth - 1] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            return peeked;
+        }
+
+        int next = read();
+        if (next == -1) {
+            if (depth == 0 && topLevelRead) {
+                peeked = JsonToken.END_DOCUMENT;
+                return peeked;
+            }
+            throw new EOFException("End of CBOR input");
+        }
+        // Semantic tags only add meaning to the following item, skip them
+        while ((next >> 5) == 6) {
+            readArgument(next);
+            next = readRequired();
+        }
+
+        if (next == BREAK) {
+            if (depth == 0 || remaining[depth - 1] != -1 || (isMap[depth - 1] && !expectKey[depth - 1])) {
+                throw new IOException("Unexpected CBOR break");
+            }
+            remaining[depth - 1] = 0;
+            peeked = isMap[depth - 1] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            return peeked;
+        }
+
+        initial = next;
+        int major = next >> 5;
+        if (depth > 0 && isMap[depth - 1] && expectKey[depth - 1]) {
+            if (major != 3) {
+                throw new IOException("CBOR map keys must be text strings");
+            }
+            peeked = JsonToken.NAME;
+            return peeked;
+        }
+
+        peeked = switch (major) {
+            case 0, 1 -> JsonToken.NUMBER;
+            case 3 -> JsonToken.STRING;
+            case 4 -> JsonToken.BEGIN_ARRAY;
+            case 5 -> JsonToken.BEGIN_OBJECT;
+            case 7 -> switch (next & 0x1F) {
+                case 20, 21 -> JsonToken.BOOLEAN;
+                case 22, 23 -> JsonToken.NULL;
+                case 25, 26, 27 -> JsonToken.NUMBER;
+                default -> throw new IOException("Unsupported CBOR simple value " + (next & 0x1F));
+            };
+            default -> throw new IOException("Unsupported CBOR major type " + major);
+        };
+        return peeked;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        push(false, containerLength());
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        depth--;
+        afterValue();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        push(true, containerLength());
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        depth--;
+        afterValue();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        String name = readText();
+        expectKey[depth - 1] = false;
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        String value;
+        if (token == JsonToken.STRING) {
+            peeked = null;
+            value = readText();
+        } else if (token == JsonToken.NUMBER) {
+            peeked = null;
+            value = numberToString();
+        } else {
+            throw new IllegalStateException("Expected a string but was " + token);
+        }
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        afterValue();
+        return (initial & 0x1F) == 21;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        afterValue();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        JsonToken token = peek();
+        double value;
+        if (token == JsonToken.NUMBER) {
+            peeked = null;
+            value = (initial >> 5) == 7 ? readFloat() : readInteger();
+        } else if (token == JsonToken.STRING) {
+            peeked = null;
+            value = Double.parseDouble(readText());
+        } else {
+            throw new IllegalStateException("Expected a double but was " + token);
+        }
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        JsonToken token = peek();
+        long value;
+        if (token == JsonToken.NUMBER && (initial >> 5) != 7) {
+            peeked = null;
+            value = readInteger();
+        } else if (token == JsonToken.NUMBER) {
+            peeked = null;
+            double asDouble = readFloat();
+            value = (long) asDouble;
+            if (value != asDouble) {
+                throw new NumberFormatException("Expected a long but was " + asDouble);
+            }
+        } else if (token == JsonToken.STRING) {
+            peeked = null;
+            value = Long.parseLong(readText());
+        } else {
+            throw new IllegalStateException("Expected a long but was " + token);
+        }
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw new NumberFormatException("Expected an int but was " + value);
+        }
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_ARRAY -> {
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+            }
+            case BEGIN_OBJECT -> {
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+            }
+            case NAME -> {
+                nextName();
+                skipValue();
+            }
+            case BOOLEAN -> nextBoolean();
+            case NULL -> nextNull();
+            case STRING, NUMBER -> nextString();
+            default -> throw new IllegalStateException("Cannot skip " + peeked);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        depth = 0;
+        in.close();
+    }
+
+    @Override
+    public String getPath() {
+        return "$ (CBOR depth " + depth + ")";
+    }
+
+    @Override
+    public String toString() {
+        return "CborReader at " + getPath();
+    }
+
+    // ==================== STRUCTURE ====================
+
+    private void expect(JsonToken token) throws IOException {
+        JsonToken actual = peek();
+        if (actual != token) {
+            throw new IllegalStateException("Expected " + token + " but was " + actual);
+        }
+        peeked = null;
+    }
+
+    private long containerLength() throws IOException {
+        return (initial & 0x1F) == INDEFINITE ? -1 : readArgument(initial);
+    }
+
+    private void push(boolean map, long length) {
+        if (depth == isMap.length) {
+            isMap = Arrays.copyOf(isMap, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+            expectKey = Arrays.copyOf(expectKey, depth * 2);
+        }
+        isMap[depth] = map;
+        remaining[depth] = length;
+        expectKey[depth] = map;
+        depth++;
+    }
+
+    private void afterValue() {
+        if (depth == 0) {
+            topLevelRead = true;
+            return;
+        }
+        int top = depth - 1;
+        if (isMap[top]) {
+            expectKey[top] = true;
+        }
+        if (remaining[top] > 0) {
+            remaining[top]--;
+        }
+    }
+
+    // ==================== SCALARS ====================
+
+    private String readText() throws IOException {
+        if ((initial & 0x1F) != INDEFINITE) {
+            return readUtf8(readArgument(initial));
+        }
+        StringBuilder text = new StringBuilder();
+        int chunk;
+        while ((chunk = readRequired()) != BREAK) {
+            text.append(readUtf8(readArgument(chunk)));
+        }
+        return text.toString();
+    }
+
+    private String readUtf8(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("CBOR string too long");
+        }
+        int size = (int) length;
+        if (size <= limit - position) {
+            String text = new String(buffer, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return text;
+        }
+        // The length comes from the client, so the string grows with the bytes that actually arrive
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(size, buffer.length * 2));
+        int left = size;
+        while (left > 0) {
+            if (position == limit && !fill()) {
+                throw new EOFException("Truncated CBOR input");
+            }
+            int chunk = Math.min(left, limit - position);
+            bytes.write(buffer, position, chunk);
+            position += chunk;
+            left -= chunk;
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private long readInteger() throws IOException {
+        long argument = readArgument(initial);
+        if (argument < 0) {
+            throw new NumberFormatException("CBOR integer out of range");
+        }
+        return (initial >> 5) == 1 ? -1 - argument : argument;
+    }
+
+    private double readFloat() throws IOException {
+        return switch (initial & 0x1F) {
+            case 25 -> halfToDouble((int) readRaw(2));
+            case 26 -> Float.intBitsToFloat((int) readRaw(4));
+            default -> Double.longBitsToDouble(readRaw(8));
+        };
+    }
+
+    private String numberToString() throws IOException {
+        if ((initial >> 5) == 7) {
+            return Double.toString(readFloat());
+        }
+        return Long.toString(readInteger());
+    }
+
+    private static double halfToDouble(int bits) {
+        int exponent = (bits >> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        double value;
+        if (exponent == 0) {
+            value = mantissa * Math.pow(2, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        } else {
+            value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+        }
+        return (bits & 0x8000) != 0 ? -value : value;
+    }
+
+    private long readArgument(int initialByte) throws IOException {
+        int info = initialByte & 0x1F;
+        if (info < 24) {
+            return info;
+        }
+        return switch (info) {
+            case 24 -> readRaw(1);
+            case 25 -> readRaw(2);
+            case 26 -> readRaw(4);
+            case 27 -> readRaw(8);
+            default -> throw new IOException("Malformed CBOR argument " + info);
+        };
+    }
+
+    private long readRaw(int bytes) throws IOException {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | readRequired();
+        }
+        return value;
+    }
+
+    private int readRequired() throws IOException {
+        int next = read();
+        if (next == -1) {
+            throw new EOFException("Truncated CBOR input");
+        }
+        return next;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        limit = in.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,276 @@
+package com.se300.store.servlet;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Gson JsonWriter that emits CBOR (RFC 8949) instead of JSON text.
+ * Because it plugs in underneath Gson, every registered TypeAdapter can write CBOR without
+ * a second schema. Objects and arrays are written with indefinite length so that values can be
+ * streamed straight to the servlet output stream; strings and numbers use definite, shortest-form
+ * encodings.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class CborWriter extends JsonWriter {
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+
+    private static final int BEGIN_ARRAY = 0x9F;
+    private static final int BEGIN_MAP = 0xBF;
+    private static final int BREAK = 0xFF;
+    private static final int FALSE = 0xF4;
+    private static final int TRUE = 0xF5;
+    private static final int NULL = 0xF6;
+    private static final int FLOAT32 = 0xFA;
+    private static final int FLOAT64 = 0xFB;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1024];
+    private int position;
+
+    /**
+     * Constructor for CborWriter
+     * @param out The stream the CBOR bytes are written to
+     */
+    public CborWriter(OutputStream out) {
+        super(Writer.nullWriter());
+        this.out = out;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writeByte(BEGIN_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        writeByte(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        writeByte(BEGIN_MAP);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        writeByte(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        writeText(name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeText(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        throw new UnsupportedOperationException("Raw JSON values cannot be written as CBOR");
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        writeByte(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writeByte(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        return value == null ? nullValue() : value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        return value((double) value);
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        float narrow = (float) value;
+        if (narrow == value || Double.isNaN(value)) {
+            ensure(5);
+            buffer[position++] = (byte) FLOAT32;
+            writeRaw(Float.floatToIntBits(narrow), 4);
+        } else {
+            ensure(9);
+            buffer[position++] = (byte) FLOAT64;
+            writeRaw(Double.doubleToLongBits(value), 8);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value);
+        } else {
+            writeHeader(MAJOR_NEGATIVE, -1 - value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(value.doubleValue());
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        // BigDecimal, BigInteger, LazilyParsedNumber and friends
+        BigDecimal decimal = new BigDecimal(value.toString());
+        try {
+            BigInteger integer = decimal.toBigIntegerExact();
+            if (integer.bitLength() < 64) {
+                return value(integer.longValue());
+            }
+        } catch (ArithmeticException ignored) {
+            // Not an integer, fall through to floating point
+        }
+        return value(decimal.doubleValue());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /**
+     * Write a UTF-8 text string without allocating an intermediate byte array.
+     */
+    private void writeText(String text) throws IOException {
+        int length = text.length();
+        long utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                utf8Length += 1;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                utf8Length += 1;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        writeHeader(MAJOR_TEXT, utf8Length);
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            ensure(4);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Lone surrogates are replaced, matching String.getBytes(UTF_8)
+                buffer[position++] = (byte) '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Write a major type with its argument in the shortest form.
+     */
+    private void writeHeader(int majorType, long argument) throws IOException {
+        int major = majorType << 5;
+        ensure(9);
+        if (argument < 24) {
+            buffer[position++] = (byte) (major | argument);
+        } else if (argument < 0x100) {
+            buffer[position++] = (byte) (major | 24);
+            writeRaw(argument, 1);
+        } else if (argument < 0x10000) {
+            buffer[position++] = (byte) (major | 25);
+            writeRaw(argument, 2);
+        } else if (argument < 0x100000000L) {
+            buffer[position++] = (byte) (major | 26);
+            writeRaw(argument, 4);
+        } else {
+            buffer[position++] = (byte) (major | 27);
+            writeRaw(argument, 8);
+        }
+    }
+
+    private void writeRaw(long value, int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.se300.store.servlet;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Set;
 
 /**
  * Helper class for JSON serialization and deserialization.
@@ -16,21 +22,12 @@ public class JsonHelper {
 
     // Singleton Gson instance configured with custom type adapters
     // This ensures consistent JSON formatting across the entire application
-    private static final Gson GSON = new GsonBuilder()
-            .setPrettyPrinting()  // Makes JSON output human-readable
-            .serializeNulls()     // Include null fields in JSON output
-            // Custom serializer for LocalDate (converts to ISO-8601 format: yyyy-MM-dd)
-            .registerTypeAdapter(LocalDate.class, (JsonSerializer<LocalDate>)
-                    (src, typeOfSrc, context) -> new JsonPrimitive(src.format(DateTimeFormatter.ISO_LOCAL_DATE)))
-            // Custom deserializer for LocalDate (parses from ISO-8601 format)
-            .registerTypeAdapter(LocalDate.class, (JsonDeserializer<LocalDate>)
-                    (json, typeOfT, context) -> LocalDate.parse(json.getAsString(), DateTimeFormatter.ISO_LOCAL_DATE))
-            // Custom serializer for LocalDateTime (converts to ISO-8601 format with time)
-            .registerTypeAdapter(LocalDateTime.class, (JsonSerializer<LocalDateTime>)
-                    (src, typeOfSrc, context) -> new JsonPrimitive(src.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)))
-            // Custom deserializer for LocalDateTime (parses from ISO-8601 format with time)
-            .registerTypeAdapter(LocalDateTime.class, (JsonDeserializer<LocalDateTime>)
-                    (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString(), DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+    // Model classes, dates and LocalDate/LocalDateTime use the hand-written streaming adapters
+    // from ModelTypeAdapters instead of Gson's reflective adapters; Dates are written as ISO-8601 instants
+    private static final Gson GSON = ModelTypeAdapters.register(new GsonBuilder()
+                    .setPrettyPrinting()  // Makes JSON output human-readable
+                    .serializeNulls(),    // Include null fields in JSON output
+                    ModelTypeAdapters.DateEncoding.ISO_INSTANT)
             .create();
 
     /**
@@ -43,6 +40,76 @@ public class JsonHelper {
         return GSON.toJson(object);
     }
 
+    /**
+     * Serialize a Java object straight to a character stream without building
+     * an intermediate String.
+     *
+     * @param object The object to serialize
+     * @param writer The destination stream
+     */
+    public static void toJson(Object object, Appendable writer) {
+        GSON.toJson(object, writer);
+    }
+
+    /**
+     * Serialize a Java object as CBOR straight to a byte stream. The same type adapters as
+     * for JSON are used, so both representations carry identical documents.
+     *
+     * @param object The object to serialize
+     * @param out The destination stream, flushed but not closed
+     * @throws IOException If writing fails
+     */
+    public static void toCbor(Object object, OutputStream out) throws IOException {
+        toCbor(object, out, null);
+    }
+
+    /**
+     * Serialize a Java object as CBOR keeping only the given entity properties.
+     *
+     * @param object The object (or collection of objects) to serialize
+     * @param out The destination stream, flushed but not closed
+     * @param fields The property names to keep, or null for all properties
+     * @throws IOException If writing fails
+     */
+    public static void toCbor(Object object, OutputStream out, Set<String> fields) throws IOException {
+        write(object, new CborWriter(out), fields);
+    }
+
+    /**
+     * Serialize a Java object as JSON keeping only the given entity properties (sparse fieldset).
+     * For a collection the projection applies to each element.
+     *
+     * @param object The object (or collection of objects) to serialize
+     * @param writer The destination stream, flushed but not closed
+     * @param fields The property names to keep, or null for all properties
+     * @throws IOException If writing fails
+     */
+    public static void toJson(Object object, Writer writer, Set<String> fields) throws IOException {
+        write(object, GSON.newJsonWriter(writer), fields);
+    }
+
+    private static void write(Object object, JsonWriter target, Set<String> fields) throws IOException {
+        JsonWriter writer = fields == null ? target : new ProjectingJsonWriter(target, fields);
+        if (object == null) {
+            writer.nullValue();
+        } else {
+            GSON.toJson(object, object.getClass(), writer);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Read a CBOR value of the specified type from a byte stream.
+     *
+     * @param in The stream to deserialize
+     * @param typeOfT The type of the target object
+     * @param <T> The type of the target object
+     * @return The deserialized object, or null if the stream is empty
+     */
+    public static <T> T fromCbor(InputStream in, Type typeOfT) {
+        return GSON.fromJson(new CborReader(in), typeOfT);
+    }
+
     /**
      * Convert a JSON string to a Java object of the specified type.
      *
@@ -55,6 +122,32 @@ public class JsonHelper {
         return GSON.fromJson(json, classOfT);
     }
 
+    /**
+     * Read a JSON value of the specified type from a character stream.
+     *
+     * @param reader The character stream to deserialize
+     * @param classOfT The class of the target object
+     * @param <T> The type of the target object
+     * @return The deserialized object
+     */
+    public static <T> T fromJson(Reader reader, Class<T> classOfT) {
+        return GSON.fromJson(reader, classOfT);
+    }
+
+    /**
+     * Read the next JSON value of the specified type from a streaming reader.
+     * The reader is left positioned after the value, so callers can bind array
+     * elements or nested objects one at a time.
+     *
+     * @param reader The streaming reader
+     * @param typeOfT The type of the target object
+     * @param <T> The type of the target object
+     * @return The deserialized object, or null if the stream is empty
+     */
+    public static <T> T fromJson(JsonReader reader, Type typeOfT) {
+        return GSON.fromJson(reader, typeOfT);
+    }
+
     /**
      * Get the configured Gson instance.
      * Useful for advanced serialization scenarios.
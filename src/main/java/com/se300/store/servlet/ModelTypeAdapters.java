@@ -0,0 +1,546 @@
+package com.se300.store.servlet;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.se300.store.model.Basket;
+import com.se300.store.model.Customer;
+import com.se300.store.model.CustomerAgeGroup;
+import com.se300.store.model.CustomerType;
+import com.se300.store.model.Inventory;
+import com.se300.store.model.InventoryLocation;
+import com.se300.store.model.InventoryType;
+import com.se300.store.model.Product;
+import com.se300.store.model.Store;
+import com.se300.store.model.StoreLocation;
+import com.se300.store.model.Temperature;
+import com.se300.store.model.User;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Hand-written streaming Gson adapters for the model classes.
+ * They write and read fields directly instead of going through Gson's reflective adapters,
+ * and produce the same field names as the reflective output (transient fields are skipped).
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public final class ModelTypeAdapters {
+
+    /**
+     * Encoding used for java.util.Date fields such as Customer.lastSeen.
+     * Both encodings are accepted when reading.
+     */
+    public enum DateEncoding {
+        ISO_INSTANT,
+        EPOCH_MILLIS
+    }
+
+    private ModelTypeAdapters() {
+    }
+
+    /**
+     * Register every model adapter on the given builder.
+     *
+     * @param builder The Gson builder
+     * @param dateEncoding The encoding used when writing dates
+     * @return The same builder for chaining
+     */
+    public static GsonBuilder register(GsonBuilder builder, DateEncoding dateEncoding) {
+        return builder
+                .registerTypeAdapter(Date.class, new DateAdapter(dateEncoding))
+                .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+                .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+                .registerTypeAdapter(Store.class, new StoreAdapter())
+                .registerTypeAdapter(StoreLocation.class, new StoreLocationAdapter())
+                .registerTypeAdapter(InventoryLocation.class, new InventoryLocationAdapter())
+                .registerTypeAdapter(Customer.class, new CustomerAdapter(dateEncoding))
+                .registerTypeAdapter(Basket.class, new BasketAdapter())
+                .registerTypeAdapter(Inventory.class, new InventoryAdapter())
+                .registerTypeAdapter(Product.class, new ProductAdapter())
+                .registerTypeAdapter(User.class, new UserAdapter())
+                .registerTypeAdapter(BaseServlet.ErrorResponse.class, new ErrorResponseAdapter());
+    }
+
+    // ==================== SHARED HELPERS ====================
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static <E extends Enum<E>> E nextEnum(JsonReader in, Class<E> type) throws IOException {
+        String name = nextString(in);
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    private static void writeEnum(JsonWriter out, String name, Enum<?> value) throws IOException {
+        out.name(name).value(value == null ? null : value.name());
+    }
+
+    private static void writeDate(JsonWriter out, Date date, DateEncoding encoding) throws IOException {
+        if (date == null) {
+            out.nullValue();
+        } else if (encoding == DateEncoding.EPOCH_MILLIS) {
+            out.value(date.getTime());
+        } else {
+            // ISO_INSTANT is immutable and safe to share between request threads
+            out.value(DateTimeFormatter.ISO_INSTANT.format(date.toInstant()));
+        }
+    }
+
+    private static Date readDate(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case NUMBER:
+                return new Date(in.nextLong());
+            default:
+                return Date.from(Instant.parse(in.nextString()));
+        }
+    }
+
+    // ==================== DATE ADAPTERS ====================
+
+    static final class DateAdapter extends TypeAdapter<Date> {
+        private final DateEncoding encoding;
+
+        DateAdapter(DateEncoding encoding) {
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(JsonWriter out, Date value) throws IOException {
+            writeDate(out, value, encoding);
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            return readDate(in);
+        }
+    }
+
+    static final class LocalDateAdapter extends TypeAdapter<LocalDate> {
+        @Override
+        public void write(JsonWriter out, LocalDate value) throws IOException {
+            out.value(value == null ? null : value.format(DateTimeFormatter.ISO_LOCAL_DATE));
+        }
+
+        @Override
+        public LocalDate read(JsonReader in) throws IOException {
+            String text = nextString(in);
+            return text == null ? null : LocalDate.parse(text, DateTimeFormatter.ISO_LOCAL_DATE);
+        }
+    }
+
+    static final class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
+        @Override
+        public void write(JsonWriter out, LocalDateTime value) throws IOException {
+            out.value(value == null ? null : value.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        }
+
+        @Override
+        public LocalDateTime read(JsonReader in) throws IOException {
+            String text = nextString(in);
+            return text == null ? null : LocalDateTime.parse(text, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        }
+    }
+
+    // ==================== MODEL ADAPTERS ====================
+
+    static final class StoreAdapter extends TypeAdapter<Store> {
+        @Override
+        public void write(JsonWriter out, Store store) throws IOException {
+            if (store == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(store.getId());
+            out.name("address").value(store.getAddress());
+            out.name("description").value(store.getDescription());
+            out.endObject();
+        }
+
+        @Override
+        public Store read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String id = null;
+            String address = null;
+            String description = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> id = nextString(in);
+                    case "address" -> address = nextString(in);
+                    case "description" -> description = nextString(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Store(id, address, description);
+        }
+    }
+
+    static final class StoreLocationAdapter extends TypeAdapter<StoreLocation> {
+        @Override
+        public void write(JsonWriter out, StoreLocation location) throws IOException {
+            if (location == null) {
+                out.nullValue();
+                return;
+            }
+            if (location instanceof InventoryLocation inventoryLocation) {
+                InventoryLocationAdapter.writeFields(out, inventoryLocation);
+                return;
+            }
+            out.beginObject();
+            out.name("storeId").value(location.getStoreId());
+            out.name("aisleId").value(location.getAisleId());
+            out.endObject();
+        }
+
+        @Override
+        public StoreLocation read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String storeId = null;
+            String aisleId = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "storeId" -> storeId = nextString(in);
+                    case "aisleId" -> aisleId = nextString(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new StoreLocation(storeId, aisleId);
+        }
+    }
+
+    static final class InventoryLocationAdapter extends TypeAdapter<InventoryLocation> {
+        static void writeFields(JsonWriter out, InventoryLocation location) throws IOException {
+            out.beginObject();
+            out.name("shelfId").value(location.getShelfId());
+            out.name("storeId").value(location.getStoreId());
+            out.name("aisleId").value(location.getAisleId());
+            out.endObject();
+        }
+
+        @Override
+        public void write(JsonWriter out, InventoryLocation location) throws IOException {
+            if (location == null) {
+                out.nullValue();
+                return;
+            }
+            writeFields(out, location);
+        }
+
+        @Override
+        public InventoryLocation read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String storeId = null;
+            String aisleId = null;
+            String shelfId = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "storeId" -> storeId = nextString(in);
+                    case "aisleId" -> aisleId = nextString(in);
+                    case "shelfId" -> shelfId = nextString(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new InventoryLocation(storeId, aisleId, shelfId);
+        }
+    }
+
+    static final class CustomerAdapter extends TypeAdapter<Customer> {
+        private final DateEncoding dateEncoding;
+        private final StoreLocationAdapter locationAdapter = new StoreLocationAdapter();
+
+        CustomerAdapter(DateEncoding dateEncoding) {
+            this.dateEncoding = dateEncoding;
+        }
+
+        @Override
+        public void write(JsonWriter out, Customer customer) throws IOException {
+            if (customer == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(customer.getId());
+            out.name("firstName").value(customer.getFirstName());
+            out.name("lastName").value(customer.getLastName());
+            writeEnum(out, "type", customer.getType());
+            out.name("email").value(customer.getEmail());
+            out.name("accountAddress").value(customer.getAccountAddress());
+            writeEnum(out, "ageGroup", customer.getAgeGroup());
+            out.name("storeLocation");
+            locationAdapter.write(out, customer.getStoreLocation());
+            out.name("lastSeen");
+            writeDate(out, customer.getLastSeen(), dateEncoding);
+            out.endObject();
+        }
+
+        @Override
+        public Customer read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Customer customer = new Customer(null, null, null, null, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> customer.setId(nextString(in));
+                    case "firstName" -> customer.setFirstName(nextString(in));
+                    case "lastName" -> customer.setLastName(nextString(in));
+                    case "type" -> customer.setType(nextEnum(in, CustomerType.class));
+                    case "email" -> customer.setEmail(nextString(in));
+                    case "accountAddress" -> customer.setAccountAddress(nextString(in));
+                    case "ageGroup" -> customer.setAgeGroup(nextEnum(in, CustomerAgeGroup.class));
+                    case "storeLocation" -> customer.setStoreLocation(locationAdapter.read(in));
+                    case "lastSeen" -> customer.setLastSeen(readDate(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return customer;
+        }
+    }
+
+    /**
+     * Basket products are written but not read back; the product map can only be
+     * changed through the basket operations.
+     */
+    static final class BasketAdapter extends TypeAdapter<Basket> {
+        @Override
+        public void write(JsonWriter out, Basket basket) throws IOException {
+            if (basket == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(basket.getId());
+            out.name("productMap").beginObject();
+            for (Map.Entry<String, Integer> entry : basket.getProducts().entrySet()) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+            out.name("subtotalCents").value(basket.getSubtotalCents());
+            out.endObject();
+        }
+
+        @Override
+        public Basket read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String id = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("id".equals(in.nextName())) {
+                    id = nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Basket(id);
+        }
+    }
+
+    static final class InventoryAdapter extends TypeAdapter<Inventory> {
+        private final InventoryLocationAdapter locationAdapter = new InventoryLocationAdapter();
+
+        @Override
+        public void write(JsonWriter out, Inventory inventory) throws IOException {
+            if (inventory == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(inventory.getId());
+            out.name("inventoryLocation");
+            locationAdapter.write(out, inventory.getInventoryLocation());
+            out.name("capacity").value(inventory.getCapacity());
+            out.name("count").value(inventory.getCount());
+            out.name("productId").value(inventory.getProductId());
+            writeEnum(out, "type", inventory.getType());
+            out.name("lowWatermark").value(inventory.getLowWatermark());
+            out.name("highWatermark").value(inventory.getHighWatermark());
+            out.endObject();
+        }
+
+        @Override
+        public Inventory read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Inventory inventory = new Inventory(null, null, 0, 0, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> inventory.setId(nextString(in));
+                    case "inventoryLocation" -> inventory.setInventoryLocation(locationAdapter.read(in));
+                    case "capacity" -> inventory.setCapacity(in.nextInt());
+                    case "count" -> inventory.setCount(in.nextInt());
+                    case "productId" -> inventory.setProductId(nextString(in));
+                    case "type" -> inventory.setType(nextEnum(in, InventoryType.class));
+                    case "lowWatermark" -> inventory.setLowWatermark(in.nextInt());
+                    case "highWatermark" -> inventory.setHighWatermark(in.nextInt());
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return inventory;
+        }
+    }
+
+    static final class ProductAdapter extends TypeAdapter<Product> {
+        @Override
+        public void write(JsonWriter out, Product product) throws IOException {
+            if (product == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(product.getId());
+            out.name("name").value(product.getName());
+            out.name("description").value(product.getDescription());
+            out.name("size").value(product.getSize());
+            out.name("category").value(product.getCategory());
+            out.name("price").value(product.getPrice());
+            writeEnum(out, "temperature", product.getTemperature());
+            out.endObject();
+        }
+
+        @Override
+        public Product read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Product product = new Product(null, null, null, null, null, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> product.setId(nextString(in));
+                    case "name" -> product.setName(nextString(in));
+                    case "description" -> product.setDescription(nextString(in));
+                    case "size" -> product.setSize(nextString(in));
+                    case "category" -> product.setCategory(nextString(in));
+                    case "price" -> {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            product.setPrice(in.nextDouble());
+                        }
+                    }
+                    case "temperature" -> product.setTemperature(nextEnum(in, Temperature.class));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return product;
+        }
+    }
+
+    static final class UserAdapter extends TypeAdapter<User> {
+        @Override
+        public void write(JsonWriter out, User user) throws IOException {
+            if (user == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("email").value(user.getEmail());
+            out.name("password").value(user.getPassword());
+            out.name("name").value(user.getName());
+            out.endObject();
+        }
+
+        @Override
+        public User read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            User user = new User();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "email" -> user.setEmail(nextString(in));
+                    case "password" -> user.setPassword(nextString(in));
+                    case "name" -> user.setName(nextString(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    }
+
+    static final class ErrorResponseAdapter extends TypeAdapter<BaseServlet.ErrorResponse> {
+        @Override
+        public void write(JsonWriter out, BaseServlet.ErrorResponse error) throws IOException {
+            if (error == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("status").value(error.getStatus());
+            out.name("message").value(error.getMessage());
+            out.name("timestamp").value(error.getTimestamp());
+            out.endObject();
+        }
+
+        @Override
+        public BaseServlet.ErrorResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            int status = 0;
+            String message = null;
+            long timestamp = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "status" -> status = in.nextInt();
+                    case "message" -> message = nextString(in);
+                    case "timestamp" -> timestamp = in.nextLong();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new BaseServlet.ErrorResponse(status, message, timestamp);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.se300.store.servlet;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * JsonWriter decorator implementing sparse fieldsets. Properties of the outermost objects
+ * (a single entity, or each entity of a top-level array) are only passed to the delegate when
+ * their name is in the requested field set; everything written for a dropped property, nested
+ * objects included, is discarded as it streams by. Works for any delegate, JSON or CBOR.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class ProjectingJsonWriter extends JsonWriter {
+
+    private final JsonWriter delegate;
+    private final Set<String> fields;
+
+    // Number of objects currently open; entity properties live at depth 1
+    private int objectDepth;
+    // Containers opened inside a dropped property, plus one while the property value is pending
+    private int skipDepth;
+
+    /**
+     * Constructor for ProjectingJsonWriter
+     * @param delegate The writer that receives the projected output
+     * @param fields Names of the entity properties to keep
+     */
+    public ProjectingJsonWriter(JsonWriter delegate, Set<String> fields) {
+        super(Writer.nullWriter());
+        this.delegate = delegate;
+        this.fields = fields;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        if (skipDepth > 0) {
+            skipDepth++;
+        } else {
+            delegate.beginArray();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        if (skipDepth > 0) {
+            closeSkipped();
+        } else {
+            delegate.endArray();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        objectDepth++;
+        if (skipDepth > 0) {
+            skipDepth++;
+        } else {
+            delegate.beginObject();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        objectDepth--;
+        if (skipDepth > 0) {
+            closeSkipped();
+        } else {
+            delegate.endObject();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (skipDepth > 0) {
+            return this;
+        }
+        if (objectDepth == 1 && !fields.contains(name)) {
+            // Swallow this property's value, whatever its shape
+            skipDepth = 1;
+            return this;
+        }
+        delegate.name(name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (!skipScalar()) {
+            delegate.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (!skipScalar()) {
+            delegate.jsonValue(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (!skipScalar()) {
+            delegate.nullValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        if (!skipScalar()) {
+            delegate.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (!skipScalar()) {
+            delegate.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        if (!skipScalar()) {
+            delegate.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        if (!skipScalar()) {
+            delegate.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        if (!skipScalar()) {
+            delegate.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (!skipScalar()) {
+            delegate.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Returns true when the scalar belongs to a dropped property.
+     */
+    private boolean skipScalar() {
+        if (skipDepth == 0) {
+            return false;
+        }
+        if (skipDepth == 1) {
+            // The dropped property was a plain value, resume writing
+            skipDepth = 0;
+        }
+        return true;
+    }
+
+    private void closeSkipped() {
+        skipDepth--;
+        if (skipDepth == 1) {
+            // The dropped property's container is complete
+            skipDepth = 0;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.se300.store.servlet;
+
+import java.io.IOException;
+
+/**
+ * Thrown while reading a request body that exceeds the maximum size configured on the servlet.
+ * BaseServlet translates it into an HTTP 413 response.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public class RequestBodyTooLargeException extends IOException {
+
+    private final long limit;
+
+    /**
+     * Exception Constructor
+     * @param limit The maximum number of body bytes allowed
+     */
+    public RequestBodyTooLargeException(long limit) {
+        super("Request body exceeds " + limit + " bytes");
+        this.limit = limit;
+    }
+
+    /**
+     * Getter method for the body size limit
+     * @return
+     */
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,92 @@
+package com.se300.store.servlet;
+
+/**
+ * Representations the API can produce and consume. JSON is the default; CBOR is a compact
+ * binary encoding of the same documents for kiosks and sensor gateways.
+ *
+ * @author Sergey L. Sundukovskiy, Ph.D.
+ * @version 1.0
+ */
+public enum WireFormat {
+    JSON("application/json"),
+    CBOR("application/cbor");
+
+    private final String mediaType;
+
+    WireFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Getter method for the media type
+     * @return
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Pick the response format from an Accept header. CBOR is only chosen when the client
+     * prefers it over JSON; missing, wildcard or unsupported headers fall back to JSON.
+     *
+     * @param accept The Accept header value, may be null
+     * @return The negotiated format
+     */
+    public static WireFormat fromAccept(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        return quality(accept, CBOR) > quality(accept, JSON) ? CBOR : JSON;
+    }
+
+    /**
+     * Pick the request body format from a Content-Type header.
+     *
+     * @param contentType The Content-Type header value, may be null
+     * @return CBOR for application/cbor bodies, JSON otherwise
+     */
+    public static WireFormat fromContentType(String contentType) {
+        if (contentType != null && contentType.trim().toLowerCase().startsWith(CBOR.mediaType)) {
+            return CBOR;
+        }
+        return JSON;
+    }
+
+    /**
+     * Quality the client assigned to the given format; the most specific matching range wins.
+     */
+    private static double quality(String accept, WireFormat format) {
+        double exact = -1;
+        double subtypeWildcard = -1;
+        double wildcard = -1;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase();
+            double q = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (type.equals(format.mediaType)) {
+                exact = Math.max(exact, q);
+            } else if (type.equals("application/*")) {
+                subtypeWildcard = Math.max(subtypeWildcard, q);
+            } else if (type.equals("*/*")) {
+                wildcard = Math.max(wildcard, q);
+            }
+        }
+        if (exact >= 0) {
+            return exact;
+        }
+        if (subtypeWildcard >= 0) {
+            return subtypeWildcard;
+        }
+        return Math.max(wildcard, 0);
+    }
+}
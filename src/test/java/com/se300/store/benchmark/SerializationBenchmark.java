@@ -0,0 +1,136 @@
+package com.se300.store.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.se300.store.model.Customer;
+import com.se300.store.model.CustomerType;
+import com.se300.store.model.Inventory;
+import com.se300.store.model.InventoryLocation;
+import com.se300.store.model.InventoryType;
+import com.se300.store.model.Product;
+import com.se300.store.model.Store;
+import com.se300.store.model.StoreLocation;
+import com.se300.store.model.Temperature;
+import com.se300.store.model.User;
+import com.se300.store.servlet.JsonHelper;
+
+/**
+ * Stand-alone serialization benchmark comparing Gson's reflective adapters with the
+ * hand-written adapters registered by JsonHelper, and the JSON wire format with CBOR.
+ * Reports throughput and bytes allocated per serialized entity, and payload size and
+ * encode time per wire format. Not a JUnit test; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.se300.store.benchmark.SerializationBenchmark}
+ * or straight from the IDE.
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ */
+public class SerializationBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURED_ITERATIONS = 1_000_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        Gson reflective = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+        Gson adapters = JsonHelper.getGson();
+
+        Customer customer = new Customer("C1", "Ann", "Lee", CustomerType.registered, "ann@store.com", "1 Home Rd");
+        customer.setStoreLocation(new StoreLocation("S1", "A1"));
+        customer.setLastSeen(new Date());
+
+        Map<String, Object> entities = new LinkedHashMap<>();
+        entities.put("Store", new Store("S1", "1 Main St", "Main Store"));
+        entities.put("Customer", customer);
+        entities.put("Inventory", new Inventory("I1", new InventoryLocation("S1", "A1", "SH1"), 100, 42,
+                "P1", InventoryType.standard));
+        entities.put("Product", new Product("P1", "Milk", "Organic whole milk", "1L", "Dairy", 3.99,
+                Temperature.refrigerated));
+        entities.put("User", new User("admin@store.com", "admin123", "Admin User"));
+
+        System.out.printf("%-10s %-12s %14s %14s%n", "Entity", "Adapter", "ops/sec", "bytes/op");
+        for (Map.Entry<String, Object> entity : entities.entrySet()) {
+            run(entity.getKey(), "reflective", reflective, entity.getValue());
+            run(entity.getKey(), "hand-written", adapters, entity.getValue());
+        }
+
+        List<Store> stores = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            stores.add(new Store("S" + i, i + " Main St", "Store number " + i));
+        }
+        entities.put("100 Stores", stores);
+
+        System.out.println();
+        System.out.printf("%-10s %-12s %14s %14s%n", "Entity", "Format", "bytes", "ns/encode");
+        for (Map.Entry<String, Object> entity : entities.entrySet()) {
+            compareFormats(entity.getKey(), entity.getValue());
+        }
+    }
+
+    private static void compareFormats(String name, Object entity) throws IOException {
+        int iterations = MEASURED_ITERATIONS / 10;
+        StringWriter text = new StringWriter(1024);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream(1024);
+
+        for (int i = 0; i < WARMUP_ITERATIONS / 10; i++) {
+            text.getBuffer().setLength(0);
+            JsonHelper.toJson(entity, text);
+            binary.reset();
+            JsonHelper.toCbor(entity, binary);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            text.getBuffer().setLength(0);
+            JsonHelper.toJson(entity, text);
+        }
+        long jsonNanos = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            binary.reset();
+            JsonHelper.toCbor(entity, binary);
+        }
+        long cborNanos = (System.nanoTime() - start) / iterations;
+
+        System.out.printf("%-10s %-12s %,14d %,14d%n", name, "json",
+                text.toString().getBytes(StandardCharsets.UTF_8).length, jsonNanos);
+        System.out.printf("%-10s %-12s %,14d %,14d%n", name, "cbor", binary.size(), cborNanos);
+    }
+
+    private static void run(String name, String label, Gson gson, Object entity) {
+        StringWriter sink = new StringWriter(1024);
+        measure(gson, entity, sink, WARMUP_ITERATIONS);
+
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        measure(gson, entity, sink, MEASURED_ITERATIONS);
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-10s %-12s %,14.0f %,14d%n", name, label,
+                MEASURED_ITERATIONS / (elapsed / 1e9), allocated / MEASURED_ITERATIONS);
+    }
+
+    private static void measure(Gson gson, Object entity, StringWriter sink, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            sink.getBuffer().setLength(0);
+            gson.toJson(entity, sink);
+        }
+    }
+}
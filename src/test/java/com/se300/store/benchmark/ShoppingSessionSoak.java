@@ -0,0 +1,64 @@
+package com.se300.store.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import com.se300.store.model.AisleLocation;
+import com.se300.store.model.CustomerType;
+import com.se300.store.model.EvictionPolicy;
+import com.se300.store.model.InventoryType;
+import com.se300.store.model.ShelfLevel;
+import com.se300.store.model.StoreException;
+import com.se300.store.model.Temperature;
+import com.se300.store.service.StoreService;
+
+/**
+ * Stand-alone soak run of a million shopping sessions against one capped store. Every session
+ * walks a customer in, fills a fresh basket and abandons it, so without the store limits every
+ * basket would stay reachable. Reports the heap in use after a collection every 100,000
+ * sessions; it should stay flat once the store is full. Not a JUnit test; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.se300.store.benchmark.ShoppingSessionSoak}
+ * or straight from the IDE.
+ *
+ * @author  Sergey L. Sundukovskiy
+ * @version 1.0
+ */
+public class ShoppingSessionSoak {
+
+    private static final int SESSIONS = 1_000_000;
+    private static final int REPORT_EVERY = 100_000;
+    private static final int CUSTOMERS = 10_000;
+
+    public static void main(String[] args) throws StoreException {
+        StoreService storeService = new StoreService();
+        storeService.provisionStore("S1", "Soak", "1 Busy St", "admin");
+        storeService.provisionAisle("S1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionShelf("S1", "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        storeService.provisionProduct("P1", "Soak Product", "Desc", "1", "Cat", 1.00, Temperature.ambient, "admin");
+        storeService.provisionInventory("I1", "S1", "A1", "SH1", 10_000, 10_000, "P1", InventoryType.standard, "admin");
+        storeService.updateStoreLimits("S1", 1_000, 1_000, EvictionPolicy.oldest, "admin");
+        for (int i = 0; i < CUSTOMERS; i++) {
+            storeService.provisionCustomer("C" + i, "Soak", "Shopper", CustomerType.registered,
+                    "soak" + i + "@example.com", "soak", "admin");
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.printf("%10s %14s %12s%n", "Sessions", "Heap used KB", "Elapsed ms");
+        long start = System.nanoTime();
+        for (int session = 1; session <= SESSIONS; session++) {
+            String customerId = "C" + session % CUSTOMERS;
+            String basketId = "B" + session;
+            storeService.updateCustomer(customerId, "S1", "A1", "admin");
+            storeService.provisionBasket(basketId, "admin");
+            storeService.assignCustomerBasket(customerId, basketId, "admin");
+            storeService.addBasketProduct(basketId, "P1", 1, "admin");
+
+            if (session % REPORT_EVERY == 0) {
+                System.gc();
+                System.out.printf("%10d %14d %12d%n", session, memory.getHeapMemoryUsage().getUsed() / 1024,
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package com.se300.store.controller.integration;
 
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -14,6 +21,14 @@ import org.junit.jupiter.api.TestMethodOrder;
 
 import com.se300.store.SmartStoreApplication;
 import com.se300.store.data.DataManager;
+import com.se300.store.model.AisleLocation;
+import com.se300.store.model.CustomerType;
+import com.se300.store.model.InventoryType;
+import com.se300.store.model.ShelfLevel;
+import com.se300.store.model.Store;
+import com.se300.store.model.Temperature;
+import com.se300.store.service.StoreService;
+import com.se300.store.servlet.JsonHelper;
 
 import io.restassured.RestAssured;
 
@@ -471,4 +486,406 @@ public class ControllerIntegrationTest {
         .then()
             .statusCode(400); 
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(16)
+    @DisplayName("Integration: CBOR representation negotiated by Accept header")
+    public void testCborContentNegotiation() {
+        given()
+            .param("token", "admin")
+            .param("storeId", "CBOR1")
+            .param("name", "Binary Store")
+            .param("address", "1 Byte St")
+        .when()
+            .post("/api/v1/stores")
+        .then()
+            .statusCode(201);
+
+        byte[] body = given()
+            .header("Accept", "application/cbor, application/json;q=0.5")
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/CBOR1")
+        .then()
+            .statusCode(200)
+            .contentType("application/cbor")
+            .extract().asByteArray();
+
+        Store store = JsonHelper.fromCbor(new ByteArrayInputStream(body), Store.class);
+        assertEquals("CBOR1", store.getId());
+        assertEquals("Binary Store", store.getDescription());
+
+        // Errors are encoded in the negotiated format too
+        given()
+            .header("Accept", "application/cbor")
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/MISSING")
+        .then()
+            .statusCode(404)
+            .contentType("application/cbor");
+
+        // Wildcards keep JSON as the default
+        given()
+            .header("Accept", "*/*")
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/CBOR1")
+        .then()
+            .statusCode(200)
+            .contentType("application/json")
+            .body("id", equalTo("CBOR1"));
+    }
+
+    @Test
+    @Order(17)
+    @DisplayName("Integration: Sparse fieldsets and multi-get for stores")
+    public void testStoreFieldsAndMultiGet() {
+        for (String id : new String[]{"MG-A", "MG-B", "MG-C"}) {
+            given()
+                .param("token", "admin")
+                .param("storeId", id)
+                .param("name", "Store " + id)
+                .param("address", id + " Street")
+            .when()
+                .post("/api/v1/stores")
+            .then()
+                .statusCode(201);
+        }
+
+        given()
+            .param("token", "admin")
+            .param("ids", "MG-C,UNKNOWN,MG-A")
+            .param("fields", "id,address")
+        .when()
+            .get("/api/v1/stores")
+        .then()
+            .statusCode(200)
+            .body("$", hasSize(2))
+            .body("[0].id", equalTo("MG-C"))
+            .body("[1].address", equalTo("MG-A Street"))
+            .body("[0]", not(hasKey("description")));
+
+        given()
+            .param("token", "admin")
+            .param("fields", "description")
+        .when()
+            .get("/api/v1/stores/MG-B")
+        .then()
+            .statusCode(200)
+            .body("description", equalTo("Store MG-B"))
+            .body("$", not(hasKey("id")));
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("Integration: Metrics endpoint reports per-endpoint latency, status counts and bytes")
+    public void testMetricsEndpoint() {
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/METRICS-MISSING")
+        .then()
+            .statusCode(404);
+
+        given()
+        .when()
+            .get("/api/v1/metrics")
+        .then()
+            .statusCode(200)
+            .contentType(containsString("text/plain"))
+            .body(containsString("# TYPE smartstore_http_request_duration_seconds summary"))
+            .body(containsString(
+                "smartstore_http_request_duration_seconds_count{endpoint=\"/api/v1/stores\",method=\"GET\"}"))
+            .body(containsString(
+                "smartstore_http_request_duration_seconds{endpoint=\"/api/v1/stores\",method=\"GET\",quantile=\"0.99\"}"))
+            .body(containsString(
+                "smartstore_http_requests_total{endpoint=\"/api/v1/stores\",method=\"GET\",status=\"404\"}"))
+            .body(containsString(
+                "smartstore_http_requests_total{endpoint=\"/api/v1/stores\",method=\"POST\",status=\"201\"}"))
+            .body(containsString("smartstore_http_response_bytes_total{endpoint=\"/api/v1/stores\",method=\"GET\"}"));
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("Integration: Low stock inventory of a store is served without scanning it")
+    public void testLowStockEndpoint() throws Exception {
+        StoreService storeService = new StoreService();
+        storeService.provisionStore("LOW-REST", "Low", "1 Restock St", "admin");
+        storeService.provisionAisle("LOW-REST", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionShelf("LOW-REST", "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        storeService.provisionInventory("LOW-REST-I1", "LOW-REST", "A1", "SH1", 10, 0, "P1", InventoryType.standard, "admin");
+        storeService.provisionInventory("LOW-REST-I2", "LOW-REST", "A1", "SH1", 10, 5, "P2", InventoryType.standard, "admin");
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/LOW-REST/low-stock")
+        .then()
+            .statusCode(200)
+            .body("$", hasSize(1))
+            .body("[0].id", equalTo("LOW-REST-I1"))
+            .body("[0].lowWatermark", equalTo(0))
+            .body("[0].highWatermark", equalTo(10));
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/LOW-REST/unknown")
+        .then()
+            .statusCode(404);
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/LOW-MISSING/low-stock")
+        .then()
+            .statusCode(404);
+    }
+
+    @Test
+    @Order(20)
+    @DisplayName("Integration: Store stock totals are served per product and across the chain")
+    public void testStockEndpoint() {
+        // Uses the store provisioned by testLowStockEndpoint
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/LOW-REST/stock")
+        .then()
+            .statusCode(200)
+            .body("P1", equalTo(0))
+            .body("P2", equalTo(5));
+
+        given()
+            .param("token", "admin")
+            .param("productId", "P2")
+        .when()
+            .get("/api/v1/stores/LOW-REST/stock")
+        .then()
+            .statusCode(200)
+            .body("storeId", equalTo("LOW-REST"))
+            .body("count", equalTo(5));
+    }
+
+    @Test
+    @Order(21)
+    @DisplayName("Integration: Product locations are served with in-stock filtering")
+    public void testProductLocationsEndpoint() throws Exception {
+        StoreService storeService = new StoreService();
+        storeService.provisionInventory("LOC-REST-I1", "LOW-REST", "A1", "SH1", 10, 0, "LOC-REST-P1", InventoryType.standard, "admin");
+        storeService.provisionInventory("LOC-REST-I2", "LOW-REST", "A1", "SH1", 10, 2, "LOC-REST-P1", InventoryType.standard, "admin");
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/products/LOC-REST-P1/locations")
+        .then()
+            .statusCode(200)
+            .body("$", hasSize(2));
+
+        given()
+            .param("token", "admin")
+            .param("inStock", "true")
+        .when()
+            .get("/api/v1/products/LOC-REST-P1/locations")
+        .then()
+            .statusCode(200)
+            .body("$", hasSize(1))
+            .body("[0].storeId", equalTo("LOW-REST"))
+            .body("[0].inventoryId", equalTo("LOC-REST-I2"))
+            .body("[0].count", equalTo(2));
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/products/LOC-REST-P1")
+        .then()
+            .statusCode(404);
+    }
+
+    @Test
+    @Order(22)
+    @DisplayName("Integration: Product search returns ranked hits and category counts")
+    public void testProductSearchEndpoint() throws Exception {
+        StoreService storeService = new StoreService();
+        storeService.provisionProduct("SRCH-REST-1", "Quokka Oat Milk", "Barista drink", "1l",
+                "Quokka Dairy", 4.99, Temperature.refrigerated, "admin");
+        storeService.provisionProduct("SRCH-REST-2", "Quokka Oats", "Rolled oats", "1kg",
+                "Quokka Pantry", 3.49, Temperature.ambient, "admin");
+
+        given()
+            .param("token", "admin")
+            .param("q", "quokka oa")
+        .when()
+            .get("/api/v1/products")
+        .then()
+            .statusCode(200)
+            .body("total", equalTo(2))
+            .body("hits[0].product.id", equalTo("SRCH-REST-2"))
+            .body("categories.'Quokka Dairy'", equalTo(1));
+
+        given()
+            .param("token", "admin")
+            .param("q", "quokka")
+            .param("category", "Quokka Dairy")
+            .param("limit", "5")
+        .when()
+            .get("/api/v1/products")
+        .then()
+            .statusCode(200)
+            .body("hits", hasSize(1))
+            .body("hits[0].product.name", equalTo("Quokka Oat Milk"));
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/products")
+        .then()
+            .statusCode(400);
+    }
+
+    @Test
+    @Order(23)
+    @DisplayName("Integration: Store and aisle occupancy are served from live counters")
+    public void testOccupancyEndpoint() throws Exception {
+        // Uses the store provisioned by testLowStockEndpoint
+        StoreService storeService = new StoreService();
+        storeService.provisionCustomer("OCC-REST-C1", "Occupancy", "Shopper", CustomerType.guest,
+                "occupancy-rest@example.com", "occupancy", "admin");
+        storeService.updateCustomer("OCC-REST-C1", "LOW-REST", "A1", "admin");
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/LOW-REST/occupancy")
+        .then()
+            .statusCode(200)
+            .body("storeId", equalTo("LOW-REST"))
+            .body("total", equalTo(1))
+            .body("aisles.A1", equalTo(1));
+
+        given()
+            .param("token", "admin")
+            .param("aisle", "A1")
+        .when()
+            .get("/api/v1/stores/LOW-REST/occupancy")
+        .then()
+            .statusCode(200)
+            .body("count", equalTo(1));
+
+        given()
+            .param("token", "admin")
+            .param("aisle", "NO-AISLE")
+        .when()
+            .get("/api/v1/stores/LOW-REST/occupancy")
+        .then()
+            .statusCode(404);
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/stores/LOW-REST/heatmap")
+        .then()
+            .statusCode(200);
+    }
+
+    @Test
+    @Order(24)
+    @DisplayName("Integration: Device events are raised and served with rollups")
+    public void testDeviceTelemetryEndpoints() throws Exception {
+        // Uses the store provisioned by testLowStockEndpoint
+        new StoreService().provisionDevice("TEL-REST-D1", "Camera", "camera", "LOW-REST", "A1", "admin");
+
+        given()
+            .param("token", "admin")
+            .param("event", "shelf_gap 2")
+        .when()
+            .post("/api/v1/devices/TEL-REST-D1/event")
+        .then()
+            .statusCode(200)
+            .body("type", equalTo("other"))
+            .body("arguments[0]", equalTo("2"));
+
+        given()
+            .param("token", "admin")
+            .param("event", "item_added_to_basket b1")
+        .when()
+            .post("/api/v1/devices/TEL-REST-D1/event")
+        .then()
+            .statusCode(400);
+
+        new StoreService().provisionDevice("TEL-REST-R1", "Robot", "robot", "LOW-REST", "A1", "admin");
+        given()
+            .param("token", "admin")
+            .param("command", "CLEAN_FLOOR LOW-REST:A1")
+        .when()
+            .post("/api/v1/devices/TEL-REST-R1/command")
+        .then()
+            .statusCode(200)
+            .body("outcome", equalTo("executed"));
+
+        given()
+            .param("token", "admin")
+            .param("command", "CLEAN_FLOOR LOW-REST:A1")
+        .when()
+            .post("/api/v1/devices/TEL-REST-D1/command")
+        .then()
+            .statusCode(400);
+
+        given()
+            .param("token", "admin")
+            .param("command", "STOP")
+            .param("aisle", "A1")
+            .param("type", "robot")
+        .when()
+            .post("/api/v1/stores/LOW-REST/command")
+        .then()
+            .statusCode(200)
+            .body("targets", equalTo(1))
+            .body("executed", equalTo(1))
+            .body("acknowledgements.'TEL-REST-R1'", equalTo("executed"));
+
+        given()
+            .param("token", "admin")
+            .param("command", "STOP")
+            .param("type", "toaster")
+        .when()
+            .post("/api/v1/stores/LOW-REST/command")
+        .then()
+            .statusCode(400);
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/devices/TEL-REST-D1/events")
+        .then()
+            .statusCode(200)
+            .body("$", hasSize(1))
+            .body("[0].event", equalTo("shelf_gap 2"));
+
+        given()
+            .param("token", "admin")
+            .param("resolution", "second")
+        .when()
+            .get("/api/v1/devices/TEL-REST-D1/rollups")
+        .then()
+            .statusCode(200)
+            .body("[0].count", equalTo(1));
+
+        given()
+            .param("token", "admin")
+            .param("resolution", "fortnight")
+        .when()
+            .get("/api/v1/devices/TEL-REST-D1/rollups")
+        .then()
+            .statusCode(400);
+
+        given()
+            .param("token", "admin")
+        .when()
+            .get("/api/v1/devices/TEL-REST-NONE/events")
+        .then()
+            .statusCode(404);
+    }
+}
@@ -5,6 +5,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertNull;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockConstruction;
@@ -15,9 +16,9 @@ import static org.mockserver.model.HttpRequest.request;
 import static org.mockserver.model.HttpResponse.response;
 import static org.mockserver.verify.VerificationTimes.exactly;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.catalina.Context;
 import org.apache.catalina.Server;
@@ -36,8 +37,12 @@ import org.mockserver.integration.ClientAndServer;
 import org.mockserver.model.Header;
 
 import com.se300.store.SmartStoreApplication;
+import com.se300.store.model.User;
 import com.se300.store.servlet.BaseServlet;
+import com.se300.store.servlet.RequestBodyTooLargeException;
 
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 
 /**
@@ -56,8 +61,36 @@ public class InternalMockServerTest {
         public String extractId(HttpServletRequest request) {
             return super.extractResourceId(request);
         }
+
+        public <T> T readJson(HttpServletRequest request, Class<T> type) throws IOException {
+            return super.readJsonBody(request, type);
+        }
     } // For Testing 
 
+    private static ServletInputStream servletStream(String body) {
+        ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        return new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+        };
+    }
+
     //COMPLETE: Implement Internal Mock Server to test internal Smart Store API calls
 
     private static ClientAndServer mockServer;
@@ -345,8 +378,7 @@ public class InternalMockServerTest {
 
         String body = "{ \"name\": \"Josh\", \"id\": 123 }";
 
-        BufferedReader reader = new BufferedReader(new StringReader(body));
-        when(request.getReader()).thenReturn(reader);
+        when(request.getInputStream()).thenReturn(servletStream(body));
 
         TestServlet servlet = new TestServlet();
 
@@ -370,4 +402,43 @@ public class InternalMockServerTest {
         id = servlet.extractId(request);
         assertEquals("C1", id);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("BaseServlet streaming body with size limit")
+    public void baseServletStreamingBodyTest() throws IOException {
+        String body = "{\n  \"email\": \"josh@store.com\",\n  \"name\": \"Josh\"\n}";
+        TestServlet servlet = new TestServlet();
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getInputStream()).thenReturn(servletStream(body));
+        User user = servlet.readJson(request, User.class);
+        assertEquals("josh@store.com", user.getEmail());
+        assertEquals("Josh", user.getName());
+
+        // Line breaks are kept when reading the body as text
+        HttpServletRequest textRequest = mock(HttpServletRequest.class);
+        when(textRequest.getInputStream()).thenReturn(servletStream(body));
+        assertEquals(body, servlet.readBody(textRequest));
+
+        // The text limit counts bytes, not characters
+        servlet.setMaxBodySize(20);
+        String accented = "é".repeat(15);
+        HttpServletRequest accentedRequest = mock(HttpServletRequest.class);
+        when(accentedRequest.getInputStream()).thenReturn(servletStream(accented));
+        assertThrows(RequestBodyTooLargeException.class, () -> servlet.readBody(accentedRequest));
+
+        servlet.setMaxBodySize(10);
+
+        // Body is rejected while streaming when no length is declared
+        HttpServletRequest streamed = mock(HttpServletRequest.class);
+        when(streamed.getInputStream()).thenReturn(servletStream(body));
+        assertThrows(RequestBodyTooLargeException.class, () -> servlet.readJson(streamed, User.class));
+
+        // Body is rejected up front when the declared length is too large
+        HttpServletRequest declared = mock(HttpServletRequest.class);
+        when(declared.getContentLengthLong()).thenReturn((long) body.length());
+        assertThrows(RequestBodyTooLargeException.class, () -> servlet.readBody(declared));
+
+        assertThrows(IllegalArgumentException.class, () -> servlet.setMaxBodySize(0));
+    }
+}
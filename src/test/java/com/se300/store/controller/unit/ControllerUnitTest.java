@@ -11,6 +11,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.util.Optional;
 
 import org.apache.catalina.Context;
 import org.apache.catalina.LifecycleException;
@@ -26,7 +27,6 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import com.se300.store.controller.StoreController;
 import com.se300.store.controller.UserController;
 import com.se300.store.model.Store;
-import com.se300.store.model.StoreException;
 import com.se300.store.model.User;
 import com.se300.store.service.AuthenticationService;
 import com.se300.store.service.StoreService;
@@ -103,7 +103,7 @@ public class ControllerUnitTest {
     public void testCreateStoreWithMock() throws Exception {
         Store store = new Store("123", "address", "desc");
 
-        when(storeService.showStore("123", "admin")).thenReturn(null);
+        when(storeService.findStore("123")).thenReturn(Optional.empty());
         when(storeService.provisionStore("123", "MyStore", "address", "admin")).thenReturn(store);
 
         given()
@@ -176,7 +176,7 @@ public class ControllerUnitTest {
     @DisplayName("Mock: Get store by ID - verify service call")
     public void testGetStoreByIdWithMock() throws Exception {
         Store store = new Store("123", "addr", "desc");
-        when(storeService.showStore("123", "admin")).thenReturn(store);
+        when(storeService.findStore("123")).thenReturn(Optional.of(store));
 
         given() 
             .param("token", "admin")
@@ -194,7 +194,7 @@ public class ControllerUnitTest {
         .then()
             .statusCode(401);
 
-        verify(storeService).showStore("123", "admin");
+        verify(storeService).findStore("123");
     }
 
     @Test
@@ -202,8 +202,8 @@ public class ControllerUnitTest {
     public void testUpdateStoreWithMock() throws Exception {
         Store store = new Store("123", "addr", "desc");
 
-        when(storeService.showStore("123", "admin"))
-            .thenReturn(store);
+        when(storeService.findStore("123"))
+            .thenReturn(Optional.of(store));
 
         when(storeService.updateStore("123", "description", "address"))
                 .thenReturn(store);
@@ -242,8 +242,8 @@ public class ControllerUnitTest {
     public void testDeleteStoreWithMock() throws Exception {
         Store store = new Store("123", "addr", "desc");
 
-        when(storeService.showStore(eq("123"), anyString()))
-            .thenReturn(store);
+        when(storeService.findStore(eq("123")))
+            .thenReturn(Optional.of(store));
 
         doNothing().when(storeService).deleteStore("123");
   
@@ -274,10 +274,10 @@ public class ControllerUnitTest {
     }
 
     @Test
-    @DisplayName("Mock: Store error handling - service throws exception")
+    @DisplayName("Mock: Store error handling - lookup finds no store")
     public void testStoreErrorHandlingWithMock() throws Exception {
-        when(storeService.showStore("123", "admin"))
-            .thenThrow(new StoreException("show", "failure"));
+        when(storeService.findStore("123"))
+            .thenReturn(Optional.empty());
 
         given()
             .param("token", "admin")
@@ -286,7 +286,8 @@ public class ControllerUnitTest {
         .then()
             .statusCode(404);
 
-        verify(storeService).showStore("123", "admin");
+        verify(storeService).findStore("123");
+        verify(storeService, never()).showStore(anyString(), anyString());
     }
 
     // ==================== USER CONTROLLER MOCK TESTS ====================
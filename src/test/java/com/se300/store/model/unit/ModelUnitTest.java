@@ -3,29 +3,52 @@ import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.se300.store.metrics.LatencyHistogram;
 import com.se300.store.model.Aisle;
 import com.se300.store.model.AisleLocation;
 import com.se300.store.model.Basket;
 import com.se300.store.model.CommandException;
+import com.se300.store.model.CommandProcessor;
+import com.se300.store.model.CommandProfile;
 import com.se300.store.model.Customer;
 import com.se300.store.model.CustomerAgeGroup;
 import com.se300.store.model.CustomerType;
+import com.se300.store.model.EventParser;
+import com.se300.store.model.EventType;
 import com.se300.store.model.Inventory;
 import com.se300.store.model.InventoryLocation;
 import com.se300.store.model.InventoryType;
+import com.se300.store.model.LogRateLimiter;
 import com.se300.store.model.Product;
 import com.se300.store.model.Sensor;
 import com.se300.store.model.Shelf;
@@ -33,9 +56,11 @@ import com.se300.store.model.ShelfLevel;
 import com.se300.store.model.Store;
 import com.se300.store.model.StoreException;
 import com.se300.store.model.StoreLocation;
+import com.se300.store.model.StructuredEvent;
 import com.se300.store.model.Temperature;
 import com.se300.store.model.User;
 import com.se300.store.servlet.JsonHelper;
+import com.se300.store.servlet.WireFormat;
 
 /**
  * The ModelUnitTest class contains unit tests for various models used in the Smart Store application.
@@ -210,8 +235,20 @@ public class ModelUnitTest {
         assertThrows(StoreException.class,
             () -> store.addAisle("A1", "Duplicate", "Duplicate aisle", null));
 
-        assertThrows(StoreException.class,
+        StoreException missing = assertThrows(StoreException.class,
             () -> store.getAisle("DOES_NOT_EXIST"));
+        assertEquals("Aisle Does Not Exist", missing.getReason());
+        assertEquals(0, missing.getStackTrace().length);
+
+        // Exception-free lookups
+        assertSame(aisle, store.findAisle("A1").orElseThrow());
+        assertTrue(store.findAisle("DOES_NOT_EXIST").isEmpty());
+        assertNotNull(aisle.findShelf("SH1").orElse(null));
+        assertTrue(aisle.findShelf("DOES_NOT_EXIST").isEmpty());
+
+        // Stack traces are still captured by default
+        assertTrue(new StoreException("Get Aisle", "failure").getStackTrace().length > 0);
+        assertEquals(0, CommandException.stackless("cmd", "failure").getStackTrace().length);
 
         assertAll(
             () -> assertDoesNotThrow(() -> aisle.setNumber("12")),
@@ -257,6 +294,9 @@ public class ModelUnitTest {
         );
         store.removeCustomer(unknown);
         assertSame(customer, store.getCustomer("c1"));
+        store.removeCustomer(customer);
+        assertNull(store.getCustomer("c1"));
+        store.addCustomer(customer);
 
         
         String s = store.toString();
@@ -335,7 +375,7 @@ public class ModelUnitTest {
         store.addBasket(guestBasket);
         assertThrows(StoreException.class, () -> store.addBasket(guestBasket));
         assertThrows(StoreException.class,
-            () -> guestBasket.addProduct("p1", 1));
+            () -> guestBasket.addProduct("p1", 1, 100));
 
         Basket basketToClear = new Basket("b4");
         Customer owner = new Customer(
@@ -425,6 +465,51 @@ public class ModelUnitTest {
         assertEquals(1, CustomerType.registered.ordinal());
     }
 
+    @Test
+    @DisplayName("Test Event Parser")
+    public void testEventParser() {
+        StructuredEvent added = EventParser.parse("  ITEM_ADDED_TO_BASKET   b1 prod10 ");
+        assertEquals(EventType.item_added_to_basket, added.getType());
+        assertEquals("ITEM_ADDED_TO_BASKET", added.getName().toString());
+        assertEquals(List.of("b1", "prod10"), added.getArguments());
+        assertEquals("prod10", added.getArgument("productId").toString());
+        assertTrue(added.isWellFormed());
+        assertEquals("ITEM_ADDED_TO_BASKET   b1 prod10", added.toString());
+        assertTrue(added.getType().isSupportedBy("camera"));
+        assertFalse(added.getType().isSupportedBy("robot"));
+
+        StructuredEvent question = EventParser.parse("customer_asked_question cust_S2 \"where can I find the milk?\"");
+        assertEquals(EventType.customer_asked_question, question.getType());
+        assertEquals("where can I find the milk?", question.getArgument("question").toString());
+        assertEquals(2, question.getArgumentCount());
+
+        assertFalse(EventParser.parse("price_check").isWellFormed());
+        assertFalse(EventParser.parse("price_check prod1 prod2").isWellFormed());
+        assertFalse(EventParser.parse("customer_question").isWellFormed());
+
+        StructuredEvent other = EventParser.parse("shelf_gap 2 \"aisle A1\"");
+        assertEquals(EventType.other, other.getType());
+        assertEquals(List.of("2", "aisle A1"), other.getArguments());
+        assertTrue(other.isWellFormed());
+        assertTrue(other.getType().isSupportedBy("speaker"));
+        assertEquals(EventType.other, EventParser.parse("").getType());
+
+        // Parsed in place from UTF-8 bytes, reusing the event
+        ByteBuffer buffer = ByteBuffer.wrap("xxcustomer_question \"où est le café?\"".getBytes(StandardCharsets.UTF_8));
+        buffer.position(2);
+        StructuredEvent reused = EventParser.parse(buffer, other);
+        assertSame(other, reused);
+        assertEquals(2, buffer.position());
+        assertEquals(EventType.customer_question, reused.getType());
+        assertEquals("où est le café?", reused.getArgument(0).toString());
+        assertEquals("customer_question \"où est le café?\"", reused.toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> reused.getArgument(1));
+
+        StructuredEvent partial = EventParser.parse("spill price_check P1 end", 6, 20, new StructuredEvent());
+        assertEquals(EventType.price_check, partial.getType());
+        assertEquals("P1", partial.getArgument(0).toString());
+    }
+
     @Test
     @DisplayName("Test Store Exception")
     public void testStoreException() throws StoreException {
@@ -487,4 +572,185 @@ public class ModelUnitTest {
         JsonHelper jh = new JsonHelper();
         assertNotNull(jh.getGson());
     }
+
+    @Test
+    @DisplayName("Hand-written type adapters match reflective JSON output")
+    public void typeAdapterTest() throws StoreException {
+        Gson reflective = new GsonBuilder().serializeNulls().create();
+
+        Store store = new Store("S1", "1 Main St", "Main Store");
+        Product product = new Product("P1", "Milk", "Whole milk", "1L", "Dairy", 3.99, Temperature.refrigerated);
+        Inventory inventory = new Inventory("I1", new InventoryLocation("S1", "A1", "SH1"), 10, 5,
+                "P1", InventoryType.standard);
+        User user = new User("a@store.com", "pw", "Admin");
+        Customer customer = new Customer("C1", "Ann", "Lee", CustomerType.registered, "ann@store.com", "Home");
+        customer.setStoreLocation(new StoreLocation("S1", "A1"));
+
+        for (Object model : new Object[]{store, product, inventory, user, customer}) {
+            assertEquals(JsonParser.parseString(reflective.toJson(model)),
+                    JsonParser.parseString(JsonHelper.toJson(model)), model.getClass().getSimpleName());
+        }
+
+        // Round trips through the streaming adapters
+        assertEquals("Main Store", JsonHelper.fromJson(JsonHelper.toJson(store), Store.class).getDescription());
+        assertEquals(3.99, JsonHelper.fromJson(JsonHelper.toJson(product), Product.class).getPrice());
+        Inventory parsedInventory = JsonHelper.fromJson(JsonHelper.toJson(inventory), Inventory.class);
+        assertEquals("SH1", parsedInventory.getInventoryLocation().getShelfId());
+        assertEquals(5, parsedInventory.getCount());
+
+        // Dates are written as ISO-8601 instants and accepted as ISO or epoch millis
+        customer.setLastSeen(new Date(0L));
+        assertTrue(JsonHelper.toJson(customer).contains("\"1970-01-01T00:00:00Z\""));
+        Customer parsed = JsonHelper.fromJson("{\"id\":\"C1\",\"type\":\"guest\",\"lastSeen\":1000}", Customer.class);
+        assertEquals(1000L, parsed.getLastSeen().getTime());
+        assertEquals(CustomerType.guest, parsed.getType());
+        assertEquals(new Date(0L), JsonHelper.fromJson("\"1970-01-01T00:00:00Z\"", Date.class));
+    }
+
+    @Test
+    @DisplayName("CBOR encoding round trips through the model type adapters")
+    public void cborWireFormatTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonHelper.toCbor(new User("a", "b", "c"), out);
+        // {_ "email": "a", "password": "b", "name": "c"} as an indefinite-length map
+        assertArrayEquals(new byte[]{(byte) 0xBF, 0x65, 'e', 'm', 'a', 'i', 'l', 0x61, 'a',
+                0x68, 'p', 'a', 's', 's', 'w', 'o', 'r', 'd', 0x61, 'b',
+                0x64, 'n', 'a', 'm', 'e', 0x61, 'c', (byte) 0xFF}, out.toByteArray());
+
+        Product product = new Product("P1", "Café crème", null, "1L", "Dairy", 3.99, Temperature.frozen);
+        Inventory inventory = new Inventory("I1", new InventoryLocation("S1", "A1", "SH1"), 100000, -5,
+                "P1", InventoryType.flexible);
+        List<Store> stores = List.of(new Store("S1", "1 Main St", "Main"), new Store("S2", "2 Main St", "Second"));
+
+        out.reset();
+        JsonHelper.toCbor(product, out);
+        Product parsedProduct = JsonHelper.fromCbor(new ByteArrayInputStream(out.toByteArray()), Product.class);
+        assertEquals("Café crème", parsedProduct.getName());
+        assertNull(parsedProduct.getDescription());
+        assertEquals(3.99, parsedProduct.getPrice());
+        assertEquals(Temperature.frozen, parsedProduct.getTemperature());
+        assertTrue(out.size() < JsonHelper.toJson(product).getBytes().length);
+
+        out.reset();
+        JsonHelper.toCbor(inventory, out);
+        Inventory parsedInventory = JsonHelper.fromCbor(new ByteArrayInputStream(out.toByteArray()), Inventory.class);
+        assertEquals(100000, parsedInventory.getCapacity());
+        assertEquals(-5, parsedInventory.getCount());
+        assertEquals("SH1", parsedInventory.getInventoryLocation().getShelfId());
+
+        out.reset();
+        JsonHelper.toCbor(stores, out);
+        List<Store> parsedStores = JsonHelper.fromCbor(new ByteArrayInputStream(out.toByteArray()),
+                new TypeToken<List<Store>>() { }.getType());
+        assertEquals(2, parsedStores.size());
+        assertEquals("Second", parsedStores.get(1).getDescription());
+
+        // Definite-length input produced by other encoders: {"id": "S9"}
+        Store definite = JsonHelper.fromCbor(new ByteArrayInputStream(
+                new byte[]{(byte) 0xA1, 0x62, 'i', 'd', 0x62, 'S', '9'}), Store.class);
+        assertEquals("S9", definite.getId());
+        assertNull(JsonHelper.fromCbor(new ByteArrayInputStream(new byte[0]), Store.class));
+        // A string claiming to be 2 GB long in a ten byte body is truncated input, not an allocation
+        assertThrows(JsonSyntaxException.class, () -> JsonHelper.fromCbor(new ByteArrayInputStream(
+                new byte[]{(byte) 0xA1, 0x62, 'i', 'd', 0x7A, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 'S'}),
+                Store.class));
+
+        assertEquals(WireFormat.JSON, WireFormat.fromAccept(null));
+        assertEquals(WireFormat.JSON, WireFormat.fromAccept("*/*"));
+        assertEquals(WireFormat.JSON, WireFormat.fromAccept("text/html"));
+        assertEquals(WireFormat.CBOR, WireFormat.fromAccept("application/cbor"));
+        assertEquals(WireFormat.JSON, WireFormat.fromAccept("application/cbor;q=0.4, application/json"));
+        assertEquals(WireFormat.CBOR, WireFormat.fromContentType("application/cbor; charset=binary"));
+        assertEquals(WireFormat.JSON, WireFormat.fromContentType(null));
+    }
+
+    @Test
+    @DisplayName("Test LogRateLimiter caps messages per window and counts the rest")
+    public void logRateLimiterTest() throws InterruptedException {
+        LogRateLimiter limiter = new LogRateLimiter(3, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.drainSuppressed());
+        assertEquals(0, limiter.drainSuppressed());
+
+        Thread.sleep(60);
+        assertTrue(limiter.tryAcquire());
+        assertThrows(IllegalArgumentException.class, () -> new LogRateLimiter(0, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Test LatencyHistogram quantiles stay within the bucket precision")
+    public void latencyHistogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtQuantile(0.99));
+
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        histogram.record(-5);
+
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500_000L, histogram.getSum());
+        assertEquals(500_000, histogram.getValueAtQuantile(0.5), 500_000 * 0.0625);
+        assertEquals(990_000, histogram.getValueAtQuantile(0.99), 990_000 * 0.0625);
+        assertEquals(1_000_000, histogram.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    @DisplayName("Test script runs are profiled per command type and the profile directive toggles it")
+    public void commandProfileTest(@TempDir Path directory) throws IOException {
+        Path script = directory.resolve("profile.script");
+        Files.write(script, List.of(
+                "# profiled section",
+                "define store profile_store_1 name Profiled address \"1 Main St\"",
+                "show store profile_store_1",
+                "show store profile_store_missing",
+                "profile off",
+                "show store profile_store_1",
+                "profile sideways",
+                "profile on",
+                "profiles off",
+                "show store profile_store_1"));
+
+        CommandProcessor processor = new CommandProcessor();
+        processor.processCommandFile(script.toString());
+        CommandProfile profile = processor.getLastProfile();
+
+        assertEquals(1, profile.getEntry("define store").getCount());
+        assertEquals(0, profile.getEntry("define store").getFailures());
+        assertEquals(3, profile.getEntry("show store").getCount());
+        assertEquals(1, profile.getEntry("show store").getFailures());
+        assertNull(profile.getEntry("profile off"));
+        // Only the exact directive toggles profiling, anything else is an ordinary command
+        assertEquals(1, profile.getEntry("profiles off").getFailures());
+        assertEquals(3, profile.getEntries().size());
+        assertTrue(profile.getEntry("show store").getP99Nanos() > 0);
+
+        List<String> table = profile.toTable();
+        assertEquals(5, table.size());
+        assertTrue(table.get(0).startsWith("Command"));
+        assertTrue(table.get(4).startsWith("total"));
+    }
+
+    @Test
+    @DisplayName("Test Product prices convert to whole cents without floating point drift")
+    public void productPriceCentsTest() {
+        Product product = new Product("pc1", "Cents", "Desc", "1", "Cat", 0.29, Temperature.ambient);
+        assertEquals(29, product.getPriceCents());
+        product.setPrice(1.005);
+        assertEquals(101, product.getPriceCents());
+        product.setPrice(19.99);
+        assertEquals(1999, product.getPriceCents());
+        product.setPrice(null);
+        assertEquals(0, product.getPriceCents());
+
+        Basket basket = new Basket("pc-basket");
+        assertEquals(0, basket.getSubtotalCents());
+        assertTrue(basket.toString().contains("subtotalCents=0"));
+    }
 }
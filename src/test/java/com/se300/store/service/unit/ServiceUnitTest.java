@@ -4,45 +4,99 @@ package com.se300.store.service.unit;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import com.se300.store.metrics.MetricsRegistry;
+import com.se300.store.metrics.OperationMetrics;
 import com.se300.store.model.Aisle;
 import com.se300.store.model.AisleLocation;
+import com.se300.store.model.Appliance;
+import com.se300.store.model.ApplianceType;
 import com.se300.store.model.Basket;
 import com.se300.store.model.Customer;
 import com.se300.store.model.CustomerType;
+import com.se300.store.model.EventParser;
+import com.se300.store.model.EvictionPolicy;
 import com.se300.store.model.Inventory;
 import com.se300.store.model.InventoryLocation;
 import com.se300.store.model.InventoryType;
 import com.se300.store.model.Product;
 import com.se300.store.model.Shelf;
 import com.se300.store.model.ShelfLevel;
+import com.se300.store.model.StockLevel;
 import com.se300.store.model.Store;
 import com.se300.store.model.StoreException;
 import com.se300.store.model.StoreLocation;
+import com.se300.store.model.StructuredEvent;
 import com.se300.store.model.Temperature;
 import com.se300.store.model.User;
 import com.se300.store.repository.UserRepository;
 import com.se300.store.service.AuthenticationService;
+import com.se300.store.service.ArchivedEvent;
+import com.se300.store.service.BasketReaper;
+import com.se300.store.service.BroadcastResult;
+import com.se300.store.service.CommandDispatcher;
+import com.se300.store.service.CommandOutcome;
+import com.se300.store.service.CustomerReaper;
+import com.se300.store.service.DeviceEventArchive;
+import com.se300.store.service.DeviceEventFeed;
+import com.se300.store.service.DeviceEventRing;
+import com.se300.store.service.DeviceEventServer;
+import com.se300.store.service.DeviceTelemetry;
+import com.se300.store.service.IdleReaper;
+import com.se300.store.service.OccupancyHeatmap;
+import com.se300.store.service.OccupancySnapshot;
+import com.se300.store.service.TelemetryBucket;
+import com.se300.store.service.TelemetryEvent;
+import com.se300.store.service.InstrumentedStoreService;
+import com.se300.store.service.ProductLocation;
+import com.se300.store.service.ProductSearchIndex;
+import com.se300.store.service.RecordingService;
 import com.se300.store.service.StoreService;
+import com.se300.store.service.TimingWheel;
 
 /**
  * Unit tests for Service classes including AuthenticationService and StoreService.
@@ -319,6 +373,7 @@ public class ServiceUnitTest {
         Map<String, Integer> productsInBasket = basket.getProducts();
         assertTrue(productsInBasket.containsKey(product.getId()));
         assertEquals(1, productsInBasket.get(product.getId()));
+        assertEquals(199, storeService.showBasket("B1", "admin").getSubtotalCents());
 
         Inventory updatedInventory = storeService.showInventory("I1", "admin");
         assertEquals(9, updatedInventory.getCount());
@@ -327,6 +382,7 @@ public class ServiceUnitTest {
 
         productsInBasket = basket.getProducts();
         assertFalse(productsInBasket.containsKey(product.getId()));
+        assertEquals(0, basket.getSubtotalCents());
 
         updatedInventory = storeService.showInventory("I1", "admin");
         assertEquals(10, updatedInventory.getCount());
@@ -344,6 +400,7 @@ public class ServiceUnitTest {
 
         storeService.provisionAisle("S2", "A100", "dfs", "sdf", AisleLocation.floor, "admin");
         storeService.addBasketProduct("B1", product.getId(), 2, "admin");  
+        assertEquals(398, basket.getSubtotalCents());
         updatedInventory.setCount(10);  
 
         assertThrows(StoreException.class, () -> storeService.removeBasketProduct("B1",
@@ -422,4 +479,1009 @@ public class ServiceUnitTest {
         assertThrows(StoreException.class,() -> storeService.showInventory("DSIOHN", "admin"));
         assertThrows(StoreException.class,() -> storeService.updateInventory("DSIOHN", 12,"admin"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test StoreService multi-get returns requested stores in order")
+    public void testGetStores() throws StoreException {
+        storeService.provisionStore("MG1", "First", "1 Multi St", "admin");
+        storeService.provisionStore("MG2", "Second", "2 Multi St", "admin");
+
+        List<Store> stores = storeService.getStores(List.of("MG2", "MISSING", "MG1"));
+        assertEquals(2, stores.size());
+        assertEquals("MG2", stores.get(0).getId());
+        assertEquals("MG1", stores.get(1).getId());
+        assertTrue(storeService.getStores(List.of()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test StoreService exception-free lookups")
+    public void testFindLookups() throws StoreException {
+        storeService.provisionStore("FIND1", "Find", "1 Find St", "admin");
+
+        assertEquals("FIND1", storeService.findStore("FIND1").map(Store::getId).orElse(null));
+        assertTrue(storeService.findStore("MISSING").isEmpty());
+        assertTrue(storeService.findProduct("MISSING").isEmpty());
+        assertTrue(storeService.findCustomer("MISSING").isEmpty());
+        assertTrue(storeService.findBasket("MISSING").isEmpty());
+        assertTrue(storeService.findInventory("MISSING").isEmpty());
+        assertTrue(storeService.findDevice("MISSING").isEmpty());
+
+        StoreException missing = assertThrows(StoreException.class,
+                () -> storeService.showStore("MISSING", "admin"));
+        assertEquals("Store Does Not Exist", missing.getReason());
+        assertEquals(0, missing.getStackTrace().length);
+    }
+
+    @Test
+    @DisplayName("Test InstrumentedStoreService records latency and failures by action and reason")
+    public void testInstrumentedStoreService() throws Exception {
+        StoreService instrumented = new InstrumentedStoreService();
+        OperationMetrics showStore = MetricsRegistry.getInstance().operation("showStore");
+        long calls = showStore.getLatency().getCount();
+        long misses = showStore.getErrorCount("Show Store", "Store Does Not Exist");
+
+        instrumented.provisionStore("INST1", "Instrumented", "1 Timer St", "admin");
+        assertEquals("INST1", instrumented.showStore("INST1", "admin").getId());
+        assertThrows(StoreException.class, () -> instrumented.showStore("INST-MISSING", "admin"));
+        assertTrue(instrumented.findStore("INST1").isPresent());
+
+        assertEquals(calls + 2, showStore.getLatency().getCount());
+        assertEquals(misses + 1, showStore.getErrorCount("Show Store", "Store Does Not Exist"));
+
+        StringBuilder scrape = new StringBuilder();
+        MetricsRegistry.getInstance().writePrometheus(scrape);
+        assertTrue(scrape.toString().contains("smartstore_service_operation_duration_seconds_count{operation=\"findStore\"}"));
+        assertTrue(scrape.toString().contains("smartstore_service_operation_errors_total{operation=\"showStore\","
+                + "action=\"Show Store\",reason=\"Store Does Not Exist\"}"));
+
+        // Made-up HTTP methods share one label instead of growing the registry
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        assertSame(registry.endpoint("/api/v1/inst", "BREW"), registry.endpoint("/api/v1/inst", "X\"}\n"));
+        assertEquals("other", registry.endpoint("/api/v1/inst", "BREW").getMethod());
+        assertEquals("GET", registry.endpoint("/api/v1/inst", "GET").getMethod());
+    }
+
+    @Test
+    @DisplayName("Test RecordingService captures Smart Store Flight Recorder events")
+    public void testRecordingService(@TempDir Path directory) throws Exception {
+        RecordingService recordings = new RecordingService(directory);
+        assertThrows(StoreException.class, () -> recordings.startRecording("../escape", null));
+        assertThrows(StoreException.class, () -> recordings.startRecording("bad-settings", "missing"));
+        assertThrows(StoreException.class, () -> recordings.stopRecording("not-running"));
+
+        assertEquals("RUNNING", recordings.startRecording("unit", "profile").getState());
+        assertThrows(StoreException.class, () -> recordings.startRecording("unit", null));
+        assertEquals(1, recordings.getRecordings().size());
+
+        Inventory inventory = new Inventory("JFR-I1", new InventoryLocation("S1", "A1", "SH1"), 10, 5,
+                "JFR-P1", InventoryType.standard);
+        inventory.updateInventory(2);
+        assertThrows(StoreException.class, () -> inventory.updateInventory(20));
+
+        RecordingService.RecordingInfo stopped = recordings.stopRecording("unit");
+        assertTrue(recordings.getRecordings().isEmpty());
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(Path.of(stopped.getDestination())).stream()
+                .filter(event -> event.getEventType().getName().equals("com.se300.store.Inventory"))
+                .filter(event -> "JFR-I1".equals(event.getString("inventoryId")))
+                .toList();
+        assertEquals(2, events.size());
+        assertEquals(7, events.get(0).getInt("count"));
+        assertEquals("Inventory Is Smaller Than O or Larger Than Shelf Capacity", events.get(1).getString("failure"));
+    }
+
+    @Test
+    @DisplayName("Test low stock watermarks are tracked per store as inventory counts change")
+    public void testLowStockWatermarks() throws StoreException {
+        storeService.provisionStore("LOW1", "Low", "1 Restock St", "admin");
+        storeService.provisionAisle("LOW1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionShelf("LOW1", "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        Inventory empty = storeService.provisionInventory("LOW-I1", "LOW1", "A1", "SH1",
+                10, 0, "P1", InventoryType.standard, "admin");
+        Inventory stocked = storeService.provisionInventory("LOW-I2", "LOW1", "A1", "SH1",
+                10, 6, "P2", InventoryType.standard, "admin");
+
+        assertEquals(StockLevel.low, empty.getStockLevel());
+        assertEquals(StockLevel.normal, stocked.getStockLevel());
+        assertEquals(List.of(empty), storeService.getLowStockInventory("LOW1", "admin"));
+
+        storeService.updateInventoryWatermarks("LOW-I2", 3, 9, "admin");
+        storeService.updateInventory("LOW-I2", -3, "admin");
+        empty.setCount(10);
+        assertEquals(StockLevel.low, stocked.getStockLevel());
+        assertEquals(StockLevel.high, empty.getStockLevel());
+        assertEquals(List.of(stocked), storeService.getLowStockInventory("LOW1", "admin"));
+
+        stocked.setCount(9);
+        assertEquals(StockLevel.high, stocked.getStockLevel());
+        assertTrue(storeService.getLowStockInventory("LOW1", "admin").isEmpty());
+
+        StoreException invalid = assertThrows(StoreException.class,
+                () -> storeService.updateInventoryWatermarks("LOW-I2", 5, 11, "admin"));
+        assertEquals("Update Inventory Watermarks", invalid.getAction());
+        assertThrows(StoreException.class, () -> storeService.getLowStockInventory("LOW-MISSING", "admin"));
+    }
+
+    @Test
+    @DisplayName("Test per-store and chain-wide product stock follows every count change")
+    public void testStockAggregates() throws StoreException {
+        for (String storeId : List.of("AGG1", "AGG2")) {
+            storeService.provisionStore(storeId, "Aggregate", "1 Stock St", "admin");
+            storeService.provisionAisle(storeId, "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+            storeService.provisionShelf(storeId, "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        }
+        storeService.provisionInventory("AGG1-I1", "AGG1", "A1", "SH1", 20, 5, "AGG-P1", InventoryType.standard, "admin");
+        Inventory second = storeService.provisionInventory("AGG1-I2", "AGG1", "A1", "SH1",
+                20, 8, "AGG-P1", InventoryType.standard, "admin");
+        storeService.provisionInventory("AGG2-I1", "AGG2", "A1", "SH1", 20, 4, "AGG-P1", InventoryType.standard, "admin");
+        storeService.provisionInventory("AGG2-I2", "AGG2", "A1", "SH1", 20, 3, "AGG-P2", InventoryType.standard, "admin");
+
+        assertEquals(13, storeService.getStoreProductCount("AGG1", "AGG-P1", "admin"));
+        assertEquals(17, storeService.getChainProductCount("AGG-P1", "admin"));
+
+        storeService.updateInventory("AGG1-I1", 2, "admin");
+        second.setCount(second.getCount() - 6);
+        assertEquals(9, storeService.getStoreProductCount("AGG1", "AGG-P1", "admin"));
+        assertEquals(13, storeService.getChainProductCount("AGG-P1", "admin"));
+        assertEquals(Map.of("AGG-P1", 4L, "AGG-P2", 3L), storeService.getStoreStock("AGG2", "admin"));
+        assertEquals(0, storeService.getStoreProductCount("AGG1", "AGG-P2", "admin"));
+
+        storeService.deleteStore("AGG2");
+        assertEquals(9, storeService.getChainProductCount("AGG-P1", "admin"));
+        assertEquals(0, storeService.getChainProductCount("AGG-P2", "admin"));
+        assertThrows(StoreException.class, () -> storeService.getStoreProductCount("AGG2", "AGG-P1", "admin"));
+    }
+
+    @Test
+    @DisplayName("Test product locations are indexed across stores and filtered by stock")
+    public void testProductLocations() throws StoreException {
+        for (String storeId : List.of("LOC1", "LOC2")) {
+            storeService.provisionStore(storeId, "Locations", "1 Index St", "admin");
+            storeService.provisionAisle(storeId, "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+            storeService.provisionShelf(storeId, "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        }
+        Inventory first = storeService.provisionInventory("LOC2-I1", "LOC2", "A1", "SH1",
+                10, 0, "LOC-P1", InventoryType.standard, "admin");
+        storeService.provisionInventory("LOC1-I1", "LOC1", "A1", "SH1", 10, 4, "LOC-P1", InventoryType.standard, "admin");
+
+        List<ProductLocation> all = storeService.getProductLocations("LOC-P1", false, "admin");
+        assertEquals(List.of("LOC1", "LOC2"), all.stream().map(ProductLocation::getStoreId).toList());
+        assertEquals("SH1", all.get(0).getShelfId());
+        assertEquals(4, all.get(0).getCount());
+        assertEquals(List.of("LOC1-I1"), storeService.getProductLocations("LOC-P1", true, "admin")
+                .stream().map(ProductLocation::getInventoryId).toList());
+
+        first.setCount(3);
+        storeService.updateInventory("LOC1-I1", -4, "admin");
+        assertEquals(List.of("LOC2-I1"), storeService.getProductLocations("LOC-P1", true, "admin")
+                .stream().map(ProductLocation::getInventoryId).toList());
+
+        storeService.deleteStore("LOC2");
+        assertTrue(storeService.getProductLocations("LOC-P1", true, "admin").isEmpty());
+        assertEquals(1, storeService.getProductLocations("LOC-P1", false, "admin").size());
+        assertTrue(storeService.getProductLocations("LOC-MISSING", false, "admin").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test product search ranks term and prefix matches and counts categories")
+    public void testProductSearch() throws StoreException {
+        storeService.provisionProduct("SRCH1", "Zephyr Apple Juice", "Pressed from zephyr apples", "1l",
+                "Zephyr Drinks", 3.49, Temperature.refrigerated, "admin");
+        storeService.provisionProduct("SRCH2", "Zephyr Apple", "Crisp red fruit", "1lb",
+                "Zephyr Produce", 1.29, Temperature.ambient, "admin");
+        storeService.provisionProduct("SRCH3", "Orchard Snack", "Dried zephyr apple rings", "200g",
+                "Zephyr Produce", 2.99, Temperature.ambient, "admin");
+
+        ProductSearchIndex.Result apples = storeService.searchProducts("zephyr APPLE", null, false, 10, "admin");
+        assertEquals(3, apples.getTotal());
+        assertEquals(List.of("SRCH1", "SRCH2", "SRCH3"),
+                apples.getHits().stream().map(hit -> hit.getProduct().getId()).toList());
+        assertEquals(Map.of("Zephyr Produce", 2, "Zephyr Drinks", 1), apples.getCategories());
+
+        ProductSearchIndex.Result typed = storeService.searchProducts("zephyr ju", null, true, 10, "admin");
+        assertEquals(List.of("SRCH1"), typed.getHits().stream().map(hit -> hit.getProduct().getId()).toList());
+        assertEquals(0, storeService.searchProducts("zephyr ju", null, false, 10, "admin").getTotal());
+
+        ProductSearchIndex.Result produce = storeService.searchProducts("zephyr app", "zephyr produce", true, 1, "admin");
+        assertEquals(2, produce.getTotal());
+        assertEquals(1, produce.getHits().size());
+        assertEquals("SRCH2", produce.getHits().get(0).getProduct().getId());
+
+        assertEquals(0, storeService.searchProducts("  ", null, true, 10, "admin").getTotal());
+    }
+
+    @Test
+    @DisplayName("Test TimingWheel expires items on their tick across levels and after cancel")
+    public void testTimingWheel() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 1_000);
+        wheel.schedule("soon", 1_025);
+        wheel.schedule("level1", 1_000 + 10 * 100);
+        wheel.schedule("level2", 1_000 + 10 * 5_000);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 1_500);
+        wheel.schedule("past", 0);
+
+        assertEquals(List.of("past"), wheel.advance(1_010));
+        assertEquals(List.of(), wheel.advance(1_020));
+        assertEquals(List.of("soon"), wheel.advance(1_030));
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertEquals(List.of(), wheel.advance(1_000 + 10 * 99));
+        assertEquals(List.of("level1"), wheel.advance(1_000 + 10 * 100));
+        assertEquals(List.of(), wheel.advance(1_000 + 10 * 4_999));
+        assertEquals(List.of("level2"), wheel.advance(1_000 + 10 * 5_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("Test idle baskets are cleared back to the shelf and dropped")
+    public void testBasketReaper() throws StoreException {
+        storeService.provisionStore("REAP1", "Reaper", "1 Idle St", "admin");
+        storeService.provisionAisle("REAP1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionShelf("REAP1", "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        storeService.provisionProduct("REAP-P1", "Idle Product", "Desc", "1", "Cat", 2.50, Temperature.ambient, "admin");
+        Inventory inventory = storeService.provisionInventory("REAP-I1", "REAP1", "A1", "SH1",
+                10, 10, "REAP-P1", InventoryType.standard, "admin");
+        storeService.provisionProduct("REAP-P2", "Idle Product Two", "Desc", "1", "Cat", 1.25, Temperature.ambient, "admin");
+        Inventory second = storeService.provisionInventory("REAP-I2", "REAP1", "A1", "SH1",
+                5, 5, "REAP-P2", InventoryType.standard, "admin");
+        Customer customer = storeService.provisionCustomer("REAP-C1", "Idle", "Shopper", CustomerType.registered,
+                "idle@example.com", "idle", "admin");
+        storeService.updateCustomer("REAP-C1", "REAP1", "A1", "admin");
+
+        AtomicLong offset = new AtomicLong();
+        BasketReaper reaper = new BasketReaper(storeService, 1_000, 100,
+                () -> System.currentTimeMillis() + offset.get());
+        Basket basket = storeService.provisionBasket("REAP-B1", "admin");
+        Basket unassigned = storeService.provisionBasket("REAP-B2", "admin");
+        reaper.track(basket);
+        reaper.track(unassigned);
+        storeService.assignCustomerBasket("REAP-C1", "REAP-B1", "admin");
+        storeService.addBasketProduct("REAP-B1", "REAP-P1", 3, "admin");
+        storeService.addBasketProduct("REAP-B1", "REAP-P2", 2, "admin");
+        assertEquals(7, inventory.getCount());
+        assertEquals(3, second.getCount());
+
+        offset.set(500);
+        assertEquals(0, reaper.reap());
+
+        // The customer was seen again, so only the unassigned basket is idle
+        offset.set(1_300);
+        customer.setLastSeen(new Date(System.currentTimeMillis() + 1_000));
+        assertEquals(1, reaper.reap());
+        assertTrue(storeService.findBasket("REAP-B2").isEmpty());
+        assertEquals(1, reaper.size());
+
+        // The customer walked off to another aisle, away from the products
+        storeService.provisionAisle("REAP1", "A2", "Aisle Two", "Desc", AisleLocation.floor, "admin");
+        customer.setStoreLocation(new StoreLocation("REAP1", "A2"));
+
+        // The first slot was restocked while the basket held its units, so one no longer fits anywhere
+        inventory.setCount(8);
+        long unshelved = MetricsRegistry.getInstance().counter(StoreService.UNSHELVED_UNITS, "").sum();
+
+        offset.set(3_000);
+        assertEquals(1, reaper.reap());
+        // Every product of the basket goes back, not only the first, and no slot is overfilled
+        assertEquals(10, inventory.getCount());
+        assertEquals(5, second.getCount());
+        assertEquals(unshelved + 1, MetricsRegistry.getInstance().counter(StoreService.UNSHELVED_UNITS, "").sum());
+        assertTrue(storeService.findBasket("REAP-B1").isEmpty());
+        assertEquals(null, customer.getBasket());
+        assertEquals(0, reaper.size());
+    }
+
+    @Test
+    @DisplayName("Test deleting a store drops its inventory, devices, baskets and customers")
+    public void testDeleteStoreCascades() throws StoreException {
+        storeService.provisionStore("CASC1", "Cascade", "1 Gone St", "admin");
+        storeService.provisionStore("CASC2", "Cascade Two", "2 Gone St", "admin");
+        storeService.provisionAisle("CASC1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionAisle("CASC2", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionShelf("CASC1", "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        storeService.provisionProduct("CASC-P1", "Cascade Product", "Desc", "1", "Cat", 1.00, Temperature.ambient, "admin");
+        Inventory inventory = storeService.provisionInventory("CASC-I1", "CASC1", "A1", "SH1",
+                10, 10, "CASC-P1", InventoryType.standard, "admin");
+        storeService.provisionProduct("CASC-P2", "Cascade Product Two", "Desc", "1", "Cat", 1.00, Temperature.ambient, "admin");
+        Inventory second = storeService.provisionInventory("CASC-I2", "CASC1", "A1", "SH1",
+                5, 5, "CASC-P2", InventoryType.standard, "admin");
+        storeService.provisionDevice("CASC-D1", "Camera", "camera", "CASC1", "A1", "admin");
+        Customer leaving = storeService.provisionCustomer("CASC-C1", "Leaving", "Shopper", CustomerType.registered,
+                "leaving@example.com", "cascade", "admin");
+        Customer staying = storeService.provisionCustomer("CASC-C2", "Staying", "Shopper", CustomerType.registered,
+                "staying@example.com", "cascade", "admin");
+        storeService.updateCustomer("CASC-C1", "CASC1", "A1", "admin");
+        storeService.updateCustomer("CASC-C2", "CASC1", "A1", "admin");
+        Store store = storeService.showStore("CASC1", "admin");
+        assertEquals(2, store.getCustomerCount());
+
+        // A customer moving stores leaves the old one
+        storeService.updateCustomer("CASC-C1", "CASC2", "A1", "admin");
+        assertEquals(null, store.getCustomer("CASC-C1"));
+        assertEquals("CASC2", leaving.getStoreLocation().getStoreId());
+
+        storeService.provisionBasket("CASC-B1", "admin");
+        storeService.assignCustomerBasket("CASC-C2", "CASC-B1", "admin");
+        storeService.addBasketProduct("CASC-B1", "CASC-P1", 4, "admin");
+        storeService.addBasketProduct("CASC-B1", "CASC-P2", 2, "admin");
+
+        storeService.deleteStore("CASC1");
+        assertTrue(storeService.findStore("CASC1").isEmpty());
+        assertEquals(10, inventory.getCount());
+        assertEquals(5, second.getCount());
+        assertTrue(storeService.findInventory("CASC-I1").isEmpty());
+        assertTrue(storeService.findDevice("CASC-D1").isEmpty());
+        assertTrue(storeService.findBasket("CASC-B1").isEmpty());
+        assertEquals(null, staying.getBasket());
+        assertEquals(null, staying.getStoreLocation());
+        assertTrue(storeService.findCustomer("CASC-C2").isPresent());
+        assertEquals(0, store.getCustomerCount());
+        assertEquals(0, store.getBasketCount());
+        assertEquals(0L, storeService.getChainProductCount("CASC-P1", "admin"));
+        assertEquals(0L, storeService.getChainProductCount("CASC-P2", "admin"));
+    }
+
+    @Test
+    @DisplayName("Test store limits reject or evict the oldest customers and baskets")
+    public void testStoreLimits() throws StoreException {
+        storeService.provisionStore("CAP1", "Capped", "1 Full St", "admin");
+        storeService.provisionAisle("CAP1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionShelf("CAP1", "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        storeService.provisionProduct("CAP-P1", "Capped Product", "Desc", "1", "Cat", 1.00, Temperature.ambient, "admin");
+        Inventory inventory = storeService.provisionInventory("CAP-I1", "CAP1", "A1", "SH1",
+                10, 10, "CAP-P1", InventoryType.standard, "admin");
+        storeService.provisionProduct("CAP-P2", "Capped Product Two", "Desc", "1", "Cat", 1.00, Temperature.ambient, "admin");
+        Inventory second = storeService.provisionInventory("CAP-I2", "CAP1", "A1", "SH1",
+                5, 5, "CAP-P2", InventoryType.standard, "admin");
+        for (int i = 1; i <= 3; i++) {
+            storeService.provisionCustomer("CAP-C" + i, "Capped", "Shopper", CustomerType.registered,
+                    "capped" + i + "@example.com", "capped", "admin");
+            storeService.provisionBasket("CAP-B" + i, "admin");
+        }
+        assertThrows(StoreException.class,
+                () -> storeService.updateStoreLimits("CAP1", -1, 0, EvictionPolicy.reject, "admin"));
+        assertThrows(StoreException.class,
+                () -> storeService.updateStoreLimits("CAP-NONE", 1, 1, EvictionPolicy.reject, "admin"));
+
+        storeService.updateStoreLimits("CAP1", 2, 1, EvictionPolicy.reject, "admin");
+        storeService.updateCustomer("CAP-C1", "CAP1", "A1", "admin");
+        storeService.updateCustomer("CAP-C2", "CAP1", "A1", "admin");
+        // Moving between aisles of the same store is not a new arrival
+        storeService.updateCustomer("CAP-C2", "CAP1", "A1", "admin");
+        assertThrows(StoreException.class, () -> storeService.updateCustomer("CAP-C3", "CAP1", "A1", "admin"));
+        storeService.assignCustomerBasket("CAP-C1", "CAP-B1", "admin");
+        storeService.addBasketProduct("CAP-B1", "CAP-P1", 2, "admin");
+        storeService.addBasketProduct("CAP-B1", "CAP-P2", 3, "admin");
+        assertThrows(StoreException.class, () -> storeService.assignCustomerBasket("CAP-C2", "CAP-B2", "admin"));
+
+        storeService.updateStoreLimits("CAP1", 2, 1, EvictionPolicy.oldest, "admin");
+        storeService.assignCustomerBasket("CAP-C2", "CAP-B2", "admin");
+        assertTrue(storeService.findBasket("CAP-B1").isEmpty());
+        assertEquals(10, inventory.getCount());
+        assertEquals(5, second.getCount());
+
+        storeService.updateCustomer("CAP-C3", "CAP1", "A1", "admin");
+        Customer evicted = storeService.showCustomer("CAP-C1", "admin");
+        assertEquals(null, evicted.getStoreLocation());
+        Store store = storeService.showStore("CAP1", "admin");
+        assertEquals(List.of("CAP-C2", "CAP-C3"), store.getCustomers().stream().map(Customer::getId).toList());
+    }
+
+    @Test
+    @DisplayName("Test abandoned shopping sessions do not accumulate in a capped store")
+    public void testShoppingSessionSoak() throws StoreException {
+        storeService.provisionStore("SOAK1", "Soak", "1 Busy St", "admin");
+        storeService.provisionAisle("SOAK1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionShelf("SOAK1", "A1", "SH1", "Shelf", ShelfLevel.low, "Desc", Temperature.ambient, "admin");
+        storeService.provisionProduct("SOAK-P1", "Soak Product", "Desc", "1", "Cat", 1.00, Temperature.ambient, "admin");
+        Inventory inventory = storeService.provisionInventory("SOAK-I1", "SOAK1", "A1", "SH1",
+                1_000, 1_000, "SOAK-P1", InventoryType.standard, "admin");
+        storeService.updateStoreLimits("SOAK1", 50, 20, EvictionPolicy.oldest, "admin");
+        for (int i = 0; i < 100; i++) {
+            storeService.provisionCustomer("SOAK-C" + i, "Soak", "Shopper", CustomerType.registered,
+                    "soak" + i + "@example.com", "soak", "admin");
+        }
+
+        // Every session walks in, fills a basket and walks away from it
+        for (int session = 0; session < 20_000; session++) {
+            String customerId = "SOAK-C" + session % 100;
+            String basketId = "SOAK-B" + session;
+            storeService.updateCustomer(customerId, "SOAK1", "A1", "admin");
+            storeService.provisionBasket(basketId, "admin");
+            storeService.assignCustomerBasket(customerId, basketId, "admin");
+            storeService.addBasketProduct(basketId, "SOAK-P1", 1, "admin");
+        }
+
+        Store store = storeService.showStore("SOAK1", "admin");
+        assertEquals(50, store.getCustomerCount());
+        assertEquals(20, store.getBasketCount());
+        assertTrue(storeService.findBasket("SOAK-B0").isEmpty());
+        assertTrue(storeService.findBasket("SOAK-B19999").isPresent());
+        // Only the baskets still in the store hold products
+        assertEquals(980, inventory.getCount());
+    }
+
+    @Test
+    @DisplayName("Test occupancy counters follow customers between aisles and stores")
+    public void testOccupancyCounters() throws StoreException {
+        storeService.provisionStore("OCC1", "Occupancy", "1 Crowd St", "admin");
+        storeService.provisionStore("OCC2", "Occupancy Two", "2 Crowd St", "admin");
+        storeService.provisionAisle("OCC1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionAisle("OCC1", "A2", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionAisle("OCC2", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        for (int i = 1; i <= 3; i++) {
+            storeService.provisionCustomer("OCC-C" + i, "Counted", "Shopper", CustomerType.registered,
+                    "counted" + i + "@example.com", "counted", "admin");
+            storeService.updateCustomer("OCC-C" + i, "OCC1", "A1", "admin");
+        }
+        assertEquals(3, storeService.getStoreOccupancy("OCC1", "admin"));
+        assertEquals(3, storeService.getAisleOccupancy("OCC1", "A1", "admin"));
+
+        storeService.updateCustomer("OCC-C2", "OCC1", "A2", "admin");
+        // A location changed outside of the service does not throw the counters off
+        storeService.showCustomer("OCC-C3", "admin").setStoreLocation(new StoreLocation("OCC1", "A2"));
+        storeService.updateCustomer("OCC-C3", "OCC2", "A1", "admin");
+        OccupancySnapshot snapshot = storeService.getOccupancySnapshot("OCC1", "admin");
+        assertEquals(2, snapshot.getTotal());
+        assertEquals(Map.of("A1", 1L, "A2", 1L), snapshot.getAisles());
+        assertEquals(1, storeService.getStoreOccupancy("OCC2", "admin"));
+
+        // Evicted customers leave the counters
+        storeService.updateStoreLimits("OCC2", 1, 0, EvictionPolicy.oldest, "admin");
+        storeService.updateCustomer("OCC-C1", "OCC2", "A1", "admin");
+        assertEquals(1, storeService.getStoreOccupancy("OCC2", "admin"));
+        assertEquals(1, storeService.getStoreOccupancy("OCC1", "admin"));
+        assertEquals(0, storeService.getAisleOccupancy("OCC1", "A1", "admin"));
+
+        assertThrows(StoreException.class, () -> storeService.getAisleOccupancy("OCC1", "A9", "admin"));
+        assertThrows(StoreException.class, () -> storeService.getStoreOccupancy("OCC-NONE", "admin"));
+
+        OccupancyHeatmap heatmap = new OccupancyHeatmap(storeService, 1_000, 2);
+        heatmap.sample();
+        storeService.updateCustomer("OCC-C2", "OCC1", "A1", "admin");
+        heatmap.sample();
+        heatmap.sample();
+        List<OccupancySnapshot> history = heatmap.getHistory("OCC1");
+        assertEquals(2, history.size());
+        assertEquals(1L, history.get(1).getAisles().get("A1"));
+
+        storeService.deleteStore("OCC2");
+        assertThrows(StoreException.class, () -> storeService.getStoreOccupancy("OCC2", "admin"));
+        heatmap.sample();
+        assertTrue(heatmap.getHistory("OCC2").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test an item failing to expire does not stop the reaper from expiring the rest")
+    public void testReaperIsolatesFailures() {
+        AtomicLong now = new AtomicLong();
+        List<String> expired = new ArrayList<>();
+        IdleReaper<String> reaper = new IdleReaper<>("test", 1_000, 100, now::get) {
+            @Override
+            protected long lastActive(String item) {
+                return 0;
+            }
+
+            @Override
+            protected boolean expire(String item) {
+                if (item.equals("broken")) {
+                    throw new IllegalStateException("Cannot expire " + item);
+                }
+                return expired.add(item);
+            }
+
+            @Override
+            protected String idOf(String item) {
+                return item;
+            }
+
+            {
+                schedule("first");
+                schedule("broken");
+                schedule("last");
+            }
+        };
+
+        now.set(2_000);
+        assertEquals(2, reaper.reap());
+        assertEquals(List.of("first", "last"), expired);
+        assertEquals(0, reaper.size());
+    }
+
+    @Test
+    @DisplayName("Test customers not seen for too long are counted out of the occupancy")
+    public void testCustomerReaper() throws StoreException {
+        storeService.provisionStore("GONE1", "Walkout", "1 Exit St", "admin");
+        storeService.provisionAisle("GONE1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        Customer leaving = storeService.provisionCustomer("GONE-C1", "Leaving", "Shopper", CustomerType.registered,
+                "leaving@example.com", "gone", "admin");
+        Customer browsing = storeService.provisionCustomer("GONE-C2", "Browsing", "Shopper", CustomerType.registered,
+                "browsing@example.com", "gone", "admin");
+        storeService.updateCustomer("GONE-C1", "GONE1", "A1", "admin");
+        storeService.updateCustomer("GONE-C2", "GONE1", "A1", "admin");
+
+        AtomicLong offset = new AtomicLong();
+        CustomerReaper reaper = new CustomerReaper(storeService, 1_000, 100,
+                () -> System.currentTimeMillis() + offset.get());
+        reaper.track(leaving);
+        reaper.track(browsing);
+        reaper.track(browsing);
+        assertEquals(2, reaper.size());
+
+        offset.set(500);
+        assertEquals(0, reaper.reap());
+
+        // Only the customer seen again stays counted
+        offset.set(1_300);
+        browsing.setLastSeen(new Date(System.currentTimeMillis() + 1_000));
+        assertEquals(1, reaper.reap());
+        assertEquals(1, storeService.getStoreOccupancy("GONE1", "admin"));
+        assertEquals(1, storeService.getAisleOccupancy("GONE1", "A1", "admin"));
+        assertEquals(1, reaper.size());
+
+        offset.set(3_000);
+        assertEquals(1, reaper.reap());
+        assertEquals(0, storeService.getStoreOccupancy("GONE1", "admin"));
+        assertEquals(0, reaper.size());
+        assertEquals(leaving, storeService.showStore("GONE1", "admin").getCustomer("GONE-C1"));
+
+        // Seen again, counted in again
+        storeService.updateCustomer("GONE-C1", "GONE1", "A1", "admin");
+        assertEquals(1, storeService.getAisleOccupancy("GONE1", "A1", "admin"));
+        storeService.deleteStore("GONE1");
+    }
+
+    @Test
+    @DisplayName("Test device telemetry keeps the last events and rolls them up")
+    public void testDeviceTelemetry() throws Exception {
+        DeviceTelemetry telemetry = new DeviceTelemetry(4, true);
+        telemetry.record(1_000, "temperature 20.5");
+        telemetry.record(1_500, "temperature 21.5");
+        telemetry.record(2_100, "door_opened");
+        telemetry.record(61_000, "temperature -3");
+        telemetry.record(62_000, "x".repeat(200));
+        telemetry.record(63_000, "noise 40 db");
+
+        List<TelemetryEvent> events = telemetry.getEvents(0, Long.MAX_VALUE);
+        assertEquals(List.of(2_100L, 61_000L, 62_000L, 63_000L), events.stream().map(TelemetryEvent::getTimestamp).toList());
+        assertEquals(null, events.get(0).getValue());
+        assertEquals(-3.0, events.get(1).getValue());
+        assertTrue(events.get(2).getEvent().length() < 200);
+        assertEquals(2, telemetry.getEvents(61_000, 63_000).size());
+        assertEquals(6, telemetry.getEventCount());
+
+        List<TelemetryBucket> seconds = telemetry.getRollup(DeviceTelemetry.Resolution.second, 0, 3_000);
+        assertEquals(2, seconds.size());
+        assertEquals(1_000, seconds.get(0).getStart());
+        assertEquals(2, seconds.get(0).getCount());
+        assertEquals(21.0, seconds.get(0).getMean());
+        assertEquals(null, seconds.get(1).getMean());
+        List<TelemetryBucket> minutes = telemetry.getRollup(DeviceTelemetry.Resolution.minute, 0, Long.MAX_VALUE);
+        assertEquals(List.of(3L, 3L), minutes.stream().map(TelemetryBucket::getCount).toList());
+        assertEquals(-3.0, minutes.get(1).getMin());
+        assertEquals(40.0, minutes.get(1).getMax());
+
+        // Readers copying events while they are overwritten never see a torn one
+        DeviceTelemetry busy = new DeviceTelemetry(8, false);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                busy.record(i, "reading " + i);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            for (TelemetryEvent event : busy.getEvents(0, Long.MAX_VALUE)) {
+                assertEquals("reading " + event.getTimestamp(), event.getEvent());
+            }
+        }
+        writer.join();
+        assertEquals(8, busy.getEvents(0, Long.MAX_VALUE).size());
+        assertEquals(50_000, busy.getRollup(DeviceTelemetry.Resolution.hour, 0, Long.MAX_VALUE).get(0).getCount());
+
+        // Parsed events are copied into the record as UTF-8, from bytes or characters alike
+        DeviceTelemetry parsed = new DeviceTelemetry(4, false);
+        String question = "customer_asked_question c1 \"où est le café?\"";
+        ByteBuffer bytes = ByteBuffer.wrap(question.getBytes(StandardCharsets.UTF_8));
+        parsed.record(1_000, EventParser.parse(bytes, new StructuredEvent()));
+        parsed.record(2_000, EventParser.parse("temperature 19.5"));
+        String accents = "x" + "é".repeat(100);
+        parsed.record(3_000, EventParser.parse(ByteBuffer.wrap(accents.getBytes(StandardCharsets.UTF_8)),
+                new StructuredEvent()));
+        parsed.record(4_000, EventParser.parse(accents));
+        List<TelemetryEvent> recorded = parsed.getEvents(0, Long.MAX_VALUE);
+        assertEquals(question, recorded.get(0).getEvent());
+        assertEquals(19.5, recorded.get(1).getValue());
+        // Long text is cut short on a character boundary
+        assertEquals("x" + "é".repeat(54), recorded.get(2).getEvent());
+        assertEquals("x" + "é".repeat(54), recorded.get(3).getEvent());
+    }
+
+    @Test
+    @DisplayName("Test typed device events are checked against the device raising them")
+    public void testTypedDeviceEvents() throws StoreException {
+        storeService.provisionStore("EVT1", "Events", "1 Typed St", "admin");
+        storeService.provisionAisle("EVT1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("EVT-CAM", "Camera", "camera", "EVT1", "A1", "admin");
+        storeService.provisionDevice("EVT-ROB", "Robot", "robot", "EVT1", "A1", "admin");
+
+        storeService.raiseEvent("EVT-CAM", "item_added_to_basket b1 prod10", "admin");
+        storeService.raiseEvent("EVT-ROB", EventParser.parse("SPILLED_MILK EVT1:A1"), "admin");
+        storeService.raiseEvent("EVT-ROB", "battery_low 12", "admin");
+        assertEquals("item_added_to_basket b1 prod10",
+                storeService.getDeviceEvents("EVT-CAM", 0, Long.MAX_VALUE, "admin").get(0).getEvent());
+        assertEquals(2, storeService.getDeviceEvents("EVT-ROB", 0, Long.MAX_VALUE, "admin").size());
+
+        StoreException unsupported = assertThrows(StoreException.class,
+                () -> storeService.raiseEvent("EVT-ROB", "item_added_to_basket b1 prod10", "admin"));
+        assertEquals("Event Not Supported By Device", unsupported.getReason());
+        StoreException malformed = assertThrows(StoreException.class,
+                () -> storeService.raiseEvent("EVT-CAM", "item_added_to_basket b1", "admin"));
+        assertEquals("Event Is Malformed", malformed.getReason());
+        assertEquals(1, storeService.getDeviceEvents("EVT-CAM", 0, Long.MAX_VALUE, "admin").size());
+
+        storeService.deleteStore("EVT1");
+    }
+
+    @Test
+    @DisplayName("Test raised device events are queryable through the service")
+    public void testDeviceEventQueries() throws StoreException {
+        storeService.provisionStore("TEL1", "Telemetry", "1 Sensor St", "admin");
+        storeService.provisionAisle("TEL1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("TEL-D1", "Camera", "camera", "TEL1", "A1", "admin");
+        assertEquals(List.of(), storeService.getDeviceEvents("TEL-D1", 0, Long.MAX_VALUE, "admin"));
+
+        storeService.raiseEvent("TEL-D1", "customer_count 3", "admin");
+        storeService.raiseEvent("TEL-D1", "customer_count 5", "admin");
+        List<TelemetryEvent> events = storeService.getDeviceEvents("TEL-D1", 0, Long.MAX_VALUE, "admin");
+        assertEquals(2, events.size());
+        List<TelemetryBucket> hours = storeService.getDeviceRollup("TEL-D1", DeviceTelemetry.Resolution.hour,
+                0, Long.MAX_VALUE, "admin");
+        assertEquals(2, hours.stream().mapToLong(TelemetryBucket::getCount).sum());
+        assertEquals(5.0, events.get(1).getValue());
+        assertThrows(StoreException.class,
+                () -> storeService.getDeviceEvents("TEL-NONE", 0, Long.MAX_VALUE, "admin"));
+
+        storeService.deleteStore("TEL1");
+        assertThrows(StoreException.class,
+                () -> storeService.getDeviceEvents("TEL-D1", 0, Long.MAX_VALUE, "admin"));
+    }
+
+    @Test
+    @DisplayName("Test the device event archive rolls, reopens, filters and expires segments")
+    public void testDeviceEventArchive(@TempDir Path directory) throws Exception {
+        DeviceEventArchive archive = new DeviceEventArchive(directory, 1L << 30, 3_600_000, Long.MAX_VALUE);
+        for (int i = 0; i < 20_000; i++) {
+            assertTrue(archive.append(1_000 + i, i % 2 == 0 ? "event" : "command", "ARC-D" + i % 4,
+                    "reading " + i + " " + Integer.toHexString(i * 31)));
+        }
+        archive.close();
+        assertEquals(1, archive.getSegmentCount());
+        assertFalse(archive.append(0, "event", "ARC-D0", "too late"));
+        assertEquals(1, archive.getDropped());
+
+        // Reopening keeps the old segment and starts a new one
+        DeviceEventArchive reopened = new DeviceEventArchive(directory, 1L << 30, 3_600_000, Long.MAX_VALUE);
+        reopened.append(50_000, "event", "ARC-D1", "after restart");
+        reopened.close();
+        assertEquals(2, reopened.getSegmentCount());
+
+        List<ArchivedEvent> device = reopened.read("ARC-D1", 0, Long.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(5_001, device.size());
+        assertEquals("command", device.get(0).getKind());
+        assertEquals("after restart", device.get(device.size() - 1).getPayload());
+        List<ArchivedEvent> range = reopened.read(null, 10_000, 10_010, Integer.MAX_VALUE);
+        assertEquals(10, range.size());
+        assertEquals("reading 9000 " + Integer.toHexString(9_000 * 31), range.get(0).getPayload());
+        assertEquals(3, reopened.read(null, 0, Long.MAX_VALUE, 3).size());
+
+        // Everything written above is long past a zero retention period
+        DeviceEventArchive expiring = new DeviceEventArchive(directory, 1L << 30, 3_600_000, 0);
+        expiring.close();
+        assertEquals(0, expiring.getSegmentCount());
+        try (var files = java.nio.file.Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Test raised events and issued commands are archived")
+    public void testDeviceEventArchiveFeed(@TempDir Path directory) throws Exception {
+        storeService.provisionStore("ARC1", "Archive", "1 Audit St", "admin");
+        storeService.provisionAisle("ARC1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("ARC-S1", "Camera", "camera", "ARC1", "A1", "admin");
+        storeService.provisionDevice("ARC-R1", "Robot", "robot", "ARC1", "A1", "admin");
+        DeviceEventArchive archive = storeService.startDeviceEventArchive(directory, 1L << 20, 3_600_000, Long.MAX_VALUE);
+        try {
+            storeService.raiseEvent("ARC-S1", "spill aisle A1", "admin");
+            storeService.issueCommand("ARC-R1", "clean aisle A1", "admin");
+        } finally {
+            archive.close();
+        }
+
+        List<ArchivedEvent> events = storeService.getArchivedDeviceEvents(null, 0, Long.MAX_VALUE, 100, "admin");
+        assertEquals(List.of("event", "command"), events.stream().map(ArchivedEvent::getKind).toList());
+        assertEquals("clean aisle A1", storeService.getArchivedDeviceEvents("ARC-R1", 0, Long.MAX_VALUE, 100, "admin")
+                .get(0).getPayload());
+    }
+
+    @Test
+    @DisplayName("Test device events streamed by gateways over TCP and Unix-domain sockets")
+    public void testDeviceEventServer(@TempDir Path directory) throws Exception {
+        storeService.provisionStore("ING1", "Ingest", "1 Gateway St", "admin");
+        storeService.provisionAisle("ING1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("ING-CAM", "Camera", "camera", "ING1", "A1", "admin");
+        Path socketPath = directory.resolve("ingest.sock");
+        DeviceEventServer server = storeService.startDeviceEventServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), socketPath);
+        try (SocketChannel tcp = SocketChannel.open(server.getTcpAddress());
+             SocketChannel unix = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            ByteBuffer frames = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; i < 1_000; i++) {
+                if (frames.remaining() < 64) {
+                    frames.flip();
+                    while (frames.hasRemaining()) tcp.write(frames);
+                    frames.clear();
+                }
+                putFrame(frames, "ING-CAM", "item_added_to_basket b" + i + " prod1");
+            }
+            putFrame(frames, "ING-NONE", "item_added_to_basket b1 prod1");
+            frames.flip();
+            while (frames.hasRemaining()) tcp.write(frames);
+
+            frames.clear();
+            putFrame(frames, "ING-CAM", "customer_count 7");
+            frames.flip();
+            // Split mid-frame, the rest arrives later
+            int length = frames.limit();
+            frames.limit(9);
+            unix.write(frames);
+            awaitReceived(server, 1_001);
+            frames.limit(length);
+            unix.write(frames);
+
+            awaitReceived(server, 1_002);
+            assertEquals(1, server.getRejected());
+            assertEquals(2, server.getConnectionCount());
+            List<TelemetryEvent> events = storeService.getDeviceEvents("ING-CAM", 0, Long.MAX_VALUE, "admin");
+            assertEquals(1_001, events.size());
+            assertEquals("item_added_to_basket b999 prod1", events.get(999).getEvent());
+            assertEquals(7.0, events.get(1_000).getValue());
+
+            // A frame of the wrong size closes the connection
+            unix.write(ByteBuffer.allocate(4).putInt(0, 1 << 20));
+            assertEquals(-1, unix.read(ByteBuffer.allocate(1)));
+        } finally {
+            server.close();
+            storeService.deleteStore("ING1");
+        }
+        assertFalse(Files.exists(socketPath));
+    }
+
+    @Test
+    @DisplayName("Test device events handed over through a memory-mapped ring")
+    public void testDeviceEventFeed(@TempDir Path directory) throws Exception {
+        storeService.provisionStore("RING1", "Ring", "1 Shared St", "admin");
+        storeService.provisionAisle("RING1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("RING-CAM", "Camera", "camera", "RING1", "A1", "admin");
+        Path file = directory.resolve("events.ring");
+        DeviceEventRing producer = DeviceEventRing.open(file, 64 * 1024);
+        DeviceEventFeed feed = storeService.startDeviceEventFeed(file, 64 * 1024);
+        try {
+            // Several times the ring, so the producer wraps round and waits for the feed
+            for (int i = 0; i < 5_000; i++) {
+                while (!producer.offer("RING-CAM", "item_added_to_basket b" + i + " prod1")) {
+                    Thread.onSpinWait();
+                }
+            }
+            assertTrue(producer.offer("RING-NONE", "item_added_to_basket b1 prod1"));
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (feed.getReceived() < 5_001 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(5_001, feed.getReceived());
+            assertEquals(1, feed.getRejected());
+            assertEquals(0, feed.getSequenceGaps());
+            assertEquals(5_000, storeService.getDeviceRollup("RING-CAM", DeviceTelemetry.Resolution.hour,
+                    0, Long.MAX_VALUE, "admin").stream().mapToLong(TelemetryBucket::getCount).sum());
+        } finally {
+            feed.close();
+        }
+
+        // Events written while no feed runs are raised by the next one
+        assertTrue(producer.offer("RING-CAM", "customer_count 4"));
+        feed = storeService.startDeviceEventFeed(file, 64 * 1024);
+        try {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (feed.getReceived() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, feed.getReceived());
+        } finally {
+            feed.close();
+            storeService.deleteStore("RING1");
+        }
+
+        Path notRing = directory.resolve("not.ring");
+        Files.write(notRing, new byte[256 * 1024]);
+        assertThrows(IOException.class, () -> DeviceEventRing.open(notRing, 64 * 1024));
+    }
+
+    @Test
+    @DisplayName("Test appliance commands are queued in order per appliance and settings coalesced")
+    public void testApplianceCommandQueues() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        Appliance speaker = new Appliance("CMD-SPK", "Speaker", null, "speaker");
+        try (CommandDispatcher dispatcher = new CommandDispatcher(2, 3, (appliance, command) -> {
+            if (command.equals("hold")) {
+                started.countDown();
+                assertDoesNotThrow(() -> release.await());
+            }
+            processed.add(command);
+        })) {
+            CompletableFuture<CommandOutcome> hold = dispatcher.submit(speaker, "hold");
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<CommandOutcome> volume1 = dispatcher.submit(speaker, "set_volume 1");
+            CompletableFuture<CommandOutcome> volume2 = dispatcher.submit(speaker, "SET_VOLUME 2");
+            CompletableFuture<CommandOutcome> announce = dispatcher.submit(speaker, "announce closing");
+            CompletableFuture<CommandOutcome> volume3 = dispatcher.submit(speaker, "set_volume 3");
+            CompletableFuture<CommandOutcome> volume4 = dispatcher.submit(speaker, "set_volume 4");
+            // Three pending at most
+            assertEquals(3, dispatcher.getPendingCount("CMD-SPK"));
+            StoreException full = assertThrows(StoreException.class,
+                    () -> dispatcher.submit(speaker, "announce again"));
+            assertEquals("Command Queue Is Full", full.getReason());
+            release.countDown();
+
+            assertEquals(CommandOutcome.executed, hold.get(5, TimeUnit.SECONDS));
+            assertEquals(CommandOutcome.superseded, volume1.get(5, TimeUnit.SECONDS));
+            assertEquals(CommandOutcome.executed, volume2.get(5, TimeUnit.SECONDS));
+            assertEquals(CommandOutcome.executed, announce.get(5, TimeUnit.SECONDS));
+            assertEquals(CommandOutcome.superseded, volume3.get(5, TimeUnit.SECONDS));
+            assertEquals(CommandOutcome.executed, volume4.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of("hold", "SET_VOLUME 2", "announce closing", "set_volume 4"),
+                    processed.subList(0, 4));
+        }
+
+        // Closing stops new commands but still processes every pending one, well past one turn
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        List<CompletableFuture<CommandOutcome>> pending = new ArrayList<>();
+        CommandDispatcher closing = new CommandDispatcher(1, 128, (appliance, command) -> {
+            if (command.equals("hold")) {
+                held.countDown();
+                assertDoesNotThrow(() -> resume.await());
+            }
+        });
+        pending.add(closing.submit(speaker, "hold"));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            pending.add(closing.submit(speaker, "announce " + i));
+        }
+        Thread closer = new Thread(closing::close);
+        closer.start();
+        while (closer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        StoreException closed = assertThrows(StoreException.class, () -> closing.submit(speaker, "announce late"));
+        assertEquals("Command Queue Is Closed", closed.getReason());
+        resume.countDown();
+        closer.join(10_000);
+        for (CompletableFuture<CommandOutcome> future : pending) {
+            assertEquals(CommandOutcome.executed, future.getNow(null));
+        }
+
+        // Thousands of appliances on a few threads, each seeing its commands one at a time in order
+        int appliances = 2_000;
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<CompletableFuture<CommandOutcome>> futures = new ArrayList<>();
+        try (CommandDispatcher dispatcher = new CommandDispatcher(4, 16, (appliance, command) -> {
+            AtomicInteger active = running.computeIfAbsent(appliance.getId(), id -> new AtomicInteger());
+            if (active.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            seen.computeIfAbsent(appliance.getId(), id -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(Integer.parseInt(command.substring("move ".length())));
+            active.decrementAndGet();
+        })) {
+            List<Appliance> robots = new ArrayList<>();
+            for (int i = 0; i < appliances; i++) {
+                robots.add(new Appliance("CMD-ROB" + i, "Robot", null, "robot"));
+            }
+            for (int step = 0; step < 10; step++) {
+                for (Appliance robot : robots) {
+                    futures.add(dispatcher.submit(robot, "move " + step));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(0, overlaps.get());
+        assertEquals(appliances, seen.size());
+        seen.values().forEach(steps -> assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), steps));
+
+        storeService.provisionStore("CMD1", "Commands", "1 Robot St", "admin");
+        storeService.provisionAisle("CMD1", "A1", "Aisle", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("CMD-CAM", "Camera", "camera", "CMD1", "A1", "admin");
+        storeService.provisionDevice("CMD-ROB", "Robot", "robot", "CMD1", "A1", "admin");
+        assertEquals(CommandOutcome.executed,
+                storeService.issueCommand("CMD-ROB", "CLEAN_FLOOR CMD1:A1", "admin").get(5, TimeUnit.SECONDS));
+        StoreException sensor = assertThrows(StoreException.class,
+                () -> storeService.issueCommand("CMD-CAM", "CLEAN_FLOOR CMD1:A1", "admin"));
+        assertEquals("Device Is Not An Appliance", sensor.getReason());
+        assertEquals(0, storeService.getPendingCommandCount("CMD-ROB"));
+        storeService.deleteStore("CMD1");
+    }
+
+    @Test
+    @DisplayName("Test commands are broadcast to the appliances of a store, aisle or type")
+    public void testBroadcastCommands() throws Exception {
+        storeService.provisionStore("BC1", "Broadcast", "1 Speaker St", "admin");
+        storeService.provisionAisle("BC1", "A1", "Aisle 1", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionAisle("BC1", "A2", "Aisle 2", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("BC-SPK1", "Speaker", "speaker", "BC1", "A1", "admin");
+        storeService.provisionDevice("BC-SPK2", "Speaker", "speaker", "BC1", "A2", "admin");
+        storeService.provisionDevice("BC-ROB1", "Robot", "robot", "BC1", "A1", "admin");
+        storeService.provisionDevice("BC-CAM1", "Camera", "camera", "BC1", "A1", "admin");
+
+        BroadcastResult speakers = storeService.broadcastCommand("BC1", null, ApplianceType.speaker,
+                "announce closing", "admin").get(5, TimeUnit.SECONDS);
+        assertEquals(2, speakers.getTargets());
+        assertEquals(2, speakers.getExecuted());
+        assertEquals(0, speakers.getFailed());
+        assertEquals(Map.of("BC-SPK1", "executed", "BC-SPK2", "executed"), speakers.getAcknowledgements());
+        assertEquals("speaker", speakers.getType());
+
+        BroadcastResult aisle = storeService.broadcastCommand("BC1", "A1", null, "stop", "admin")
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(Set.of("BC-ROB1", "BC-SPK1"), aisle.getAcknowledgements().keySet());
+
+        BroadcastResult store = storeService.broadcastCommand("BC1", null, null, "stop", "admin")
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(3, store.getTargets());
+        assertEquals(3, store.getExecuted());
+
+        BroadcastResult none = storeService.broadcastCommand("BC1", "A2", ApplianceType.turnstile, "open", "admin")
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(0, none.getTargets());
+
+        StoreException aisleMissing = assertThrows(StoreException.class,
+                () -> storeService.broadcastCommand("BC1", "A9", null, "stop", "admin"));
+        assertEquals("Aisle Does Not Exist", aisleMissing.getReason());
+
+        // The index goes with the store
+        storeService.deleteStore("BC1");
+        StoreException storeMissing = assertThrows(StoreException.class,
+                () -> storeService.broadcastCommand("BC1", null, null, "stop", "admin"));
+        assertEquals("Store Does Not Exist", storeMissing.getReason());
+        storeService.provisionStore("BC1", "Broadcast", "1 Speaker St", "admin");
+        assertEquals(0, storeService.broadcastCommand("BC1", null, null, "stop", "admin")
+                .get(5, TimeUnit.SECONDS).getTargets());
+        storeService.deleteStore("BC1");
+
+        // Nor do appliances outlive a reset of the service
+        storeService.provisionStore("BC2", "Broadcast", "2 Speaker St", "admin");
+        storeService.provisionAisle("BC2", "A1", "Aisle 1", "Desc", AisleLocation.floor, "admin");
+        storeService.provisionDevice("BC-SPK3", "Speaker", "speaker", "BC2", "A1", "admin");
+        StoreService.clearAllMaps();
+        storeService.provisionStore("BC2", "Broadcast", "2 Speaker St", "admin");
+        assertEquals(0, storeService.broadcastCommand("BC2", null, null, "stop", "admin")
+                .get(5, TimeUnit.SECONDS).getTargets());
+        storeService.deleteStore("BC2");
+    }
+
+    private static void putFrame(ByteBuffer frames, String deviceId, String event) {
+        byte[] id = deviceId.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = event.getBytes(StandardCharsets.UTF_8);
+        frames.putInt(Short.BYTES + id.length + payload.length).putShort((short) id.length).put(id).put(payload);
+    }
+
+    private static void awaitReceived(DeviceEventServer server, long received) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (server.getReceived() < received && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(received, server.getReceived());
+    }
+}